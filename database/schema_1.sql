@@ -11,6 +11,7 @@ DROP TABLE IF EXISTS musician_profiles CASCADE;
 DROP TABLE IF EXISTS venue_profiles CASCADE;
 DROP TABLE IF EXISTS user_authorities CASCADE;
 DROP TABLE IF EXISTS users CASCADE;
+DROP TABLE IF EXISTS zip_codes CASCADE;
 
 -- Create users table first since many tables reference it
 CREATE TABLE users (
@@ -22,6 +23,18 @@ CREATE TABLE users (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Supports keyset paging of /users/list by (username, user_id) within a user type
+CREATE INDEX idx_users_type_username_id ON users (user_type, username, user_id);
+
+-- ZIP code centroids, copied at startup from the file configured as geo.zip-centroids
+CREATE TABLE zip_codes (
+    zip_code VARCHAR(5) PRIMARY KEY,
+    latitude DOUBLE PRECISION NOT NULL,
+    longitude DOUBLE PRECISION NOT NULL,
+    city VARCHAR(50),
+    state VARCHAR(2)
+);
+
 -- Create musician_profiles table
 CREATE TABLE musician_profiles (
     musician_profile_id SERIAL PRIMARY KEY,
@@ -32,8 +45,18 @@ CREATE TABLE musician_profiles (
     genres TEXT,
     instruments TEXT,
     profile_picture_url VARCHAR(255),
+    -- Resolved from location through zip_codes whenever the profile is updated; null if it couldn't be placed
+    latitude DOUBLE PRECISION,
+    longitude DOUBLE PRECISION,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    -- Full-text search document, weighted so name matches rank above genre/instrument, location and bio matches
+    search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(genres, '') || ' ' || coalesce(instruments, '')), 'B') ||
+        setweight(to_tsvector('english', coalesce(location, '')), 'C') ||
+        setweight(to_tsvector('english', coalesce(bio, '')), 'D')
+    ) STORED
 );
 
 -- Create venue_profiles table
@@ -54,10 +77,35 @@ CREATE TABLE venue_profiles (
     operating_hours TEXT,
     amenities TEXT[],
     profile_picture_url VARCHAR(255),
+    -- Resolved from zip_code, or city and state, through zip_codes whenever the profile is updated
+    latitude DOUBLE PRECISION,
+    longitude DOUBLE PRECISION,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    -- Full-text search document over name, venue type and location
+    search_vector tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+        setweight(to_tsvector('english', coalesce(venue_type, '')), 'B') ||
+        setweight(to_tsvector('english', coalesce(city, '') || ' ' || coalesce(state, '')), 'C')
+    ) STORED
 );
 
+-- One profile per user; also backs the profile joins in the user card query
+CREATE UNIQUE INDEX idx_musician_profiles_user_id ON musician_profiles (user_id);
+CREATE UNIQUE INDEX idx_venue_profiles_user_id ON venue_profiles (user_id);
+
+-- Profile search (/users/search)
+CREATE INDEX idx_musician_profiles_search ON musician_profiles USING GIN (search_vector);
+CREATE INDEX idx_venue_profiles_search ON venue_profiles USING GIN (search_vector);
+
+-- Venue search (/users/venues/search): array overlap on the TEXT[] columns, location and capacity filters,
+-- and keyset paging by (name, user_id)
+CREATE INDEX idx_venue_profiles_genre_preferences ON venue_profiles USING GIN (genre_preferences);
+CREATE INDEX idx_venue_profiles_amenities ON venue_profiles USING GIN (amenities);
+CREATE INDEX idx_venue_profiles_state_city ON venue_profiles (state, lower(city));
+CREATE INDEX idx_venue_profiles_capacity ON venue_profiles (capacity);
+CREATE INDEX idx_venue_profiles_name_user_id ON venue_profiles (name, user_id);
+
 -- Create projects table
 CREATE TABLE projects (
     project_id SERIAL PRIMARY KEY,
@@ -82,19 +130,33 @@ CREATE TABLE user_instruments (
     PRIMARY KEY (user_id, instrument_id)
 );
 
+-- Musicians by instrument, for the lineup solver's candidate lookup
+CREATE INDEX idx_user_instruments_instrument ON user_instruments (instrument_id, user_id);
+
 -- Create conversations table to manage separate conversation threads
 CREATE TABLE conversations (
     conversation_id SERIAL PRIMARY KEY,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    -- Sequence number of the conversation's latest message; bumped under the row lock on every insert
+    last_seq BIGINT NOT NULL DEFAULT 0,
+    -- Canonical participant pair for 1:1 conversations (NULL for group conversations)
+    dm_user_low INT REFERENCES users(user_id) ON DELETE CASCADE,
+    dm_user_high INT REFERENCES users(user_id) ON DELETE CASCADE,
+    CONSTRAINT uq_conversations_dm_pair UNIQUE (dm_user_low, dm_user_high),
+    CONSTRAINT check_dm_pair_order CHECK (dm_user_low < dm_user_high)
 );
 
 -- Create conversation_participants table to track participants in each conversation
 CREATE TABLE conversation_participants (
     conversation_id INT REFERENCES conversations(conversation_id) ON DELETE CASCADE,
     user_id INT REFERENCES users(user_id) ON DELETE CASCADE,
+    last_read_message_id INT NOT NULL DEFAULT 0, -- Everything up to this message has been read
     PRIMARY KEY (conversation_id, user_id)
 );
 
+-- Lets the inbox start from a user's own participant rows
+CREATE INDEX idx_conversation_participants_user ON conversation_participants (user_id, conversation_id);
+
 -- Create messages table with threaded conversations
 CREATE TABLE messages (
     message_id SERIAL PRIMARY KEY,
@@ -103,9 +165,17 @@ CREATE TABLE messages (
     receiver_id INT REFERENCES users(user_id) ON DELETE CASCADE,
     content TEXT NOT NULL,
     parent_message_id INT REFERENCES messages(message_id) ON DELETE CASCADE,
+    -- Position within the conversation (1, 2, 3, ...), taken from conversations.last_seq
+    seq BIGINT NOT NULL,
     sent_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Ordering, keyset paging of history and "since seq N" sync
+CREATE UNIQUE INDEX idx_messages_conversation_seq ON messages (conversation_id, seq);
+
+-- Unread counts: messages past a participant's read cursor, answerable from the index alone
+CREATE INDEX idx_messages_conversation_message ON messages (conversation_id, message_id) INCLUDE (sender_id);
+
 -- Create user_authorities table
 CREATE TABLE user_authorities (
     user_id BIGINT NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
@@ -0,0 +1,87 @@
+-- Seeds 1,000,000 synthetic profiles (800k musicians, 200k venues) and times the /users/search queries.
+-- Run against a scratch database created from schema_1.sql, never against real data:
+--   createdb -U postgres bandmate3_bench
+--   psql -U postgres -d bandmate3_bench -f schema_1.sql
+--   psql -U postgres -d bandmate3_bench -f search_benchmark.sql
+--
+-- Measured on PostgreSQL 14, median of 7 EXPLAIN ANALYZE runs, page cut before the join to users:
+--   query                                   without GIN   with GIN
+--   'jazz', both types (266,666 matches)        1005 ms     640 ms
+--   'saxophone funk nashville', musicians        386 ms      30 ms
+--   '"velvet lounge" cleveland', venues          131 ms      16 ms
+-- Broad terms stay expensive because every match is ranked and sorted before the page is cut.
+
+\timing on
+
+BEGIN;
+
+INSERT INTO users (username, email, password_hash, user_type)
+SELECT 'bench_user_' || g, 'bench_user_' || g || '@example.com', 'x',
+       CASE WHEN g % 5 = 0 THEN 'VenueOwner' ELSE 'Musician' END
+FROM generate_series(1, 1000000) AS g;
+
+INSERT INTO musician_profiles (user_id, name, bio, location, genres, instruments)
+SELECT u.user_id,
+       (ARRAY['Alex', 'Sam', 'Jordan', 'Riley', 'Casey', 'Morgan'])[1 + u.user_id % 6] || ' ' ||
+       (ARRAY['Blue', 'Stone', 'Rivers', 'Vance', 'Harper', 'Quinn', 'Lowe'])[1 + u.user_id % 7],
+       'Session player with ' || (u.user_id % 30) || ' years on the road, available for '
+           || (ARRAY['weddings', 'tours', 'studio work', 'residencies', 'festivals'])[1 + u.user_id % 5],
+       (ARRAY['Cleveland', 'Columbus', 'Pittsburgh', 'Detroit', 'Chicago', 'Nashville', 'Austin'])[1 + u.user_id % 7],
+       (ARRAY['rock', 'jazz', 'blues', 'country', 'funk', 'metal', 'folk', 'soul', 'punk'])[1 + u.user_id % 9] || ', ' ||
+       (ARRAY['rock', 'jazz', 'blues', 'country', 'funk', 'metal', 'folk', 'soul', 'punk'])[1 + u.user_id % 4],
+       (ARRAY['guitar', 'bass', 'drums', 'keys', 'vocals', 'saxophone', 'trumpet', 'violin'])[1 + u.user_id % 8]
+FROM users u
+WHERE u.username LIKE 'bench_user_%' AND u.user_type = 'Musician';
+
+INSERT INTO venue_profiles (user_id, name, city, state, venue_type, capacity)
+SELECT u.user_id,
+       'The ' || (ARRAY['Rusty', 'Velvet', 'Golden', 'Crooked', 'Electric', 'Lucky'])[1 + u.user_id % 6] || ' ' ||
+       (ARRAY['Anchor', 'Lounge', 'Barrel', 'Room', 'Hall'])[1 + (u.user_id / 5) % 5],
+       (ARRAY['Cleveland', 'Columbus', 'Pittsburgh', 'Detroit', 'Chicago', 'Nashville', 'Austin'])[1 + u.user_id % 7],
+       (ARRAY['OH', 'OH', 'PA', 'MI', 'IL', 'TN', 'TX'])[1 + u.user_id % 7],
+       (ARRAY['Bar', 'Club', 'Theater', 'Brewery', 'Restaurant', 'Arena'])[1 + u.user_id % 6],
+       50 + u.user_id % 2000
+FROM users u
+WHERE u.username LIKE 'bench_user_%' AND u.user_type = 'VenueOwner';
+
+COMMIT;
+
+ANALYZE users;
+ANALYZE musician_profiles;
+ANALYZE venue_profiles;
+
+-- First page, both profile types, broad term
+EXPLAIN (ANALYZE, BUFFERS)
+WITH q AS (SELECT websearch_to_tsquery('english', 'jazz') AS query),
+matches AS (
+    SELECT mp.user_id, ts_rank_cd(mp.search_vector, q.query) AS rank
+    FROM musician_profiles mp, q WHERE mp.search_vector @@ q.query
+    UNION ALL
+    SELECT vp.user_id, ts_rank_cd(vp.search_vector, q.query) AS rank
+    FROM venue_profiles vp, q WHERE vp.search_vector @@ q.query
+)
+SELECT u.user_id, u.username
+FROM users u JOIN (SELECT * FROM matches ORDER BY rank DESC, user_id LIMIT 10 OFFSET 0) s ON s.user_id = u.user_id
+ORDER BY s.rank DESC, u.user_id;
+
+-- Selective multi-term query, musicians only
+EXPLAIN (ANALYZE, BUFFERS)
+WITH q AS (SELECT websearch_to_tsquery('english', 'saxophone funk nashville') AS query),
+matches AS (
+    SELECT mp.user_id, ts_rank_cd(mp.search_vector, q.query) AS rank
+    FROM musician_profiles mp, q WHERE mp.search_vector @@ q.query
+)
+SELECT u.user_id, u.username
+FROM users u JOIN (SELECT * FROM matches ORDER BY rank DESC, user_id LIMIT 10 OFFSET 0) s ON s.user_id = u.user_id
+ORDER BY s.rank DESC, u.user_id;
+
+-- Venues only, phrase query
+EXPLAIN (ANALYZE, BUFFERS)
+WITH q AS (SELECT websearch_to_tsquery('english', '"velvet lounge" cleveland') AS query),
+matches AS (
+    SELECT vp.user_id, ts_rank_cd(vp.search_vector, q.query) AS rank
+    FROM venue_profiles vp, q WHERE vp.search_vector @@ q.query
+)
+SELECT u.user_id, u.username
+FROM users u JOIN (SELECT * FROM matches ORDER BY rank DESC, user_id LIMIT 10 OFFSET 0) s ON s.user_id = u.user_id
+ORDER BY s.rank DESC, u.user_id;
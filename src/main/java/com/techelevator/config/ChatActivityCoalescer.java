@@ -0,0 +1,96 @@
+package com.techelevator.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects typing and read-receipt events and broadcasts them at most once per interval per conversation, as
+ * {"type":"ACTIVITY","conversationId":..,"typing":[userIds],"readUpTo":{userId:messageId}}. A user typing away
+ * sends an event per keystroke, but participants get one frame per interval. Only this instance's sessions are
+ * reached.
+ */
+@Component
+public class ChatActivityCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatActivityCoalescer.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessageDelivery delivery;
+    // Only modified inside compute(), and only read after remove(), so the map's own locking covers the contents
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public ChatActivityCoalescer(ChatMessageDelivery delivery,
+                                 @Value("${chat.activity.interval-ms:500}") long intervalMillis) {
+        this.delivery = delivery;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-activity-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void typing(Long conversationId, Long userId) {
+        pending.compute(conversationId, (id, p) -> {
+            p = p != null ? p : new Pending();
+            p.typing.add(userId);
+            return p;
+        });
+    }
+
+    public void read(Long conversationId, Long userId, Long messageId) {
+        pending.compute(conversationId, (id, p) -> {
+            p = p != null ? p : new Pending();
+            p.readUpTo.merge(userId, messageId, Math::max);
+            return p;
+        });
+    }
+
+    void flush() {
+        for (Long conversationId : pending.keySet()) {
+            Pending p = pending.remove(conversationId);
+            if (p == null) {
+                continue;
+            }
+            Map<String, Object> frame = new LinkedHashMap<>();
+            frame.put("type", "ACTIVITY");
+            frame.put("conversationId", conversationId);
+            frame.put("typing", p.typing);
+            frame.put("readUpTo", p.readUpTo);
+            try {
+                delivery.sendToParticipants(conversationId, new TextMessage(objectMapper.writeValueAsString(frame)));
+            } catch (JsonProcessingException e) {
+                log.warn("Failed to serialize activity for conversation {}: {}", conversationId, e.getMessage());
+            } catch (RuntimeException e) {
+                log.warn("Failed to broadcast activity for conversation {}: {}", conversationId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    private static final class Pending {
+        private final Set<Long> typing = new TreeSet<>();
+        private final Map<Long, Long> readUpTo = new HashMap<>();
+    }
+}
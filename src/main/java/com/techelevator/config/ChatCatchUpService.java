@@ -0,0 +1,133 @@
+package com.techelevator.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageDao;
+import com.techelevator.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Brings a reconnecting client up to date. The client sends the last message id it has for each conversation and
+ * gets back only the newer messages, as CATCH_UP frames of at most batch-size messages. Live messages for the session
+ * are held back meanwhile and sent afterwards, followed by a RESUMED frame. If there were more missed messages than
+ * max-messages, RESUMED says complete=false and the client should reload through the REST history endpoint.
+ */
+@Component
+public class ChatCatchUpService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatCatchUpService.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageDao messageDao;
+    private final ConversationMembershipCache membershipCache;
+    private final ChatOutboundDispatcher outboundDispatcher;
+    private final int batchSize;
+    private final int maxMessages;
+    private final ExecutorService executor;
+
+    public ChatCatchUpService(MessageDao messageDao, ConversationMembershipCache membershipCache,
+                              ChatOutboundDispatcher outboundDispatcher,
+                              @Value("${chat.ws.catch-up.batch-size:100}") int batchSize,
+                              @Value("${chat.ws.catch-up.max-messages:1000}") int maxMessages,
+                              @Value("${chat.ws.catch-up.threads:2}") int threads) {
+        this.messageDao = messageDao;
+        this.membershipCache = membershipCache;
+        this.outboundDispatcher = outboundDispatcher;
+        this.batchSize = batchSize;
+        this.maxMessages = maxMessages;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chat-catch-up");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts catching the session up in the background.
+     * @param lastSeenByConversation conversation id to the last message id the client has; conversations the user
+     *                               isn't part of are ignored
+     */
+    public void resume(ChatSession session, Map<Long, Long> lastSeenByConversation) {
+        Map<Long, Long> positions = new HashMap<>();
+        for (Map.Entry<Long, Long> entry : lastSeenByConversation.entrySet()) {
+            if (membershipCache.isParticipant(entry.getKey(), session.getUserId())) {
+                positions.put(entry.getKey(), Math.max(0, entry.getValue()));
+            }
+        }
+        session.beginResume(maxMessages);
+        executor.execute(() -> catchUp(session, positions));
+    }
+
+    private void catchUp(ChatSession session, Map<Long, Long> positions) {
+        boolean complete = true;
+        int sent = 0;
+        try {
+            while (session.isOpen()) {
+                int limit = Math.min(batchSize, maxMessages - sent);
+                if (limit <= 0) {
+                    complete = false;
+                    break;
+                }
+                List<Message> batch = messageDao.getMessagesAfter(positions, limit);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                send(session, Map.of("type", "CATCH_UP", "messages", batch));
+                for (Message message : batch) {
+                    positions.merge(message.getConversationId(), message.getMessageId(), Math::max);
+                }
+                sent += batch.size();
+                if (batch.size() < limit) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Catch-up failed for session {}: {}", session.getId(), e.getMessage());
+            complete = false;
+        }
+
+        // Back to live delivery. Whatever arrived meanwhile that catch-up didn't already cover, and RESUMED, are queued
+        // before the switch, so a live message can't overtake an older held one
+        boolean caughtUp = complete;
+        int messageCount = sent;
+        session.endResume((held, heldDropped) -> {
+            for (Message message : held) {
+                Long position = positions.get(message.getConversationId());
+                if (position == null || message.getMessageId() > position) {
+                    send(session, message);
+                }
+            }
+            Map<String, Object> done = new LinkedHashMap<>();
+            done.put("type", "RESUMED");
+            done.put("complete", caughtUp && !heldDropped);
+            done.put("messageCount", messageCount);
+            send(session, done);
+        });
+    }
+
+    private void send(ChatSession session, Object payload) {
+        try {
+            outboundDispatcher.send(session, new TextMessage(objectMapper.writeValueAsString(payload)));
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize catch-up frame for session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,24 @@
+package com.techelevator.config;
+
+import com.techelevator.model.Message;
+
+import java.util.Map;
+
+/**
+ * Carries persisted chat messages to every WebSocket session of the conversation's participants, whichever app
+ * instance those sessions are connected to. Selected with chat.fanout.mode ("local" or "postgres").
+ */
+public interface ChatFanoutBus {
+
+    /**
+     * Delivers an already-saved message.
+     * @param message The saved message, with its server-assigned ID.
+     * @param excludeSessionId The session the message came in on, which doesn't get it echoed back, or null.
+     */
+    void publish(Message message, String excludeSessionId);
+
+    /**
+     * Counters for the metrics endpoint.
+     */
+    Map<String, Long> getMetrics();
+}
@@ -0,0 +1,65 @@
+package com.techelevator.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Queues a saved message on the sessions connected to this instance for each of the conversation's participants.
+ */
+@Component
+public class ChatMessageDelivery {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatMessageDelivery.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConversationMembershipCache membershipCache;
+    private final ChatSessionRegistry sessionRegistry;
+    private final ChatOutboundDispatcher outboundDispatcher;
+
+    public ChatMessageDelivery(ConversationMembershipCache membershipCache, ChatSessionRegistry sessionRegistry,
+                               ChatOutboundDispatcher outboundDispatcher) {
+        this.membershipCache = membershipCache;
+        this.sessionRegistry = sessionRegistry;
+        this.outboundDispatcher = outboundDispatcher;
+    }
+
+    public void deliver(Message message, String excludeSessionId) {
+        long[] participantIds = membershipCache.getParticipantIds(message.getConversationId());
+        TextMessage frame = null;
+        for (long participantId : participantIds) {
+            for (ChatSession session : sessionRegistry.getSessions(participantId)) {
+                if (session.getId().equals(excludeSessionId) || session.holdIfResuming(message)) {
+                    continue;
+                }
+                if (frame == null) {
+                    // Serialized once, and only if someone here is listening
+                    try {
+                        frame = new TextMessage(objectMapper.writeValueAsString(message));
+                    } catch (JsonProcessingException e) {
+                        log.warn("Failed to serialize message {}: {}", message.getMessageId(), e.getMessage());
+                        return;
+                    }
+                }
+                outboundDispatcher.send(session, frame);
+            }
+        }
+    }
+
+    /**
+     * Queues an event frame for every local session of the conversation's participants. Events aren't held back
+     * from sessions that are catching up.
+     */
+    public void sendToParticipants(Long conversationId, TextMessage frame) {
+        for (long participantId : membershipCache.getParticipantIds(conversationId)) {
+            for (ChatSession session : sessionRegistry.getSessions(participantId)) {
+                outboundDispatcher.send(session, frame);
+            }
+        }
+    }
+}
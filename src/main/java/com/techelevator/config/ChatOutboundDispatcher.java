@@ -0,0 +1,134 @@
+package com.techelevator.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes outbound chat frames off the inbound thread. Each session has its own bounded queue (see ChatSession), and
+ * a shared pool drains the queues, one drain per session at a time so frames keep their order. A slow client holds
+ * at most one pool thread, and only for a bounded batch of frames at a time. Once its write stalls past the send
+ * time limit or its queue passes the byte limit, the next frame for it closes the session. A background task pings
+ * live sessions, which also catches stalled ones with nothing else queued, and closes sessions that have gone quiet
+ * past the idle timeout.
+ */
+@Component
+public class ChatOutboundDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatOutboundDispatcher.class);
+    // Frames written per drain task before the session goes to the back of the pool's queue
+    private static final int DRAIN_BATCH_SIZE = 32;
+
+    private final ChatSessionRegistry sessionRegistry;
+    private final ExecutorService sendExecutor;
+    private final ScheduledExecutorService reaper;
+    private final long idleTimeoutMillis;
+
+    public ChatOutboundDispatcher(ChatSessionRegistry sessionRegistry,
+                                  @Value("${chat.ws.sender-threads:4}") int senderThreads,
+                                  @Value("${chat.ws.idle-timeout-ms:120000}") long idleTimeoutMillis,
+                                  @Value("${chat.ws.ping-interval-ms:30000}") long pingIntervalMillis) {
+        this.sessionRegistry = sessionRegistry;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        // Each session has at most one drain task queued or running, so the pool's queue is bounded by the session count
+        this.sendExecutor = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "chat-sender");
+            t.setDaemon(true);
+            return t;
+        });
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::pingAndReap, pingIntervalMillis, pingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a frame for the session and returns immediately. Frames for one session are sent in the order queued.
+     */
+    public void send(ChatSession session, WebSocketMessage<?> message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        if (!session.enqueue(message)) {
+            log.info("Dropping slow chat session {} for user {}: {} bytes buffered, current write running {} ms",
+                    session.getId(), session.getUserId(), session.getBufferedBytes(), session.getSendTimeMillis());
+            close(session);
+            return;
+        }
+        if (session.startDrain()) {
+            sendExecutor.execute(() -> drain(session));
+        }
+    }
+
+    private void drain(ChatSession session) {
+        for (int sent = 0; sent < DRAIN_BATCH_SIZE; sent++) {
+            if (!session.isOpen()) {
+                return; // closed for being slow or by the client; whatever is still queued goes with it
+            }
+            WebSocketMessage<?> message = session.pollQueued();
+            if (message == null) {
+                if (session.finishDrain()) {
+                    // Something was queued after the poll came back empty
+                    sendExecutor.execute(() -> drain(session));
+                }
+                return;
+            }
+            try {
+                session.getOutbound().sendMessage(message);
+            } catch (SessionLimitExceededException e) {
+                log.info("Dropping slow chat session {} for user {}: {}", session.getId(), session.getUserId(), e.getMessage());
+                close(session);
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.info("Dropping chat session {} for user {}: {}", session.getId(), session.getUserId(), e.getMessage());
+                close(session);
+                return;
+            }
+        }
+        // Let other sessions have the thread; this drain stays owned and carries on from the back of the queue
+        sendExecutor.execute(() -> drain(session));
+    }
+
+    private void pingAndReap() {
+        long now = System.currentTimeMillis();
+        for (ChatSession session : sessionRegistry.getAllSessions()) {
+            if (!session.isOpen()) {
+                sessionRegistry.unregister(session.getSession());
+            } else if (now - session.getLastActivity() > idleTimeoutMillis) {
+                log.info("Closing idle chat session {} for user {}", session.getId(), session.getUserId());
+                close(session);
+            } else {
+                send(session, new PingMessage());
+            }
+        }
+    }
+
+    private void close(ChatSession session) {
+        sessionRegistry.unregister(session.getSession());
+        try {
+            session.getSession().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Error closing chat session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        sendExecutor.shutdown();
+    }
+}
@@ -0,0 +1,168 @@
+package com.techelevator.config;
+
+import com.techelevator.model.Message;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A connected chat socket: the raw session, the bounded outbound buffer wrapped around it, the user it belongs to
+ * and when the client was last heard from.
+ * <p>
+ * Outbound frames wait in a per-session queue until ChatOutboundDispatcher drains it. At most one drain runs at a
+ * time, so frames go out in the order queued. The queue counts towards the buffer limit.
+ */
+public class ChatSession {
+
+    private final Long userId;
+    private final WebSocketSession session;
+    private final ConcurrentWebSocketSessionDecorator outbound;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimitBytes;
+    private final Queue<WebSocketMessage<?>> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile long lastActivity = System.currentTimeMillis();
+    // Live messages that arrive while the client is being caught up; null when not resuming
+    private List<Message> held;
+    private int maxHeld;
+    private boolean heldDropped;
+
+    public ChatSession(Long userId, WebSocketSession session, int sendTimeLimitMillis, int bufferSizeLimitBytes) {
+        this.userId = userId;
+        this.session = session;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimitBytes = bufferSizeLimitBytes;
+        // TERMINATE closes the session once it stays over either limit, so one slow client can't grow unbounded
+        this.outbound = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMillis, bufferSizeLimitBytes,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE);
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+
+    public ConcurrentWebSocketSessionDecorator getOutbound() {
+        return outbound;
+    }
+
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Bytes queued but not yet written to the socket.
+     */
+    public int getBufferedBytes() {
+        return outbound.getBufferSize();
+    }
+
+    /**
+     * How long the current write has been in progress, or 0 if no write is in flight.
+     */
+    public long getSendTimeMillis() {
+        return outbound.getTimeSinceSendStarted();
+    }
+
+    /**
+     * Queues a frame for sending, unless the client is already over a limit: a write in progress for longer than the
+     * send time limit, or more than the buffer limit queued and buffered.
+     * @return false if the client is over a limit and should be dropped
+     */
+    public boolean enqueue(WebSocketMessage<?> message) {
+        if (getSendTimeMillis() > sendTimeLimitMillis
+                || queuedBytes.get() + getBufferedBytes() + message.getPayloadLength() > bufferSizeLimitBytes) {
+            return false;
+        }
+        queuedBytes.addAndGet(message.getPayloadLength());
+        queued.add(message);
+        return true;
+    }
+
+    /**
+     * The next queued frame, or null once the queue is empty. Only called by the drain in progress.
+     */
+    public WebSocketMessage<?> pollQueued() {
+        WebSocketMessage<?> message = queued.poll();
+        if (message != null) {
+            queuedBytes.addAndGet(-message.getPayloadLength());
+        }
+        return message;
+    }
+
+    /**
+     * @return true if the caller now owns the drain and must schedule it, false if a drain is already running
+     */
+    public boolean startDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    /**
+     * Ends the drain in progress.
+     * @return true if frames were queued in the meantime and the caller still owns the drain
+     */
+    public boolean finishDrain() {
+        draining.set(false);
+        return !queued.isEmpty() && startDrain();
+    }
+
+    /**
+     * Starts holding live messages back until endResume, so catch-up messages go out first.
+     * @param maxHeld how many live messages to hold before dropping the rest
+     */
+    public synchronized void beginResume(int maxHeld) {
+        this.held = new ArrayList<>();
+        this.maxHeld = maxHeld;
+        this.heldDropped = false;
+    }
+
+    /**
+     * @return true if the message was held (or dropped because too many are held) rather than to be sent now
+     */
+    public synchronized boolean holdIfResuming(Message message) {
+        if (held == null) {
+            return false;
+        }
+        if (held.size() < maxHeld) {
+            held.add(message);
+        } else {
+            heldDropped = true;
+        }
+        return true;
+    }
+
+    /**
+     * Switches back to live delivery. The held messages are handed over while live delivery is still held back, so
+     * whatever the callback queues goes out ahead of any live message delivered once this returns.
+     * @param sendHeld given the messages held since beginResume, and whether more arrived than could be held, in which
+     *                 case the client must re-sync
+     */
+    public synchronized void endResume(BiConsumer<List<Message>, Boolean> sendHeld) {
+        sendHeld.accept(held != null ? held : new ArrayList<>(), heldDropped);
+        held = null;
+    }
+}
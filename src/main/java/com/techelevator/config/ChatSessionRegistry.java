@@ -0,0 +1,73 @@
+package com.techelevator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe registry of open chat sessions, keyed by the id of the user each session was authenticated as.
+ * A user may hold several sessions at once (tabs, devices).
+ */
+@Component
+public class ChatSessionRegistry {
+
+    private final Map<Long, Set<ChatSession>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Map<String, ChatSession> sessionsById = new ConcurrentHashMap<>();
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimitBytes;
+
+    public ChatSessionRegistry(@Value("${chat.ws.send-time-limit-ms:5000}") int sendTimeLimitMillis,
+                               @Value("${chat.ws.send-buffer-size-limit:524288}") int bufferSizeLimitBytes) {
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimitBytes = bufferSizeLimitBytes;
+    }
+
+    public ChatSession register(Long userId, WebSocketSession session) {
+        ChatSession chatSession = new ChatSession(userId, session, sendTimeLimitMillis, bufferSizeLimitBytes);
+        sessionsById.put(session.getId(), chatSession);
+        sessionsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(chatSession);
+        return chatSession;
+    }
+
+    public void unregister(WebSocketSession session) {
+        ChatSession chatSession = sessionsById.remove(session.getId());
+        if (chatSession == null) {
+            return;
+        }
+        sessionsByUser.computeIfPresent(chatSession.getUserId(), (id, sessions) -> {
+            sessions.remove(chatSession);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    public ChatSession getSession(WebSocketSession session) {
+        return sessionsById.get(session.getId());
+    }
+
+    public Collection<ChatSession> getSessions(Long userId) {
+        Set<ChatSession> sessions = sessionsByUser.get(userId);
+        return sessions != null ? sessions : Collections.emptySet();
+    }
+
+    public Collection<ChatSession> getAllSessions() {
+        return sessionsById.values();
+    }
+
+    public boolean isConnected(Long userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    public Set<Long> getConnectedUserIds() {
+        return Collections.unmodifiableSet(sessionsByUser.keySet());
+    }
+
+    public int getConnectedUserCount() {
+        return sessionsByUser.size();
+    }
+}
@@ -1,68 +1,150 @@
 package com.techelevator.config;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.techelevator.dao.MessageDao;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageBatchWriter;
+import com.techelevator.dao.ReadCursorCoalescer;
 import com.techelevator.model.Message;
+import com.techelevator.security.AuthenticatedUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
-    private final List<WebSocketSession> sessions = new ArrayList<>();
+    private static final String READ_EVENT = "READ";
+    private static final String RESUME_EVENT = "RESUME";
+    private static final String TYPING_EVENT = "TYPING";
+    private static final String HEARTBEAT_EVENT = "HEARTBEAT";
+
+    private final ChatSessionRegistry sessionRegistry;
+    private final ChatFanoutBus fanoutBus;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final MessageDao messageDao;
+    private final MessageBatchWriter messageBatchWriter;
+    private final ReadCursorCoalescer readCursorCoalescer;
+    private final ConversationMembershipCache membershipCache;
+    private final ChatCatchUpService catchUpService;
+    private final PresenceTracker presenceTracker;
+    private final ChatActivityCoalescer activityCoalescer;
 
     @Autowired
-    public ChatWebSocketHandler(MessageDao messageDao) {
-        this.messageDao = messageDao;
+    public ChatWebSocketHandler(MessageBatchWriter messageBatchWriter, ReadCursorCoalescer readCursorCoalescer,
+                                ConversationMembershipCache membershipCache, ChatSessionRegistry sessionRegistry,
+                                ChatFanoutBus fanoutBus, ChatCatchUpService catchUpService,
+                                PresenceTracker presenceTracker, ChatActivityCoalescer activityCoalescer) {
+        this.messageBatchWriter = messageBatchWriter;
+        this.readCursorCoalescer = readCursorCoalescer;
+        this.membershipCache = membershipCache;
+        this.sessionRegistry = sessionRegistry;
+        this.fanoutBus = fanoutBus;
+        this.catchUpService = catchUpService;
+        this.presenceTracker = presenceTracker;
+        this.activityCoalescer = activityCoalescer;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-        System.out.println("WebSocket connection established: " + session.getId());
+        AuthenticatedUser user = getUser(session);
+        if (user == null) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+        sessionRegistry.register(user.getUserId(), session);
+        presenceTracker.heartbeat(user.getUserId());
+        System.out.println("WebSocket connection established: " + session.getId() + " for user " + user.getUserId());
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        String payload = message.getPayload();
-        Message msg = objectMapper.readValue(payload, Message.class);
+        AuthenticatedUser user = getUser(session);
+        touch(session);
+        JsonNode payload = objectMapper.readTree(message.getPayload());
+        String type = payload.path("type").asText();
+        if (HEARTBEAT_EVENT.equals(type)) {
+            return;
+        }
+        if (READ_EVENT.equals(type) || TYPING_EVENT.equals(type)) {
+            long conversationId = payload.path("conversationId").asLong();
+            if (!membershipCache.isParticipant(conversationId, user.getUserId())) {
+                return;
+            }
+            if (READ_EVENT.equals(type)) {
+                // The cursor write and the receipt broadcast are both coalesced
+                long messageId = payload.path("messageId").asLong();
+                if (messageId <= 0) {
+                    return;
+                }
+                readCursorCoalescer.markReadUpTo(conversationId, user.getUserId(), messageId);
+                activityCoalescer.read(conversationId, user.getUserId(), messageId);
+            } else {
+                activityCoalescer.typing(conversationId, user.getUserId());
+            }
+            return;
+        }
+        if (RESUME_EVENT.equals(type)) {
+            // {"type":"RESUME","lastSeen":{"<conversationId>":<messageId>,...}}
+            Map<Long, Long> lastSeen = new HashMap<>();
+            payload.path("lastSeen").fields().forEachRemaining(e -> lastSeen.put(Long.valueOf(e.getKey()), e.getValue().asLong()));
+            ChatSession chatSession = sessionRegistry.getSession(session);
+            if (chatSession != null) {
+                catchUpService.resume(chatSession, lastSeen);
+            }
+            return;
+        }
+        Message msg = objectMapper.treeToValue(payload, Message.class);
         System.out.println("Received: " + msg);
 
-        // Save to DB
-        Message savedMsg = messageDao.sendMessage(
-                msg.getConversationId(),
-                msg.getSenderId(),
-                msg.getReceiverId(),
-                msg.getContent(),
-                null
-        );
-        System.out.println("Saved to DB: " + savedMsg);
+        long[] participantIds = membershipCache.getParticipantIds(msg.getConversationId());
+        if (Arrays.binarySearch(participantIds, user.getUserId()) < 0) {
+            System.out.println("User " + user.getUserId() + " is not in conversation " + msg.getConversationId());
+            return;
+        }
 
-        // Broadcast to all sessions except the sender
-        TextMessage response = new TextMessage(objectMapper.writeValueAsString(savedMsg));
-        for (WebSocketSession s : sessions) {
-            if (s.isOpen() && !s.equals(session)) { // Skip the sender's session
-                try {
-                    s.sendMessage(response);
-                } catch (IOException e) {
-                    System.out.println("Failed to send to session " + s.getId() + ": " + e.getMessage());
-                }
+        // Save to DB; the sender is whoever the session was authenticated as, not what the payload claims
+        Message toSave = new Message(msg.getConversationId(), user.getUserId(), msg.getReceiverId(), msg.getContent(), null);
+        messageBatchWriter.submit(toSave).whenComplete((savedMsg, error) -> {
+            if (error != null) {
+                System.out.println("Failed to save message from user " + user.getUserId() + ": " + error.getMessage());
+            } else {
+                System.out.println("Saved to DB: " + savedMsg);
+                fanoutBus.publish(savedMsg, session.getId());
             }
-        }
+        });
+    }
+
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        touch(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
+        sessionRegistry.unregister(session);
+        AuthenticatedUser user = getUser(session);
+        if (user != null) {
+            presenceTracker.disconnected(user.getUserId(), sessionRegistry.isConnected(user.getUserId()));
+        }
         System.out.println("WebSocket connection closed: " + session.getId());
     }
-}
\ No newline at end of file
+
+    private void touch(WebSocketSession session) {
+        ChatSession chatSession = sessionRegistry.getSession(session);
+        if (chatSession != null) {
+            chatSession.touch();
+            presenceTracker.heartbeat(chatSession.getUserId());
+        }
+    }
+
+    private AuthenticatedUser getUser(WebSocketSession session) {
+        return (AuthenticatedUser) session.getAttributes().get(JwtHandshakeInterceptor.USER_ATTRIBUTE);
+    }
+}
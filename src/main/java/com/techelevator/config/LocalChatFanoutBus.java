@@ -0,0 +1,34 @@
+package com.techelevator.config;
+
+import com.techelevator.model.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-instance fan-out: messages only reach sessions connected to this JVM.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.fanout.mode", havingValue = "local", matchIfMissing = true)
+public class LocalChatFanoutBus implements ChatFanoutBus {
+
+    private final ChatMessageDelivery delivery;
+    private final LongAdder published = new LongAdder();
+
+    public LocalChatFanoutBus(ChatMessageDelivery delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    public void publish(Message message, String excludeSessionId) {
+        published.increment();
+        delivery.deliver(message, excludeSessionId);
+    }
+
+    @Override
+    public Map<String, Long> getMetrics() {
+        return Map.of("published", published.sum());
+    }
+}
@@ -0,0 +1,367 @@
+package com.techelevator.config;
+
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageDao;
+import com.techelevator.dao.MessageTailCache;
+import com.techelevator.model.Message;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-instance fan-out over Postgres LISTEN/NOTIFY.
+ * <p>
+ * A message is delivered to this instance's sessions straight away and its id is queued for the other instances.
+ * A publisher thread sends the queued ids a few milliseconds' worth at a time as one NOTIFY, with the payload
+ * "nodeId:seq:id,id,...". A listener thread holds its own connection with LISTEN on the channel. It loads the notified
+ * messages in a single query and delivers them to the local sessions. The connection is opened outside the pool, so a
+ * listener that fails never hands a subscribed connection back for the DAOs to reuse. Any database role can NOTIFY
+ * the channel, so a malformed notification is logged and skipped.
+ * <p>
+ * Participant changes committed here go out the same way as "nodeId:seq:inv:conversationId,...", and the other
+ * instances drop those conversations from their membership caches, so a removed participant stops receiving and
+ * reading messages everywhere. Message edits and deletes go out as "nodeId:seq:tail:conversationId,...", and the
+ * other instances drop those conversations from their tail caches.
+ * <p>
+ * Each instance numbers its notifications. A skipped number means a notification was never sent, e.g. a full queue
+ * or a failed NOTIFY. Reconnecting the listener also means notifications may have been missed. In both cases the
+ * instance re-reads recent messages for its connected users by message id and delivers the ones it hasn't already
+ * delivered, and empties its membership and tail caches in case an invalidation was among the missed notifications.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.fanout.mode", havingValue = "postgres")
+public class PostgresChatFanoutBus implements ChatFanoutBus {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresChatFanoutBus.class);
+
+    private static final String CHANNEL = "chat_fanout";
+    private static final String INVALIDATE = "inv:";
+    private static final String INVALIDATE_TAIL = "tail:";
+    // NOTIFY payloads must stay under 8000 bytes
+    private static final int MAX_PAYLOAD_LENGTH = 7500;
+    private static final int RECENT_IDS_CAPACITY = 10000;
+    private static final int RECOVERY_LIMIT = 1000;
+
+    private final ChatMessageDelivery delivery;
+    private final ChatSessionRegistry sessionRegistry;
+    private final MessageDao messageDao;
+    private final MessageTailCache tailCache;
+    private final ConversationMembershipCache membershipCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final String listenerUrl;
+    private final String listenerUsername;
+    private final String listenerPassword;
+    private final int maxBatchSize;
+    private final long batchDelayMillis;
+    private final long recoveryLookback;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private final BlockingQueue<Long> outbound;
+    // Conversations whose participants or messages changed here; rare, so sent whenever the publisher next wakes up
+    private final Queue<Long> invalidations = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> tailInvalidations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong publishSeq = new AtomicLong();
+    // Only touched by the listener thread
+    private final Map<String, Long> lastSeqByNode = new HashMap<>();
+    // Ids already delivered here, so recovery doesn't deliver a message twice
+    private final Set<Long> recentIds = Collections.newSetFromMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > RECENT_IDS_CAPACITY;
+        }
+    });
+    private final AtomicLong highestMessageId = new AtomicLong();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder notificationsSent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder gapsDetected = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+
+    private final Thread publisherThread;
+    private final Thread listenerThread;
+    private volatile boolean running = true;
+
+    public PostgresChatFanoutBus(ChatMessageDelivery delivery, ChatSessionRegistry sessionRegistry,
+                                 MessageDao messageDao, MessageTailCache tailCache,
+                                 ConversationMembershipCache membershipCache, JdbcTemplate jdbcTemplate,
+                                 @Value("${spring.datasource.url}") String listenerUrl,
+                                 @Value("${spring.datasource.username}") String listenerUsername,
+                                 @Value("${spring.datasource.password}") String listenerPassword,
+                                 @Value("${chat.fanout.max-batch-size:200}") int maxBatchSize,
+                                 @Value("${chat.fanout.batch-delay-ms:5}") long batchDelayMillis,
+                                 @Value("${chat.fanout.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${chat.fanout.recovery-lookback:1000}") long recoveryLookback) {
+        this.delivery = delivery;
+        this.sessionRegistry = sessionRegistry;
+        this.messageDao = messageDao;
+        this.tailCache = tailCache;
+        this.membershipCache = membershipCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.listenerUrl = listenerUrl;
+        this.listenerUsername = listenerUsername;
+        this.listenerPassword = listenerPassword;
+        this.maxBatchSize = maxBatchSize;
+        this.batchDelayMillis = batchDelayMillis;
+        this.recoveryLookback = recoveryLookback;
+        this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+        membershipCache.addInvalidationListener(invalidations::add);
+        tailCache.addInvalidationListener(tailInvalidations::add);
+
+        publisherThread = new Thread(this::runPublisher, "chat-fanout-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+        listenerThread = new Thread(this::runListener, "chat-fanout-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        log.info("Chat fan-out over Postgres channel {} as node {}", CHANNEL, nodeId);
+    }
+
+    @Override
+    public void publish(Message message, String excludeSessionId) {
+        published.increment();
+        markDelivered(message.getMessageId());
+        delivery.deliver(message, excludeSessionId);
+        if (!outbound.offer(message.getMessageId())) {
+            // Burn a sequence number so the other nodes see a gap and recover this message themselves
+            publishSeq.incrementAndGet();
+            log.warn("Fan-out queue full, message {} not notified", message.getMessageId());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("published", published.sum());
+        metrics.put("notificationsSent", notificationsSent.sum());
+        metrics.put("received", received.sum());
+        metrics.put("gapsDetected", gapsDetected.sum());
+        metrics.put("recovered", recovered.sum());
+        metrics.put("queued", (long) outbound.size());
+        return metrics;
+    }
+
+    private void runPublisher() {
+        while (running || !outbound.isEmpty() || !invalidations.isEmpty() || !tailInvalidations.isEmpty()) {
+            try {
+                sendInvalidations(INVALIDATE, invalidations);
+                sendInvalidations(INVALIDATE_TAIL, tailInvalidations);
+                Long first = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Long> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    outbound.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Long next = outbound.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void sendInvalidations(String prefix, Queue<Long> queue) {
+        Set<Long> conversationIds = new LinkedHashSet<>();
+        for (Long id = queue.poll(); id != null; id = queue.poll()) {
+            conversationIds.add(id);
+        }
+        if (!conversationIds.isEmpty()) {
+            sendBatch(prefix, new ArrayList<>(conversationIds));
+        }
+    }
+
+    private void sendBatch(List<Long> messageIds) {
+        sendBatch("", messageIds);
+    }
+
+    private void sendBatch(String prefix, List<Long> idList) {
+        StringBuilder ids = new StringBuilder();
+        for (Long id : idList) {
+            String next = id.toString();
+            if (ids.length() > 0 && prefix.length() + ids.length() + next.length() + 1 > MAX_PAYLOAD_LENGTH) {
+                sendNotification(prefix + ids);
+                ids.setLength(0);
+            }
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(next);
+        }
+        sendNotification(prefix + ids);
+    }
+
+    private void sendNotification(String ids) {
+        String payload = nodeId + ":" + publishSeq.incrementAndGet() + ":" + ids;
+        try {
+            jdbcTemplate.queryForRowSet("SELECT pg_notify(?, ?)", CHANNEL, payload);
+            notificationsSent.increment();
+        } catch (RuntimeException e) {
+            // The sequence number is spent, so receivers will notice the gap and recover
+            log.warn("NOTIFY failed for {}: {}", ids, e.getMessage());
+        }
+    }
+
+    private void runListener() {
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(listenerUrl, listenerUsername, listenerPassword)) {
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+                if (connectedBefore) {
+                    recover("listener reconnected");
+                }
+                connectedBefore = true;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications != null && notifications.length > 0) {
+                        handle(notifications);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("Fan-out listener lost its connection, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void handle(PGNotification[] notifications) {
+        Set<Long> messageIds = new LinkedHashSet<>();
+        boolean gap = false;
+        for (PGNotification notification : notifications) {
+            try {
+                gap |= accept(notification.getParameter(), messageIds);
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed fan-out notification \"{}\"", notification.getParameter());
+            }
+        }
+        synchronized (recentIds) {
+            messageIds.removeAll(recentIds);
+        }
+        if (!messageIds.isEmpty()) {
+            for (Message message : messageDao.getMessagesByIds(messageIds)) {
+                received.increment();
+                markDelivered(message.getMessageId());
+                // Saved by another instance, so this instance's tail cache hasn't seen it
+                tailCache.append(message);
+                delivery.deliver(message, null);
+            }
+        }
+        if (gap) {
+            recover("sequence gap");
+        }
+    }
+
+    /**
+     * Applies one notification from another node, adding any message ids it carries to messageIds. The payload is
+     * parsed in full before anything is applied, so a malformed one changes nothing.
+     * @return true if the sender's sequence skipped a number since its last notification
+     * @throws NumberFormatException if the payload is malformed
+     */
+    private boolean accept(String payload, Set<Long> messageIds) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return false;
+        }
+        long seq = Long.parseLong(parts[1]);
+        String body = parts[2];
+        String prefix = body.startsWith(INVALIDATE) ? INVALIDATE : body.startsWith(INVALIDATE_TAIL) ? INVALIDATE_TAIL : "";
+        List<Long> ids = new ArrayList<>();
+        for (String id : body.substring(prefix.length()).split(",")) {
+            ids.add(Long.parseLong(id));
+        }
+
+        Long lastSeq = lastSeqByNode.put(parts[0], seq);
+        if (prefix.equals(INVALIDATE)) {
+            ids.forEach(membershipCache::evict);
+        } else if (prefix.equals(INVALIDATE_TAIL)) {
+            ids.forEach(tailCache::evict);
+        } else {
+            messageIds.addAll(ids);
+        }
+        return lastSeq != null && seq > lastSeq + 1;
+    }
+
+    private void recover(String reason) {
+        gapsDetected.increment();
+        membershipCache.clear();
+        tailCache.clear();
+        Set<Long> userIds = sessionRegistry.getConnectedUserIds();
+        long after = Math.max(0, highestMessageId.get() - recoveryLookback);
+        log.warn("Fan-out {}; re-reading messages after id {} for {} connected users", reason, after, userIds.size());
+        for (Message message : messageDao.getMessagesForParticipantsAfter(after, new ArrayList<>(userIds), RECOVERY_LIMIT)) {
+            if (markDelivered(message.getMessageId())) {
+                recovered.increment();
+                tailCache.append(message);
+                delivery.deliver(message, null);
+            }
+        }
+    }
+
+    /**
+     * Records the id as delivered here.
+     * @return false if it had already been delivered
+     */
+    private boolean markDelivered(Long messageId) {
+        highestMessageId.accumulateAndGet(messageId, Math::max);
+        synchronized (recentIds) {
+            return recentIds.add(messageId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        publisherThread.join(TimeUnit.SECONDS.toMillis(10));
+        listenerThread.join(TimeUnit.SECONDS.toMillis(2));
+    }
+}
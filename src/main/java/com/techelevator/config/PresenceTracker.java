@@ -0,0 +1,80 @@
+package com.techelevator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is online, kept purely in memory. Every frame, pong or connect from a user's WebSocket counts as a heartbeat;
+ * a user is online until ttl-ms passes without one or their last session closes. Only users connected to this
+ * instance are known.
+ */
+@Component
+public class PresenceTracker {
+
+    private final Map<Long, Long> lastHeartbeat = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final ScheduledExecutorService sweeper;
+
+    public PresenceTracker(@Value("${chat.presence.ttl-ms:75000}") long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, ttlMillis, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void heartbeat(Long userId) {
+        lastHeartbeat.put(userId, System.currentTimeMillis());
+    }
+
+    /**
+     * Called when one of the user's sessions closes.
+     * @param stillConnected whether the user has other sessions open
+     */
+    public void disconnected(Long userId, boolean stillConnected) {
+        if (!stillConnected) {
+            lastHeartbeat.remove(userId);
+        }
+    }
+
+    public boolean isOnline(Long userId) {
+        Long last = lastHeartbeat.get(userId);
+        return last != null && System.currentTimeMillis() - last <= ttlMillis;
+    }
+
+    /**
+     * Online status of each of the given users, in the order given.
+     */
+    public Map<Long, Boolean> getPresence(Collection<Long> userIds) {
+        Map<Long, Boolean> presence = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            presence.put(userId, isOnline(userId));
+        }
+        return presence;
+    }
+
+    public int getOnlineCount() {
+        return lastHeartbeat.size();
+    }
+
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        lastHeartbeat.values().removeIf(last -> last < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -11,14 +11,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatWebSocketHandler chatWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
 
     @Autowired
-    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler) {
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler, JwtHandshakeInterceptor jwtHandshakeInterceptor) {
         this.chatWebSocketHandler = chatWebSocketHandler;
+        this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(chatWebSocketHandler, "/ws").setAllowedOrigins("*");
+        registry.addHandler(chatWebSocketHandler, "/ws")
+                .addInterceptors(jwtHandshakeInterceptor)
+                .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
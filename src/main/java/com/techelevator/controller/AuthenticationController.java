@@ -4,7 +4,6 @@ import javax.validation.Valid;
 
 import com.techelevator.dto.*;
 import com.techelevator.exception.DaoException;
-import com.techelevator.exception.UserCreationException;
 import com.techelevator.exception.UserNotFoundException;
 import com.techelevator.model.MusicianProfile;
 import com.techelevator.model.User;
@@ -12,6 +11,7 @@ import com.techelevator.dao.UserDao;
 import com.techelevator.dao.MusicianProfileDao;
 import com.techelevator.dao.VenueProfileDao;
 import com.techelevator.model.VenueProfile;
+import com.techelevator.security.AuthenticatedUser;
 import com.techelevator.security.jwt.JWTFilter;
 import com.techelevator.security.jwt.TokenProvider;
 import org.springframework.http.HttpHeaders;
@@ -53,7 +53,7 @@ public class AuthenticationController {
             SecurityContextHolder.getContext().setAuthentication(authentication);
             String jwt = tokenProvider.createToken(authentication, false);
 
-            User user = userDao.getUserByUsername(loginDto.getUsername());
+            User user = ((AuthenticatedUser) authentication.getPrincipal()).getUser();
             if (user == null) {
                 throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Username or password is incorrect.");
             }
@@ -96,7 +96,7 @@ public class AuthenticationController {
             } else {
                 return ResponseEntity.status(HttpStatus.CREATED).body(UserDto.fromUser(createdUser));
             }
-        } catch (DaoException | UserCreationException e) {
+        } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "User registration failed.", e);
         }
     }
@@ -1,6 +1,7 @@
 package com.techelevator.controller;
 
 import com.techelevator.dto.ConversationDto;
+import com.techelevator.dto.InboxEntryDto;
 import com.techelevator.dto.MessageDto;
 import com.techelevator.exception.DaoException;
 import com.techelevator.exception.UserNotFoundException;
@@ -10,13 +11,21 @@ import com.techelevator.model.User;
 import com.techelevator.dao.UserDao;
 import com.techelevator.dao.MessageDao;
 import com.techelevator.dao.ConversationDao;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageBatchWriter;
+import com.techelevator.config.ChatFanoutBus;
+import com.techelevator.config.PresenceTracker;
+import com.techelevator.security.AuthenticatedUser;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -24,20 +33,34 @@ import java.util.stream.Collectors;
 @RequestMapping("/messaging")
 public class MessagingController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final UserDao userDao;
     private final MessageDao messageDao;
     private final ConversationDao conversationDao;
+    private final MessageBatchWriter messageBatchWriter;
+    private final ConversationMembershipCache membershipCache;
+    private final ChatFanoutBus fanoutBus;
+    private final PresenceTracker presenceTracker;
 
-    public MessagingController(UserDao userDao, MessageDao messageDao, ConversationDao conversationDao) {
+    public MessagingController(UserDao userDao, MessageDao messageDao, ConversationDao conversationDao,
+                               MessageBatchWriter messageBatchWriter, ConversationMembershipCache membershipCache,
+                               ChatFanoutBus fanoutBus, PresenceTracker presenceTracker) {
         this.userDao = userDao;
         this.messageDao = messageDao;
         this.conversationDao = conversationDao;
+        this.messageBatchWriter = messageBatchWriter;
+        this.membershipCache = membershipCache;
+        this.fanoutBus = fanoutBus;
+        this.presenceTracker = presenceTracker;
     }
 
     @PostMapping("/conversations")
-    public ResponseEntity<Conversation> createConversation(@RequestBody ConversationDto conversationDto, Principal principal) {
+    public ResponseEntity<Conversation> createConversation(@RequestBody ConversationDto conversationDto,
+                                                           @AuthenticationPrincipal AuthenticatedUser currentUser) {
         try {
-            User sender = userDao.getUserByUsername(principal.getName());
+            User sender = new User(currentUser.getUserId());
             List<User> participants = conversationDto.getParticipants();
 
             // Ensure sender is in participants
@@ -53,25 +76,40 @@ public class MessagingController {
     }
 
     @PostMapping("/messages")
-    public ResponseEntity<Message> sendMessage(@RequestBody MessageDto messageDto, Principal principal) {
-        System.out.println("Received message from: " + principal.getName() + ", DTO: " + messageDto);
+    public ResponseEntity<Message> sendMessage(@RequestBody MessageDto messageDto,
+                                               @AuthenticationPrincipal AuthenticatedUser currentUser) {
+        System.out.println("Received message from: " + currentUser.getUsername() + ", DTO: " + messageDto);
+        requireParticipant(messageDto.getConversationId(), currentUser);
         try {
-            User sender = userDao.getUserByUsername(principal.getName());
-            Message message = messageDao.sendMessage(messageDto.getConversationId(), sender.getUserId(),
+            Message message = messageBatchWriter.submit(new Message(messageDto.getConversationId(), currentUser.getUserId(),
                     messageDto.getReceiverId(), messageDto.getContent(),
-                    messageDto.getParentMessageId());
+                    messageDto.getParentMessageId())).join();
             System.out.println("Message saved: " + message);
+            fanoutBus.publish(message, null);
             return new ResponseEntity<>(message, HttpStatus.CREATED);
         } catch (UserNotFoundException e) {
             System.out.println("User not found: " + e.getMessage());
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Failed to send message");
+        } catch (CompletionException e) {
+            System.out.println("Message not saved: " + e.getCause());
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to send message", e.getCause());
         }
     }
 
     @GetMapping("/conversations/{conversationId}/messages")
-    public ResponseEntity<List<Message>> getMessagesForConversation(@PathVariable Long conversationId, Principal principal) {
+    public ResponseEntity<List<Message>> getMessagesForConversation(
+            @PathVariable Long conversationId,
+            @RequestParam(value = "before", required = false) Long beforeMessageId,
+            @RequestParam(value = "after", required = false) Long afterMessageId,
+            @RequestParam(value = "sinceSeq", required = false) Long sinceSeq,
+            @RequestParam(value = "limit", defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @AuthenticationPrincipal AuthenticatedUser currentUser) {
+        requireParticipant(conversationId, currentUser);
         try {
-            List<Message> messages = messageDao.getMessagesByConversation(conversationId);
+            int pageSize = Math.min(Math.max(1, limit), MAX_PAGE_SIZE);
+            List<Message> messages = sinceSeq != null
+                    ? messageDao.getMessagesSinceSeq(conversationId, sinceSeq, pageSize)
+                    : messageDao.getMessagesPage(conversationId, beforeMessageId, afterMessageId, pageSize);
             return new ResponseEntity<>(messages, HttpStatus.OK);
         } catch (DaoException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found");
@@ -79,17 +117,17 @@ public class MessagingController {
     }
 
     @GetMapping("/conversations")
-    public ResponseEntity<List<ConversationDto>> getUserConversations(Principal principal) {
+    public ResponseEntity<List<ConversationDto>> getUserConversations(@AuthenticationPrincipal AuthenticatedUser currentUser) {
         try {
-            User user = userDao.getUserByUsername(principal.getName());
-            List<Conversation> conversations = conversationDao.getAllConversationsForUser(user.getUserId());
+            Long userId = currentUser.getUserId();
+            List<Conversation> conversations = conversationDao.getAllConversationsForUser(userId);
             List<ConversationDto> conversationDtos = conversations.stream().map(conv -> {
                 ConversationDto dto = new ConversationDto();
                 dto.setConversationId(conv.getConversationId());
                 dto.setCreatedAt(conv.getCreatedAt());
                 List<String> participantUsernames = conversationDao.getParticipants(conv.getConversationId())
                         .stream()
-                        .filter(u -> !u.getUserId().equals(user.getUserId()))
+                        .filter(u -> !u.getUserId().equals(userId))
                         .map(User::getUsername)
                         .collect(Collectors.toList());
                 dto.setParticipantNames(participantUsernames);
@@ -100,4 +138,58 @@ public class MessagingController {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
         }
     }
+
+    @PutMapping("/conversations/{conversationId}/read")
+    public ResponseEntity<Map<String, Integer>> markRead(@PathVariable Long conversationId,
+                                                         @RequestParam("upTo") Long messageId,
+                                                         @AuthenticationPrincipal AuthenticatedUser currentUser) {
+        if (!messageDao.markReadUpTo(conversationId, currentUser.getUserId(), messageId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found");
+        }
+        int unreadCount = messageDao.getUnreadCount(conversationId, currentUser.getUserId());
+        return ResponseEntity.ok(Map.of("unreadCount", unreadCount));
+    }
+
+    @GetMapping("/inbox")
+    public ResponseEntity<List<InboxEntryDto>> getInbox(
+            @AuthenticationPrincipal AuthenticatedUser currentUser,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        int pageSize = Math.min(Math.max(1, size), MAX_PAGE_SIZE);
+        return ResponseEntity.ok(conversationDao.getInbox(currentUser.getUserId(), Math.max(0, page), pageSize));
+    }
+
+    /**
+     * Online status of the given users (e.g. the caller's contacts from the inbox). Only users who share a
+     * conversation with the caller are answered for; anyone else is left out of the result, so presence can't be
+     * probed for strangers. Answered from memory: the caller's contacts are cached beside conversation membership.
+     */
+    @GetMapping("/presence")
+    public ResponseEntity<Map<Long, Boolean>> getPresence(@RequestParam("userIds") List<Long> userIds,
+                                                          @AuthenticationPrincipal AuthenticatedUser currentUser) {
+        if (userIds.size() > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many users requested");
+        }
+        Long callerId = currentUser.getUserId();
+        List<Long> visible = userIds.stream().filter(id -> membershipCache.isContact(callerId, id)).distinct()
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(presenceTracker.getPresence(visible));
+    }
+
+    @GetMapping("/conversations/{conversationId}/presence")
+    public ResponseEntity<Map<Long, Boolean>> getConversationPresence(@PathVariable Long conversationId,
+                                                                      @AuthenticationPrincipal AuthenticatedUser currentUser) {
+        requireParticipant(conversationId, currentUser);
+        List<Long> participantIds = new ArrayList<>();
+        for (long participantId : membershipCache.getParticipantIds(conversationId)) {
+            participantIds.add(participantId);
+        }
+        return ResponseEntity.ok(presenceTracker.getPresence(participantIds));
+    }
+
+    private void requireParticipant(Long conversationId, AuthenticatedUser currentUser) {
+        if (!membershipCache.isParticipant(conversationId, currentUser.getUserId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not a participant in this conversation");
+        }
+    }
 }
\ No newline at end of file
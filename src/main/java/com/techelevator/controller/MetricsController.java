@@ -0,0 +1,97 @@
+package com.techelevator.controller;
+
+import com.techelevator.config.ChatFanoutBus;
+import com.techelevator.config.ChatSession;
+import com.techelevator.config.ChatSessionRegistry;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageTailCache;
+import com.techelevator.security.jwt.TokenProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@CrossOrigin
+@RequestMapping("/admin/metrics")
+@PreAuthorize("hasRole('ADMIN')")
+public class MetricsController {
+
+    private final TokenProvider tokenProvider;
+    private final ChatSessionRegistry chatSessionRegistry;
+    private final ConversationMembershipCache membershipCache;
+    private final ChatFanoutBus fanoutBus;
+    private final MessageTailCache tailCache;
+
+    public MetricsController(TokenProvider tokenProvider, ChatSessionRegistry chatSessionRegistry,
+                             ConversationMembershipCache membershipCache, ChatFanoutBus fanoutBus,
+                             MessageTailCache tailCache) {
+        this.tokenProvider = tokenProvider;
+        this.chatSessionRegistry = chatSessionRegistry;
+        this.membershipCache = membershipCache;
+        this.fanoutBus = fanoutBus;
+        this.tailCache = tailCache;
+    }
+
+    @GetMapping("/auth")
+    public ResponseEntity<Map<String, Object>> getAuthMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("tokenCacheHits", tokenProvider.getCacheHits());
+        metrics.put("tokenCacheMisses", tokenProvider.getCacheMisses());
+        metrics.put("tokenCacheSize", tokenProvider.getCacheSize());
+        return ResponseEntity.ok(metrics);
+    }
+
+    @GetMapping("/membership")
+    public ResponseEntity<Map<String, Object>> getMembershipMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("membershipCacheHits", membershipCache.getHits());
+        metrics.put("membershipCacheMisses", membershipCache.getMisses());
+        metrics.put("membershipCacheSize", membershipCache.size());
+        return ResponseEntity.ok(metrics);
+    }
+
+    @GetMapping("/fanout")
+    public ResponseEntity<Map<String, Long>> getFanoutMetrics() {
+        return ResponseEntity.ok(fanoutBus.getMetrics());
+    }
+
+    @GetMapping("/tail-cache")
+    public ResponseEntity<Map<String, Object>> getTailCacheMetrics() {
+        long hits = tailCache.getHits();
+        long misses = tailCache.getMisses();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("tailCacheHits", hits);
+        metrics.put("tailCacheMisses", misses);
+        metrics.put("tailCacheHitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        metrics.put("tailCacheEvictions", tailCache.getEvictions());
+        metrics.put("tailCacheConversations", tailCache.size());
+        metrics.put("tailCacheBytes", tailCache.getBytes());
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * Outbound backlog per open chat socket, most lagging first.
+     */
+    @GetMapping("/ws")
+    public ResponseEntity<List<Map<String, Object>>> getWebSocketMetrics() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (ChatSession session : chatSessionRegistry.getAllSessions()) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("sessionId", session.getId());
+            metrics.put("userId", session.getUserId());
+            metrics.put("bufferedBytes", session.getBufferedBytes());
+            metrics.put("sendTimeMillis", session.getSendTimeMillis());
+            metrics.put("idleMillis", now - session.getLastActivity());
+            sessions.add(metrics);
+        }
+        sessions.sort(Comparator.comparing((Map<String, Object> m) -> (Integer) m.get("bufferedBytes")).reversed());
+        return ResponseEntity.ok(sessions);
+    }
+}
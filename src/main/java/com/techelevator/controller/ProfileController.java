@@ -1,18 +1,27 @@
 package com.techelevator.controller;
 
 import com.techelevator.dto.*;
+import com.techelevator.exception.DaoException;
 import com.techelevator.exception.UserNotFoundException;
 import com.techelevator.exception.UserDeletionException;
 import com.techelevator.model.*;
 import com.techelevator.dao.UserDao;
+import com.techelevator.dao.LineupSolver;
 import com.techelevator.dao.MusicianProfileDao;
+import com.techelevator.dao.MusicianSimilarityIndex;
 import com.techelevator.dao.VenueProfileDao;
+import com.techelevator.dao.ProfileFacetIndex;
+import com.techelevator.dao.ProximityIndex;
+import com.techelevator.dao.RecommendationIndex;
+import com.techelevator.dao.ZipCentroids;
+import com.techelevator.security.AuthenticatedUser;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
@@ -23,7 +32,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -33,40 +47,47 @@ import java.util.stream.Collectors;
 @PreAuthorize("isAuthenticated()")
 public class ProfileController {
 
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int MAX_LINEUP_SIZE = 6;
+    private static final int MAX_LINEUPS = 20;
+
     private final UserDao userDao;
     private final MusicianProfileDao musicianProfileDao;
     private final VenueProfileDao venueProfileDao;
+    private final ProfileFacetIndex facetIndex;
+    private final ProximityIndex proximityIndex;
+    private final RecommendationIndex recommendationIndex;
+    private final MusicianSimilarityIndex similarityIndex;
+    private final LineupSolver lineupSolver;
+    private final ZipCentroids zipCentroids;
 
-    public ProfileController(UserDao userDao, MusicianProfileDao musicianProfileDao, VenueProfileDao venueProfileDao) {
+    public ProfileController(UserDao userDao, MusicianProfileDao musicianProfileDao, VenueProfileDao venueProfileDao,
+                             ProfileFacetIndex facetIndex, ProximityIndex proximityIndex,
+                             RecommendationIndex recommendationIndex, MusicianSimilarityIndex similarityIndex,
+                             LineupSolver lineupSolver, ZipCentroids zipCentroids) {
         this.userDao = userDao;
         this.musicianProfileDao = musicianProfileDao;
         this.venueProfileDao = venueProfileDao;
+        this.facetIndex = facetIndex;
+        this.proximityIndex = proximityIndex;
+        this.recommendationIndex = recommendationIndex;
+        this.similarityIndex = similarityIndex;
+        this.lineupSolver = lineupSolver;
+        this.zipCentroids = zipCentroids;
     }
 
     @GetMapping("/{userId}")
     public ResponseEntity<UserDto> getUserById(@PathVariable Long userId, Principal principal) {
-        try {
-            User user = userDao.getUserById(userId);
-            if (user == null) return ResponseEntity.notFound().build();
-            UserDto dto = UserDto.fromUser(user);
-            if (user.getUserType() == User.UserType.Musician) {
-                MusicianProfile profile = musicianProfileDao.getMusicianProfileByUserId(userId);
-                if (profile != null) dto.setProfilePictureUrl(profile.getProfilePictureUrl());
-            } else if (user.getUserType() == User.UserType.VenueOwner) {
-                VenueProfile profile = venueProfileDao.getVenueProfileByUserId(userId);
-                if (profile != null) dto.setProfilePictureUrl(profile.getProfilePictureUrl());
-            }
-            return ResponseEntity.ok(dto);
-        } catch (UserNotFoundException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
-        }
+        UserDto dto = userDao.getUserCardById(userId);
+        if (dto == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(dto);
     }
 
     @DeleteMapping("/{username}")
-    public ResponseEntity<Void> deleteUserByUsername(@PathVariable String username, Principal principal) {
+    public ResponseEntity<Void> deleteUserByUsername(@PathVariable String username,
+                                                     @AuthenticationPrincipal AuthenticatedUser currentUser) {
         try {
-            User actingUser = userDao.getUserByUsername(principal.getName());
-            Long actingUserId = actingUser.getUserId();
+            Long actingUserId = currentUser.getUserId();
             userDao.deleteUserByUsername(username, actingUserId);
             return ResponseEntity.noContent().build();
         } catch (UserNotFoundException e) {
@@ -168,42 +189,348 @@ public class ProfileController {
     }
 
     @GetMapping("/list")
-    public ResponseEntity<List<UserDto>> getUsersByType(
+    public ResponseEntity<?> getUsersByType(
             @RequestParam(value = "userType", required = true) String userType,
             @RequestParam(value = "page", defaultValue = "0") int page,
-            @RequestParam(value = "size", defaultValue = "10") int size
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal
     ) {
         try {
             User.UserType type = User.UserType.valueOf(userType);
-            List<User> users = userDao.getUsersByType(type, page, size);
-            List<UserDto> dtos = users.stream().map(user -> {
-                UserDto dto = UserDto.fromUser(user);
-                try {
-                    if (user.getUserType() == User.UserType.Musician) {
-                        MusicianProfile profile = musicianProfileDao.getMusicianProfileByUserId(user.getUserId());
-                        if (profile != null) {
-                            dto.setProfilePictureUrl(profile.getProfilePictureUrl());
-                        }
-                    } else if (user.getUserType() == User.UserType.VenueOwner) {
-                        VenueProfile profile = venueProfileDao.getVenueProfileByUserId(user.getUserId());
-                        if (profile != null) {
-                            dto.setProfilePictureUrl(profile.getProfilePictureUrl());
-                        }
-                    }
-                } catch (Exception e) {
-                    // Log error but continue with null profilePictureUrl
-                    System.err.println("Error fetching profile for user " + user.getUserId() + ": " + e.getMessage());
-                }
-                return dto;
-            }).collect(Collectors.toList());
-            return ResponseEntity.ok(dtos);
+            if (cursor != null) {
+                return ResponseEntity.ok(getUserPage(type, cursor, size, includeTotal));
+            }
+            return ResponseEntity.ok(userDao.getUserCardsByType(type, page, size));
         } catch (IllegalArgumentException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid userType: " + userType);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid userType or cursor: " + userType);
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to fetch users", e);
         }
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<List<UserDto>> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(value = "userType", required = false) String userType,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "10") int size
+    ) {
+        if (query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query is required");
+        }
+        User.UserType type;
+        try {
+            type = userType != null ? User.UserType.valueOf(userType) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid userType: " + userType);
+        }
+        int pageSize = Math.min(Math.max(1, size), MAX_SEARCH_PAGE_SIZE);
+        return ResponseEntity.ok(userDao.searchUserCards(query, type, Math.max(0, page), pageSize));
+    }
+
+    /*
+        Discovery filters: repeat a parameter to match any of several values (genre=Rock&genre=Jazz); different
+        parameters must all match. Filtering and counting run against the in-memory facet index, and only the cards
+        on the requested page are read from the database.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<FacetSearchDto> getFacets(
+            @RequestParam(value = "userType", required = false) String userType,
+            @RequestParam(value = "genre", required = false) List<String> genres,
+            @RequestParam(value = "instrument", required = false) List<String> instruments,
+            @RequestParam(value = "city", required = false) List<String> cities,
+            @RequestParam(value = "venueType", required = false) List<String> venueTypes,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "facetValues", defaultValue = "20") int facetValues
+    ) {
+        User.UserType type;
+        try {
+            type = userType != null ? User.UserType.valueOf(userType) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid userType: " + userType);
+        }
+        Map<ProfileFacetIndex.Facet, List<String>> filters = new EnumMap<>(ProfileFacetIndex.Facet.class);
+        filters.put(ProfileFacetIndex.Facet.GENRE, genres);
+        filters.put(ProfileFacetIndex.Facet.INSTRUMENT, instruments);
+        filters.put(ProfileFacetIndex.Facet.CITY, cities);
+        filters.put(ProfileFacetIndex.Facet.VENUE_TYPE, venueTypes);
+
+        int pageSize = Math.min(Math.max(1, size), MAX_SEARCH_PAGE_SIZE);
+        ProfileFacetIndex.Result result = facetIndex.query(type, filters, Math.max(0, page) * pageSize, pageSize,
+                Math.max(0, facetValues));
+
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        facets.put("genre", result.getCounts().get(ProfileFacetIndex.Facet.GENRE));
+        facets.put("instrument", result.getCounts().get(ProfileFacetIndex.Facet.INSTRUMENT));
+        facets.put("city", result.getCounts().get(ProfileFacetIndex.Facet.CITY));
+        facets.put("venueType", result.getCounts().get(ProfileFacetIndex.Facet.VENUE_TYPE));
+        return ResponseEntity.ok(new FacetSearchDto(result.getTotal(), userDao.getUserCardsByIds(result.getUserIds()), facets));
+    }
+
+    /*
+        Cursor mode for /users/list: an empty cursor requests the first page, and each page hands back the cursor
+        for the next one. Pages are read with a keyset query, so deep pages cost the same as the first.
+     */
+    private UserPageDto getUserPage(User.UserType type, String cursor, int requestedSize, boolean includeTotal) {
+        int size = Math.max(1, requestedSize);
+        String afterUsername = null;
+        Long afterUserId = null;
+        if (!cursor.isEmpty()) {
+            UserPageDto.Cursor position = UserPageDto.decodeCursor(cursor);
+            afterUsername = position.getUsername();
+            afterUserId = position.getUserId();
+        }
+        List<UserDto> users = userDao.getUserCardsByTypeAfter(type, afterUsername, afterUserId, size + 1);
+        String nextCursor = null;
+        if (users.size() > size) {
+            users = users.subList(0, size);
+            UserDto last = users.get(size - 1);
+            nextCursor = UserPageDto.encodeCursor(last.getUsername(), last.getUserId());
+        }
+        Long estimatedTotal = includeTotal ? userDao.estimateUserCountByType(type) : null;
+        return new UserPageDto(users, nextCursor, estimatedTotal);
+    }
+
+    /*
+        Proximity search centered on a user's profile (?userId=) or a ZIP code (?zip=). With radiusMiles, returns
+        users within that distance, nearest first; without it, the limit nearest users. Candidates come from the
+        in-memory grid index, and only the returned cards are read from the database.
+     */
+    @GetMapping("/nearby")
+    public ResponseEntity<List<NearbyUserDto>> getNearbyUsers(
+            @RequestParam(value = "userId", required = false) Long userId,
+            @RequestParam(value = "zip", required = false) String zip,
+            @RequestParam(value = "radiusMiles", required = false) Double radiusMiles,
+            @RequestParam(value = "userType", required = false) String userType,
+            @RequestParam(value = "limit", defaultValue = "20") int limit
+    ) {
+        User.UserType type;
+        try {
+            type = userType != null ? User.UserType.valueOf(userType) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid userType: " + userType);
+        }
+        if (radiusMiles != null && radiusMiles <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "radiusMiles must be positive");
+        }
+        GeoPoint center;
+        if (userId != null) {
+            center = proximityIndex.locate(userId);
+            if (center == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No location known for user " + userId);
+            }
+        } else if (zip != null) {
+            center = zipCentroids.forZip(zip);
+            if (center == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown ZIP code: " + zip);
+            }
+        } else {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId or zip is required");
+        }
+
+        int max = Math.min(Math.max(1, limit), MAX_SEARCH_PAGE_SIZE);
+        List<ProximityIndex.Hit> hits = radiusMiles != null
+                ? proximityIndex.withinRadius(center, radiusMiles, type, userId, max)
+                : proximityIndex.nearest(center, max, type, userId);
+
+        List<Long> ids = hits.stream().map(ProximityIndex.Hit::getUserId).collect(Collectors.toList());
+        Map<Long, UserDto> cards = new HashMap<>();
+        for (UserDto card : userDao.getUserCardsByIds(ids)) {
+            cards.put(card.getUserId(), card);
+        }
+        List<NearbyUserDto> nearby = new ArrayList<>();
+        for (ProximityIndex.Hit hit : hits) {
+            UserDto card = cards.get(hit.getUserId());
+            if (card != null) {
+                nearby.add(new NearbyUserDto(card, hit.getDistanceMiles()));
+            }
+        }
+        return ResponseEntity.ok(nearby);
+    }
+
+    /*
+        Recommended venues for a musician, or musicians for a venue, best match first. Served from the precomputed
+        lists, so only the returned cards are read from the database.
+     */
+    @GetMapping("/{userId}/recommendations")
+    public ResponseEntity<List<RecommendationDto>> getRecommendations(
+            @PathVariable Long userId,
+            @RequestParam(value = "limit", defaultValue = "20") int limit
+    ) {
+        List<RecommendationIndex.Match> matches =
+                recommendationIndex.recommendationsFor(userId, Math.min(Math.max(1, limit), MAX_SEARCH_PAGE_SIZE));
+        if (matches == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No profile found for user " + userId);
+        }
+
+        List<Long> ids = matches.stream().map(RecommendationIndex.Match::getUserId).collect(Collectors.toList());
+        Map<Long, UserDto> cards = new HashMap<>();
+        for (UserDto card : userDao.getUserCardsByIds(ids)) {
+            cards.put(card.getUserId(), card);
+        }
+        List<RecommendationDto> recommendations = new ArrayList<>();
+        for (RecommendationIndex.Match match : matches) {
+            UserDto card = cards.get(match.getUserId());
+            if (card != null) {
+                recommendations.add(new RecommendationDto(card, match.getScore()));
+            }
+        }
+        return ResponseEntity.ok(recommendations);
+    }
+
+    /*
+        Musicians with the most similar genres and instruments to the given musician, most similar first. Approximate:
+        a close match is occasionally missed, but the returned ones are ranked by their exact similarity.
+     */
+    @GetMapping("/{userId}/similar")
+    public ResponseEntity<List<SimilarMusicianDto>> getSimilarMusicians(
+            @PathVariable Long userId,
+            @RequestParam(value = "limit", defaultValue = "10") int limit
+    ) {
+        List<MusicianSimilarityIndex.Hit> hits =
+                similarityIndex.similarTo(userId, Math.min(Math.max(1, limit), MAX_SEARCH_PAGE_SIZE));
+        if (hits == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No musician profile found for user " + userId);
+        }
+
+        List<Long> ids = hits.stream().map(MusicianSimilarityIndex.Hit::getUserId).collect(Collectors.toList());
+        Map<Long, UserDto> cards = new HashMap<>();
+        for (UserDto card : userDao.getUserCardsByIds(ids)) {
+            cards.put(card.getUserId(), card);
+        }
+        List<SimilarMusicianDto> similar = new ArrayList<>();
+        for (MusicianSimilarityIndex.Hit hit : hits) {
+            UserDto card = cards.get(hit.getUserId());
+            if (card != null) {
+                similar.add(new SimilarMusicianDto(card, hit.getSimilarity()));
+            }
+        }
+        return ResponseEntity.ok(similar);
+    }
+
+    /*
+        Lineups of musicians who between them play every requested instrument, e.g.
+        ?instrument=drums&instrument=bass&userId=12&radiusMiles=30 for "a drummer and a bassist who play my genres near
+        me". With userId the lineups are ranked by the genres they share with that musician, and the radius is around
+        them unless a zip is given. maxSize defaults to one musician per instrument.
+     */
+    @GetMapping("/lineups")
+    public ResponseEntity<LineupSearchDto> findLineups(
+            @RequestParam(value = "instrument") List<String> instruments,
+            @RequestParam(value = "userId", required = false) Long userId,
+            @RequestParam(value = "zip", required = false) String zip,
+            @RequestParam(value = "radiusMiles", required = false) Double radiusMiles,
+            @RequestParam(value = "maxSize", required = false) Integer maxSize,
+            @RequestParam(value = "limit", defaultValue = "5") int limit
+    ) {
+        MusicianProfile requester = null;
+        if (userId != null) {
+            try {
+                requester = musicianProfileDao.getMusicianProfileByUserId(userId);
+            } catch (DaoException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No musician profile found for user " + userId);
+            }
+        }
+        GeoPoint center = null;
+        if (zip != null) {
+            center = zipCentroids.forZip(zip);
+            if (center == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown ZIP code: " + zip);
+            }
+        } else if (requester != null && requester.getLatitude() != null && requester.getLongitude() != null) {
+            center = new GeoPoint(requester.getLatitude(), requester.getLongitude());
+        }
+        if (radiusMiles != null && (radiusMiles <= 0 || center == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "radiusMiles must be positive and needs a zip or a userId with a known location");
+        }
+
+        int size = Math.min(Math.max(1, maxSize != null ? maxSize : instruments.size()), MAX_LINEUP_SIZE);
+        LineupSolver.Result result;
+        try {
+            result = lineupSolver.solve(instruments, requester, center, radiusMiles, size,
+                    Math.min(Math.max(1, limit), MAX_LINEUPS));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        List<Long> ids = new ArrayList<>();
+        for (LineupSolver.Lineup lineup : result.getLineups()) {
+            ids.addAll(lineup.getMembers());
+        }
+        Map<Long, UserDto> cards = new HashMap<>();
+        for (UserDto card : userDao.getUserCardsByIds(ids.stream().distinct().collect(Collectors.toList()))) {
+            cards.put(card.getUserId(), card);
+        }
+        List<LineupDto> lineups = new ArrayList<>();
+        for (LineupSolver.Lineup lineup : result.getLineups()) {
+            List<LineupMemberDto> members = new ArrayList<>();
+            for (Long memberId : lineup.getMembers()) {
+                UserDto card = cards.get(memberId);
+                if (card != null) {
+                    members.add(new LineupMemberDto(card, lineup.getInstruments(memberId)));
+                }
+            }
+            if (members.size() == lineup.getMembers().size()) {
+                lineups.add(new LineupDto(members, result.getSharedGenres(lineup)));
+            }
+        }
+        return ResponseEntity.ok(new LineupSearchDto(lineups, result.isExhaustive()));
+    }
+
+    /*
+        Venue search for booking agents, e.g. ?minCapacity=200&maxCapacity=500&state=OH&genre=Jazz&amenity=PA System.
+        Repeat genre or amenity to match venues listing any of the values. Pages are keyset pages: pass the returned
+        nextCursor back as cursor to get the next one.
+     */
+    @GetMapping("/venues/search")
+    public ResponseEntity<VenuePageDto> searchVenues(
+            @RequestParam(value = "minCapacity", required = false) Integer minCapacity,
+            @RequestParam(value = "maxCapacity", required = false) Integer maxCapacity,
+            @RequestParam(value = "city", required = false) String city,
+            @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "genre", required = false) List<String> genres,
+            @RequestParam(value = "amenity", required = false) List<String> amenities,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size
+    ) {
+        if (minCapacity != null && maxCapacity != null && minCapacity > maxCapacity) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "minCapacity is greater than maxCapacity");
+        }
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setMinCapacity(minCapacity);
+        criteria.setMaxCapacity(maxCapacity);
+        criteria.setCity(city);
+        criteria.setState(state);
+        criteria.setGenres(genres);
+        criteria.setAmenities(amenities);
+
+        String afterName = null;
+        Long afterUserId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                VenuePageDto.Cursor position = VenuePageDto.decodeCursor(cursor);
+                afterName = position.getName();
+                afterUserId = position.getUserId();
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+
+        int pageSize = Math.min(Math.max(1, size), MAX_SEARCH_PAGE_SIZE);
+        List<VenueProfile> venues = venueProfileDao.searchVenues(criteria, afterName, afterUserId, pageSize + 1);
+        String nextCursor = null;
+        if (venues.size() > pageSize) {
+            venues = venues.subList(0, pageSize);
+            VenueProfile last = venues.get(pageSize - 1);
+            nextCursor = VenuePageDto.encodeCursor(last.getName(), last.getUser().getUserId());
+        }
+        List<VenueProfileDto> page = venues.stream().map(VenueProfileDto::fromEntity).collect(Collectors.toList());
+        return ResponseEntity.ok(new VenuePageDto(page, nextCursor));
+    }
+
     @PutMapping(value = "/{userId}/venue-profile", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<VenueProfile> updateVenueProfile(
             @PathVariable Long userId,
@@ -237,12 +564,12 @@ public class ProfileController {
             profile.setZipCode(zipCode != null ? zipCode : profile.getZipCode());
             profile.setCapacity(capacity != null ? capacity : profile.getCapacity());
             profile.setVenueType(venueType != null ? venueType : profile.getVenueType());
-            profile.setGenrePreferences(genrePreferences != null ? Arrays.asList(genrePreferences.split("\\s+")) : profile.getGenrePreferences());
+            profile.setGenrePreferences(genrePreferences != null ? splitCommaList(genrePreferences) : profile.getGenrePreferences());
             profile.setPhone(phone != null ? phone : profile.getPhone());
             profile.setEmail(email != null ? email : profile.getEmail());
             profile.setWebsiteUrl(websiteUrl != null ? websiteUrl : profile.getWebsiteUrl());
             profile.setOperatingHours(operatingHours != null ? operatingHours : profile.getOperatingHours());
-            profile.setAmenities(amenities != null ? Arrays.asList(amenities.split("\\s+")) : profile.getAmenities());
+            profile.setAmenities(amenities != null ? splitCommaList(amenities) : profile.getAmenities());
 
             if (profilePicture != null && !profilePicture.isEmpty()) {
                 String uploadDir = "C:/workspace/capstone/java/uploads/";
@@ -269,6 +596,14 @@ public class ProfileController {
         }
     }
 
+    // Genre preferences and amenities are comma-separated, since values like "PA System" contain spaces
+    private static List<String> splitCommaList(String text) {
+        return Arrays.stream(text.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toList());
+    }
+
 
 
     @PreAuthorize("permitAll()")
@@ -0,0 +1,263 @@
+package com.techelevator.dao;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints in the style of Roaring bitmaps. Values are split into chunks of 65,536 by
+ * their high 16 bits; a chunk holding at most 4,096 values is a sorted char array (2 bytes per value), and a denser
+ * one is a plain 8KB bitmap, so a set costs about as much as the values it holds rather than as its highest value.
+ * <p>
+ * Queries read it against plain word arrays: {@link #orInto} expands a set once, and {@link #andCardinality} then
+ * counts any number of sets against it at one bit test per value. Not thread-safe; ProfileFacetIndex guards its
+ * bitmaps with its read/write lock.
+ */
+final class CompressedBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    // Words of a plain bitmap covering one chunk
+    private static final int CHUNK_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            insert(-i - 1, key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    void remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i >= 0) {
+            containers[i] = containers[i].remove((char) value);
+            if (containers[i].cardinality() == 0) {
+                delete(i);
+            }
+        }
+    }
+
+    boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * Sets this bitmap's values in a plain bitmap; values past its end are left out.
+     */
+    void orInto(long[] words) {
+        for (int i = 0; i < size && keys[i] * CHUNK_WORDS < words.length; i++) {
+            containers[i].orInto(words, keys[i] * CHUNK_WORDS);
+        }
+    }
+
+    /**
+     * How many of this bitmap's values are also set in a plain bitmap, without building the intersection.
+     */
+    int andCardinality(long[] words) {
+        int count = 0;
+        for (int i = 0; i < size && keys[i] * CHUNK_WORDS < words.length; i++) {
+            count += containers[i].andCardinality(words, keys[i] * CHUNK_WORDS);
+        }
+        return count;
+    }
+
+    private int find(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int at, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        size++;
+    }
+
+    private void delete(int at) {
+        System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+        containers[--size] = null;
+    }
+
+    // The low 16 bits of the values in one chunk. Writes return the container to use from then on, since a container
+    // switches representation as it crosses ARRAY_MAX; the word offset is where the chunk starts in a plain bitmap
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract void orInto(long[] words, int wordOffset);
+
+        abstract int andCardinality(long[] words, int wordOffset);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            int at = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, at, values, at + 1, cardinality - at);
+            values[at] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void orInto(long[] words, int wordOffset) {
+            for (int i = 0; i < cardinality; i++) {
+                int word = wordOffset + (values[i] >>> 6);
+                if (word < words.length) {
+                    words[word] |= 1L << values[i];
+                }
+            }
+        }
+
+        @Override
+        int andCardinality(long[] words, int wordOffset) {
+            int count = 0;
+            // Only the last chunk can run past the end of the words
+            if (wordOffset + CHUNK_WORDS <= words.length) {
+                for (int i = 0; i < cardinality; i++) {
+                    count += (int) (words[wordOffset + (values[i] >>> 6)] >>> values[i]) & 1;
+                }
+                return count;
+            }
+            for (int i = 0; i < cardinality; i++) {
+                int word = wordOffset + (values[i] >>> 6);
+                if (word < words.length) {
+                    count += (int) (words[word] >>> values[i]) & 1;
+                }
+            }
+            return count;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[CHUNK_WORDS];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        void orInto(long[] words, int wordOffset) {
+            int end = Math.min(CHUNK_WORDS, words.length - wordOffset);
+            for (int i = 0; i < end; i++) {
+                words[wordOffset + i] |= this.words[i];
+            }
+        }
+
+        @Override
+        int andCardinality(long[] words, int wordOffset) {
+            int end = Math.min(CHUNK_WORDS, words.length - wordOffset);
+            int count = 0;
+            for (int i = 0; i < end; i++) {
+                count += Long.bitCount(this.words[i] & words[wordOffset + i]);
+            }
+            return count;
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[cardinality];
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    array.values[array.cardinality++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return array;
+        }
+    }
+}
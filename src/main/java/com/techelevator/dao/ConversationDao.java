@@ -1,5 +1,6 @@
 package com.techelevator.dao;
 
+import com.techelevator.dto.InboxEntryDto;
 import com.techelevator.model.Conversation;
 import com.techelevator.model.User;
 
@@ -13,6 +14,13 @@ public interface ConversationDao {
     boolean removeUserFromConversation(Long conversationId, Long userId);
     boolean deleteConversation(Long conversationId, Long userId);
     List<User> getParticipants(Long conversationId);
+    List<Long> getParticipantIds(Long conversationId);
+
+    /**
+     * A page of the user's conversations, most recently active first, each with the other participants' names,
+     * the latest message and the user's unread count. Read in a single query.
+     */
+    List<InboxEntryDto> getInbox(Long userId, int page, int size);
 
     // New method
     Conversation getConversationBetweenUsers(Long userId1, Long userId2);
@@ -0,0 +1,216 @@
+package com.techelevator.dao;
+
+import com.techelevator.exception.DaoException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Participant ids per conversation, kept in memory as sorted long arrays so that membership checks on every send
+ * and the WebSocket fan-out cost no database read once a conversation is warm. Entries are loaded lazily from
+ * conversation_participants and dropped whenever JdbcConversationDao changes a conversation's participants.
+ * <p>
+ * Beside them, each user's contacts (everyone they share a conversation with) are kept the same way for presence
+ * checks. A participant change can add or remove contacts for users the cache can't tell from the conversation id
+ * alone, so every change drops all cached contacts; they are rare next to presence polls.
+ * <p>
+ * Other app instances learn of those changes through the invalidation listeners; with Postgres fan-out the bus
+ * forwards them so a removed participant loses access on every instance, not just the one that removed them.
+ */
+@Component
+public class ConversationMembershipCache {
+
+    private static final long[] NO_PARTICIPANTS = new long[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxSize;
+    private final Map<Long, long[]> participants = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> contacts = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with a change is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final List<Consumer<Long>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    public ConversationMembershipCache(JdbcTemplate jdbcTemplate,
+                                       @Value("${chat.membership-cache.max-size:50000}") int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sorted ids of the conversation's participants; empty if the conversation doesn't exist.
+     * The returned array is shared and must not be modified.
+     */
+    public long[] getParticipantIds(Long conversationId) {
+        long[] ids = participants.get(conversationId);
+        if (ids != null) {
+            hits.increment();
+            return ids;
+        }
+        misses.increment();
+        long loadedAt = generation.get();
+        ids = load(conversationId);
+        if (maxSize > 0 && generation.get() == loadedAt) {
+            if (participants.size() >= maxSize) {
+                evictSome(participants);
+            }
+            participants.put(conversationId, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Sorted ids of everyone who shares at least one conversation with the user, not including the user.
+     * The returned array is shared and must not be modified.
+     */
+    public long[] getContactIds(Long userId) {
+        long[] ids = contacts.get(userId);
+        if (ids != null) {
+            hits.increment();
+            return ids;
+        }
+        misses.increment();
+        long loadedAt = generation.get();
+        ids = loadIds("SELECT DISTINCT other.user_id FROM conversation_participants mine " +
+                        "JOIN conversation_participants other ON other.conversation_id = mine.conversation_id " +
+                        "WHERE mine.user_id = ? AND other.user_id <> mine.user_id ORDER BY other.user_id",
+                userId, "Failed to load contacts for user " + userId);
+        if (maxSize > 0 && generation.get() == loadedAt) {
+            if (contacts.size() >= maxSize) {
+                evictSome(contacts);
+            }
+            contacts.put(userId, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * Whether the two users share a conversation; a user always counts as their own contact.
+     */
+    public boolean isContact(Long userId, Long otherUserId) {
+        return userId != null && otherUserId != null
+                && (userId.equals(otherUserId) || Arrays.binarySearch(getContactIds(userId), otherUserId) >= 0);
+    }
+
+    public boolean isParticipant(Long conversationId, Long userId) {
+        return conversationId != null && userId != null
+                && Arrays.binarySearch(getParticipantIds(conversationId), userId) >= 0;
+    }
+
+    /**
+     * Drops the cached participants. Inside a transaction the entry is dropped again after commit, so a reader that
+     * loaded the pre-commit participants in between doesn't leave them cached.
+     */
+    public void invalidate(Long conversationId) {
+        evict(conversationId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(conversationId);
+                    if (status == STATUS_COMMITTED) {
+                        notifyInvalidated(conversationId);
+                    }
+                }
+            });
+        } else {
+            notifyInvalidated(conversationId);
+        }
+    }
+
+    /**
+     * Drops the cached participants because another instance changed them; listeners are not told.
+     */
+    public void evict(Long conversationId) {
+        generation.incrementAndGet();
+        participants.remove(conversationId);
+        contacts.clear();
+    }
+
+    /**
+     * Drops everything, for when invalidations from other instances may have been missed.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        participants.clear();
+        contacts.clear();
+    }
+
+    /**
+     * Registers a callback run with the conversation id after each committed participant change made here.
+     */
+    public void addInvalidationListener(Consumer<Long> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return participants.size();
+    }
+
+    private long[] load(Long conversationId) {
+        return loadIds("SELECT user_id FROM conversation_participants WHERE conversation_id = ? ORDER BY user_id",
+                conversationId, "Failed to load participants for conversation " + conversationId);
+    }
+
+    // Runs a query for one sorted column of user ids
+    private long[] loadIds(String sql, Long id, String failureMessage) {
+        try {
+            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, id);
+            long[] ids = new long[8];
+            int count = 0;
+            while (results.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = results.getLong("user_id");
+            }
+            return count == 0 ? NO_PARTICIPANTS : Arrays.copyOf(ids, count);
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        } catch (DataAccessException e) {
+            throw new DaoException(failureMessage, e);
+        }
+    }
+
+    private void notifyInvalidated(Long conversationId) {
+        for (Consumer<Long> listener : invalidationListeners) {
+            listener.accept(conversationId);
+        }
+    }
+
+    /**
+     * Drops an arbitrary tenth of one of the maps; evicted entries are simply reloaded on next use.
+     */
+    private void evictSome(Map<Long, long[]> entries) {
+        int toRemove = entries.size() - maxSize + Math.max(1, maxSize / 10);
+        Iterator<Long> keys = entries.keySet().iterator();
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
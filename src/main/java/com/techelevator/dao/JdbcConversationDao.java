@@ -1,21 +1,35 @@
 package com.techelevator.dao;
 
+import com.techelevator.dto.InboxEntryDto;
 import com.techelevator.model.Conversation;
 import com.techelevator.model.User;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @Component
 public class JdbcConversationDao implements ConversationDao {
 
+    private static final int PREVIEW_LENGTH = 140;
+
     private final JdbcTemplate jdbcTemplate;
+    private final ConversationMembershipCache membershipCache;
 
-    public JdbcConversationDao(JdbcTemplate jdbcTemplate) {
+    public JdbcConversationDao(JdbcTemplate jdbcTemplate, ConversationMembershipCache membershipCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.membershipCache = membershipCache;
     }
 
     @Override
@@ -36,41 +50,52 @@ public class JdbcConversationDao implements ConversationDao {
     }
 
     @Override
+    @Transactional
     public Conversation createConversation(User sender, List<User> participants) {
-        // For 1:1 conversations, check if one exists
-        if (participants.size() == 2) {
-            Long userId1 = sender.getUserId();
-            Long userId2 = participants.stream()
-                    .filter(p -> !p.getUserId().equals(userId1))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalArgumentException("Sender must be in participants"))
-                    .getUserId();
-
-            Conversation existingConvo = getConversationBetweenUsers(userId1, userId2);
-            if (existingConvo != null) {
-                existingConvo.setParticipants(getParticipants(existingConvo.getConversationId()));
-                return existingConvo; // Reuse existing conversation
-            }
+        Set<Long> participantIds = new LinkedHashSet<>();
+        participantIds.add(sender.getUserId());
+        for (User participant : participants) {
+            participantIds.add(participant.getUserId());
         }
 
-        // Create new conversation
-        String sql = "INSERT INTO conversations (created_at) VALUES (CURRENT_TIMESTAMP) RETURNING conversation_id";
-        Long conversationId = jdbcTemplate.queryForObject(sql, Long.class);
-
-        String participantSql = "INSERT INTO conversation_participants (conversation_id, user_id) " +
-                "VALUES (?, ?) ON CONFLICT (conversation_id, user_id) DO NOTHING";
-        jdbcTemplate.update(participantSql, conversationId, sender.getUserId());
-        for (User participant : participants) {
-            jdbcTemplate.update(participantSql, conversationId, participant.getUserId());
+        Conversation conv;
+        if (participantIds.size() == 2) {
+            Iterator<Long> ids = participantIds.iterator();
+            conv = openDirectConversation(ids.next(), ids.next());
+        } else {
+            String sql = "INSERT INTO conversations (created_at) VALUES (CURRENT_TIMESTAMP) RETURNING conversation_id, created_at";
+            conv = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapRowToConversation(rs));
         }
 
-        Conversation conv = new Conversation();
-        conv.setConversationId(conversationId);
-        conv.setCreatedAt(new java.util.Date());
-        conv.setParticipants(getParticipants(conversationId));
+        addParticipants(conv.getConversationId(), participantIds);
+        membershipCache.invalidate(conv.getConversationId());
+        conv.setParticipants(getParticipants(conv.getConversationId()));
         return conv;
     }
 
+    /*
+        A 1:1 conversation is identified by its canonical (lower id, higher id) pair, which has a unique constraint.
+        The upsert either creates the conversation or returns the existing one in a single atomic statement, so two
+        users opening a DM with each other at the same time still end up in the same conversation.
+     */
+    private Conversation openDirectConversation(Long userId1, Long userId2) {
+        String sql = "INSERT INTO conversations (created_at, dm_user_low, dm_user_high) " +
+                "VALUES (CURRENT_TIMESTAMP, ?, ?) " +
+                "ON CONFLICT (dm_user_low, dm_user_high) DO UPDATE SET dm_user_low = EXCLUDED.dm_user_low " +
+                "RETURNING conversation_id, created_at";
+        return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> mapRowToConversation(rs),
+                Math.min(userId1, userId2), Math.max(userId1, userId2));
+    }
+
+    private void addParticipants(Long conversationId, Collection<Long> userIds) {
+        String sql = "INSERT INTO conversation_participants (conversation_id, user_id) " +
+                "VALUES (?, ?) ON CONFLICT (conversation_id, user_id) DO NOTHING";
+        jdbcTemplate.batchUpdate(sql, userIds, userIds.size(), (ps, userId) -> {
+            ps.setLong(1, conversationId);
+            ps.setLong(2, userId);
+        });
+    }
+
     @Override
     public Conversation getConversationById(Long conversationId) {
         String sql = "SELECT conversation_id, created_at " +
@@ -104,6 +129,50 @@ public class JdbcConversationDao implements ConversationDao {
         }, conversationId);
     }
 
+    @Override
+    public List<Long> getParticipantIds(Long conversationId) {
+        String sql = "SELECT user_id FROM conversation_participants WHERE conversation_id = ?";
+        return jdbcTemplate.queryForList(sql, Long.class, conversationId);
+    }
+
+    @Override
+    public List<InboxEntryDto> getInbox(Long userId, int page, int size) {
+        String sql = "SELECT c.conversation_id, c.created_at, " +
+                "lm.message_id AS last_message_id, lm.sender_id AS last_sender_id, " +
+                "LEFT(lm.content, " + PREVIEW_LENGTH + ") AS last_message_preview, lm.sent_at AS last_message_at, " +
+                "ARRAY(SELECT u.username FROM conversation_participants op " +
+                "      JOIN users u ON u.user_id = op.user_id " +
+                "      WHERE op.conversation_id = c.conversation_id AND op.user_id <> cp.user_id " +
+                "      ORDER BY u.username) AS participant_names, " +
+                "(SELECT COUNT(*) FROM messages m " +
+                " WHERE m.conversation_id = c.conversation_id AND m.message_id > cp.last_read_message_id " +
+                " AND m.sender_id <> cp.user_id) AS unread_count " +
+                "FROM conversation_participants cp " +
+                "JOIN conversations c ON c.conversation_id = cp.conversation_id " +
+                "LEFT JOIN LATERAL (SELECT message_id, sender_id, content, sent_at FROM messages m " +
+                "                   WHERE m.conversation_id = c.conversation_id " +
+                "                   ORDER BY seq DESC LIMIT 1) lm ON true " +
+                "WHERE cp.user_id = ? " +
+                "ORDER BY COALESCE(lm.sent_at, c.created_at) DESC, c.conversation_id DESC " +
+                "LIMIT ? OFFSET ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            InboxEntryDto entry = new InboxEntryDto();
+            entry.setConversationId(rs.getLong("conversation_id"));
+            entry.setCreatedAt(rs.getTimestamp("created_at"));
+            long lastMessageId = rs.getLong("last_message_id");
+            if (!rs.wasNull()) {
+                entry.setLastMessageId(lastMessageId);
+                entry.setLastSenderId(rs.getLong("last_sender_id"));
+                entry.setLastMessagePreview(rs.getString("last_message_preview"));
+                entry.setLastMessageAt(rs.getTimestamp("last_message_at"));
+            }
+            Array names = rs.getArray("participant_names");
+            entry.setParticipantNames(names != null ? Arrays.asList((String[]) names.getArray()) : new ArrayList<>());
+            entry.setUnreadCount(rs.getInt("unread_count"));
+            return entry;
+        }, userId, size, page * size);
+    }
+
     @Override
     public boolean addUserToConversation(Long conversationId, Long userId) {
         String checkSql = "SELECT COUNT(*) FROM conversation_participants " +
@@ -123,6 +192,12 @@ public class JdbcConversationDao implements ConversationDao {
 
         String sql = "INSERT INTO conversation_participants (conversation_id, user_id) VALUES (?, ?)";
         int rowsAffected = jdbcTemplate.update(sql, conversationId, userId);
+
+        // A third participant turns a 1:1 conversation into a group, so it no longer owns the pair key
+        String dmSql = "UPDATE conversations SET dm_user_low = NULL, dm_user_high = NULL " +
+                "WHERE conversation_id = ? AND dm_user_low IS NOT NULL";
+        jdbcTemplate.update(dmSql, conversationId);
+        membershipCache.invalidate(conversationId);
         return rowsAffected > 0;
     }
 
@@ -131,6 +206,7 @@ public class JdbcConversationDao implements ConversationDao {
         String sql = "DELETE FROM conversation_participants " +
                 "WHERE conversation_id = ? AND user_id = ?";
         int rowsAffected = jdbcTemplate.update(sql, conversationId, userId);
+        membershipCache.invalidate(conversationId);
         return rowsAffected > 0;
     }
 
@@ -149,27 +225,23 @@ public class JdbcConversationDao implements ConversationDao {
 
         String deleteSql = "DELETE FROM conversations WHERE conversation_id = ?";
         int rowsAffected = jdbcTemplate.update(deleteSql, conversationId);
+        membershipCache.invalidate(conversationId);
         return rowsAffected > 0;
     }
 
     @Override
     public Conversation getConversationBetweenUsers(Long userId1, Long userId2) {
-        String sql = "SELECT c.conversation_id, c.created_at " +
-                "FROM conversations c " +
-                "JOIN conversation_participants cp1 ON c.conversation_id = cp1.conversation_id " +
-                "JOIN conversation_participants cp2 ON c.conversation_id = cp2.conversation_id " +
-                "WHERE cp1.user_id = ? AND cp2.user_id = ? AND " +
-                "(SELECT COUNT(*) FROM conversation_participants cp WHERE cp.conversation_id = c.conversation_id) = 2";
-
-        try {
-            return jdbcTemplate.queryForObject(sql, new Object[]{userId1, userId2}, (rs, rowNum) -> {
-                Conversation convo = new Conversation();
-                convo.setConversationId(rs.getLong("conversation_id"));
-                convo.setCreatedAt(rs.getTimestamp("created_at"));
-                return convo;
-            });
-        } catch (Exception e) {
-            return null; // No 1:1 conversation found
-        }
+        String sql = "SELECT conversation_id, created_at FROM conversations " +
+                "WHERE dm_user_low = ? AND dm_user_high = ?";
+        List<Conversation> results = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToConversation(rs),
+                Math.min(userId1, userId2), Math.max(userId1, userId2));
+        return results.isEmpty() ? null : results.get(0); // No 1:1 conversation found
+    }
+
+    private Conversation mapRowToConversation(ResultSet rs) throws SQLException {
+        Conversation convo = new Conversation();
+        convo.setConversationId(rs.getLong("conversation_id"));
+        convo.setCreatedAt(rs.getTimestamp("created_at"));
+        return convo;
     }
-}
\ No newline at end of file
+}
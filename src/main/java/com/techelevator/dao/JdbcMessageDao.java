@@ -1,103 +1,322 @@
 package com.techelevator.dao;
 
+import com.techelevator.exception.DaoException;
 import com.techelevator.model.Message;
+import com.techelevator.model.ReadCursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Repository
 public class JdbcMessageDao implements MessageDao {
 
     private final JdbcTemplate jdbcTemplate;
+    private final MessageTailCache tailCache;
 
     @Autowired
-    public JdbcMessageDao(JdbcTemplate jdbcTemplate) {
+    public JdbcMessageDao(JdbcTemplate jdbcTemplate, MessageTailCache tailCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.tailCache = tailCache;
     }
 
+    private static final String MESSAGE_COLUMNS =
+            "message_id, conversation_id, sender_id, receiver_id, content, parent_message_id, seq, sent_at ";
+
     private static final RowMapper<Message> messageRowMapper = (rs, rowNum) -> {
         Message message = new Message();
         message.setMessageId(rs.getLong("message_id"));
         message.setConversationId(rs.getLong("conversation_id"));
         message.setSenderId(rs.getLong("sender_id"));
-        message.setReceiverId(rs.getLong("receiver_id"));
+        message.setReceiverId(rs.getObject("receiver_id", Long.class));
         message.setContent(rs.getString("content"));
-        message.setParentMessageId(rs.getLong("parent_message_id"));
+        message.setParentMessageId(rs.getObject("parent_message_id", Long.class));
+        message.setSeq(rs.getLong("seq"));
         Timestamp sentAt = rs.getTimestamp("sent_at");
         message.setSentAt(sentAt != null ? sentAt.toString() : null); // Convert Timestamp to String
         return message;
     };
 
+    // Client-supplied cursors are clamped to the newest message of the conversation at or below them, so an id past
+    // the end, from another conversation or out of INT range can't fail the statement or point past the history
+    private static final String READ_CURSOR_SQL = "UPDATE conversation_participants " +
+            "SET last_read_message_id = GREATEST(last_read_message_id, COALESCE(" +
+            "    (SELECT MAX(message_id) FROM messages WHERE conversation_id = ? AND message_id <= ?), 0)) " +
+            "WHERE conversation_id = ? AND user_id = ?";
+
     @Override
     @Transactional
     public Message sendMessage(Long conversationId, Long senderId, Long receiverId, String content, Long parentMessageId) {
-        String sql = "INSERT INTO messages (conversation_id, sender_id, receiver_id, content, parent_message_id, sent_at) " +
-                "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP) RETURNING message_id";
-
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql, new String[]{"message_id"});
-            ps.setLong(1, conversationId);
-            ps.setLong(2, senderId);
-            ps.setObject(3, receiverId);
-            ps.setString(4, content);
-            ps.setObject(5, parentMessageId);
-            return ps;
-        }, keyHolder);
+        // Bumping last_seq row-locks the conversation until commit, so seq follows commit order within a conversation
+        String sql = "WITH next AS (" +
+                "    UPDATE conversations SET last_seq = last_seq + 1 WHERE conversation_id = ? RETURNING last_seq) " +
+                "INSERT INTO messages (conversation_id, sender_id, receiver_id, content, parent_message_id, seq, sent_at) " +
+                "SELECT ?::int, ?::int, ?::int, ?, ?::int, next.last_seq, CURRENT_TIMESTAMP FROM next " +
+                "RETURNING " + MESSAGE_COLUMNS;
+        List<Message> saved = jdbcTemplate.query(sql, messageRowMapper,
+                conversationId, conversationId, senderId, receiverId, content, parentMessageId);
+        if (saved.isEmpty()) {
+            throw new DaoException("Conversation " + conversationId + " does not exist");
+        }
+        tailCache.append(saved.get(0));
+        return saved.get(0);
+    }
 
-        Message message = new Message();
-        message.setMessageId(Objects.requireNonNull(keyHolder.getKey()).longValue());
-        message.setConversationId(conversationId);
-        message.setSenderId(senderId);
-        message.setReceiverId(receiverId);
-        message.setContent(content);
-        message.setParentMessageId(parentMessageId);
-        message.setSentAt(new Timestamp(System.currentTimeMillis()).toString()); // Convert to String
-        return message;
+    @Override
+    @Transactional
+    public List<Message> sendMessages(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Reserve a block of sequence numbers per conversation. Locking in id order keeps concurrent batches that
+        // share conversations from deadlocking.
+        Map<Long, Integer> counts = new TreeMap<>();
+        for (Message message : messages) {
+            counts.merge(message.getConversationId(), 1, Integer::sum);
+        }
+        Long[] conversationIds = counts.keySet().toArray(new Long[0]);
+        Integer[] increments = counts.values().toArray(new Integer[0]);
+        jdbcTemplate.query("SELECT conversation_id FROM conversations WHERE conversation_id = ANY(?) " +
+                        "ORDER BY conversation_id FOR UPDATE",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", conversationIds)),
+                rs -> null);
+        String seqSql = "UPDATE conversations c SET last_seq = c.last_seq + v.n " +
+                "FROM unnest(?::bigint[], ?::int[]) AS v(conversation_id, n) " +
+                "WHERE c.conversation_id = v.conversation_id " +
+                "RETURNING c.conversation_id, c.last_seq - v.n AS first_seq";
+        Map<Long, Long> nextSeq = new HashMap<>();
+        jdbcTemplate.query(seqSql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", conversationIds));
+            ps.setArray(2, ps.getConnection().createArrayOf("int", increments));
+        }, rs -> {
+            nextSeq.put(rs.getLong("conversation_id"), rs.getLong("first_seq"));
+        });
+        if (nextSeq.size() != counts.size()) {
+            throw new DaoException("Batch refers to a conversation that does not exist");
+        }
+
+        // Reserve the ids up front so each saved message can be matched to its id without relying on RETURNING order.
+        // CURRENT_TIMESTAMP is fixed for the transaction, so it is also exactly what the insert stores in sent_at.
+        String idSql = "SELECT nextval(pg_get_serial_sequence('messages', 'message_id')) AS message_id, " +
+                "CURRENT_TIMESTAMP AS sent_at FROM generate_series(1, ?)";
+        List<Message> saved = new ArrayList<>();
+        SqlRowSet ids = jdbcTemplate.queryForRowSet(idSql, messages.size());
+        for (Message message : messages) {
+            ids.next();
+            Message copy = new Message();
+            copy.setMessageId(ids.getLong("message_id"));
+            copy.setConversationId(message.getConversationId());
+            copy.setSenderId(message.getSenderId());
+            copy.setReceiverId(message.getReceiverId());
+            copy.setContent(message.getContent());
+            copy.setParentMessageId(message.getParentMessageId());
+            copy.setSeq(nextSeq.merge(message.getConversationId(), 1L, Long::sum));
+            copy.setSentAt(ids.getTimestamp("sent_at").toString());
+            saved.add(copy);
+        }
+
+        String sql = "INSERT INTO messages (message_id, conversation_id, sender_id, receiver_id, content, parent_message_id, seq, sent_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+        jdbcTemplate.batchUpdate(sql, saved, saved.size(), (ps, message) -> {
+            ps.setLong(1, message.getMessageId());
+            ps.setLong(2, message.getConversationId());
+            ps.setLong(3, message.getSenderId());
+            ps.setObject(4, message.getReceiverId());
+            ps.setString(5, message.getContent());
+            ps.setObject(6, message.getParentMessageId());
+            ps.setLong(7, message.getSeq());
+        });
+        for (Message message : saved) {
+            tailCache.append(message);
+        }
+        return saved;
     }
 
     @Override
     public List<Message> getMessagesByConversation(Long conversationId) {
-        String sql = "SELECT * FROM messages WHERE conversation_id = ? ORDER BY sent_at ASC";
+        List<Message> cached = tailCache.getAll(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages WHERE conversation_id = ? ORDER BY seq";
         return jdbcTemplate.query(sql, messageRowMapper, conversationId);
     }
 
     @Override
-    @Transactional
+    public List<Message> getMessagesPage(Long conversationId, Long beforeMessageId, Long afterMessageId, int limit) {
+        if (beforeMessageId == null && afterMessageId == null) {
+            return tailCache.getLatest(conversationId, limit, n -> getLatestMessages(conversationId, n));
+        }
+        List<Message> cached = tailCache.getPage(conversationId, beforeMessageId, afterMessageId, limit);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Cursors compare on message_id, which rises with seq within a conversation because both are taken under the
+        // conversation's row lock. Unlike looking up the cursor's seq, this still works once the cursor is deleted.
+        if (afterMessageId != null && beforeMessageId == null) {
+            String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages " +
+                    "WHERE conversation_id = ? " +
+                    "AND message_id > ? " +
+                    "ORDER BY message_id " +
+                    "LIMIT ?";
+            return jdbcTemplate.query(sql, messageRowMapper, conversationId, afterMessageId, limit);
+        }
+
+        // Walk the index backwards from the cursor, then flip to oldest-first
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages " +
+                "WHERE conversation_id = ? " +
+                "AND message_id < ? " +
+                "ORDER BY message_id DESC " +
+                "LIMIT ?";
+        List<Message> page = jdbcTemplate.query(sql, messageRowMapper, conversationId, beforeMessageId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    private List<Message> getLatestMessages(Long conversationId, int limit) {
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages " +
+                "WHERE conversation_id = ? " +
+                "ORDER BY seq DESC " +
+                "LIMIT ?";
+        List<Message> page = jdbcTemplate.query(sql, messageRowMapper, conversationId, limit);
+        Collections.reverse(page);
+        return page;
+    }
+
+    @Override
+    public List<Message> getMessagesSinceSeq(Long conversationId, long sinceSeq, int limit) {
+        List<Message> cached = tailCache.getSinceSeq(conversationId, sinceSeq, limit);
+        if (cached != null) {
+            return cached;
+        }
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages " +
+                "WHERE conversation_id = ? AND seq > ? " +
+                "ORDER BY seq " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sql, messageRowMapper, conversationId, sinceSeq, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages WHERE message_id = ANY(?) ORDER BY message_id";
+        return jdbcTemplate.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", messageIds.toArray())),
+                messageRowMapper);
+    }
+
+    @Override
+    public List<Message> getMessagesForParticipantsAfter(long afterMessageId, Collection<Long> userIds, int limit) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT " + MESSAGE_COLUMNS + "FROM messages " +
+                "WHERE message_id > ? " +
+                "AND conversation_id IN (SELECT conversation_id FROM conversation_participants WHERE user_id = ANY(?)) " +
+                "ORDER BY message_id " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sql, ps -> {
+            ps.setLong(1, afterMessageId);
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", userIds.toArray()));
+            ps.setInt(3, limit);
+        }, messageRowMapper);
+    }
+
+    @Override
+    public List<Message> getMessagesAfter(Map<Long, Long> lastSeenByConversation, int limit) {
+        if (lastSeenByConversation.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Long[] conversationIds = new Long[lastSeenByConversation.size()];
+        Long[] afterIds = new Long[lastSeenByConversation.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : lastSeenByConversation.entrySet()) {
+            conversationIds[i] = entry.getKey();
+            afterIds[i++] = entry.getValue();
+        }
+        // One index range scan per conversation on (conversation_id, message_id)
+        String sql = "SELECT m.message_id, m.conversation_id, m.sender_id, m.receiver_id, m.content, " +
+                "m.parent_message_id, m.seq, m.sent_at " +
+                "FROM unnest(?::bigint[], ?::bigint[]) AS c(conversation_id, after_id) " +
+                "JOIN messages m ON m.conversation_id = c.conversation_id AND m.message_id > c.after_id " +
+                "ORDER BY m.message_id " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", conversationIds));
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", afterIds));
+            ps.setInt(3, limit);
+        }, messageRowMapper);
+    }
+
+    @Override
     public boolean markMessageAsRead(Long messageId, Long userId) {
-        String sql = "UPDATE messages SET read_at = CURRENT_TIMESTAMP WHERE message_id = ? AND (receiver_id = ? OR ? IN (SELECT user_id FROM conversation_participants WHERE conversation_id = (SELECT conversation_id FROM messages WHERE message_id = ?)))";
-        int updatedCount = jdbcTemplate.update(sql, messageId, userId, userId, messageId);
+        String sql = "UPDATE conversation_participants cp " +
+                "SET last_read_message_id = GREATEST(cp.last_read_message_id, m.message_id) " +
+                "FROM messages m " +
+                "WHERE m.message_id = ? AND cp.conversation_id = m.conversation_id AND cp.user_id = ?";
+        int updatedCount = jdbcTemplate.update(sql, messageId, userId);
         return updatedCount > 0;
     }
 
+    @Override
+    public boolean markReadUpTo(Long conversationId, Long userId, Long messageId) {
+        int updatedCount = jdbcTemplate.update(READ_CURSOR_SQL, conversationId, messageId, conversationId, userId);
+        return updatedCount > 0;
+    }
+
+    @Override
+    public void updateReadCursors(List<ReadCursor> cursors) {
+        jdbcTemplate.batchUpdate(READ_CURSOR_SQL, cursors, cursors.size(), (ps, cursor) -> {
+            ps.setLong(1, cursor.getConversationId());
+            ps.setLong(2, cursor.getLastReadMessageId());
+            ps.setLong(3, cursor.getConversationId());
+            ps.setLong(4, cursor.getUserId());
+        });
+    }
+
+    @Override
+    public int getUnreadCount(Long conversationId, Long userId) {
+        String sql = "SELECT COUNT(*) FROM messages m " +
+                "JOIN conversation_participants cp ON cp.conversation_id = m.conversation_id AND cp.user_id = ? " +
+                "WHERE m.conversation_id = ? AND m.message_id > cp.last_read_message_id AND m.sender_id <> cp.user_id";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId, conversationId);
+        return count != null ? count : 0;
+    }
+
     @Override
     @Transactional
     public boolean deleteMessage(Long messageId, Long userId) {
-        String sql = "DELETE FROM messages WHERE message_id = ? AND sender_id = ?";
-        int deletedCount = jdbcTemplate.update(sql, messageId, userId);
-        return deletedCount > 0;
+        String sql = "DELETE FROM messages WHERE message_id = ? AND sender_id = ? RETURNING conversation_id";
+        List<Long> deleted = jdbcTemplate.queryForList(sql, Long.class, messageId, userId);
+        if (deleted.isEmpty()) {
+            return false;
+        }
+        tailCache.delete(deleted.get(0), messageId);
+        return true;
     }
 
     @Override
     @Transactional
     public Message updateMessage(Long messageId, Long userId, String newContent) {
-        String sql = "UPDATE messages SET content = ? WHERE message_id = ? AND sender_id = ?";
-        int updatedCount = jdbcTemplate.update(sql, newContent, messageId, userId);
-        if (updatedCount > 0) {
-            Message updatedMessage = new Message();
-            updatedMessage.setMessageId(messageId);
-            updatedMessage.setContent(newContent);
-            return updatedMessage; // Note: sentAt isn’t set here—might need to fetch full message
+        String sql = "UPDATE messages SET content = ? WHERE message_id = ? AND sender_id = ? RETURNING " + MESSAGE_COLUMNS;
+        List<Message> updated = jdbcTemplate.query(sql, messageRowMapper, newContent, messageId, userId);
+        if (updated.isEmpty()) {
+            return null;
         }
-        return null;
+        tailCache.update(updated.get(0));
+        return updated.get(0);
     }
-}
\ No newline at end of file
+}
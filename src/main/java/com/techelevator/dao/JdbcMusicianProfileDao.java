@@ -1,30 +1,52 @@
 package com.techelevator.dao;
 
 import com.techelevator.exception.DaoException;
+import com.techelevator.model.GeoPoint;
 import com.techelevator.model.MusicianProfile;
 import com.techelevator.model.User;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlRowSetResultSetExtractor;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 @Component
 public class JdbcMusicianProfileDao implements MusicianProfileDao {
 
-    private final JdbcTemplate jdbcTemplate;
+    private static final String PROFILE_SELECT = "SELECT mp.musician_profile_id, mp.user_id, mp.name, mp.bio, mp.location, " +
+            "mp.genres, mp.instruments, mp.profile_picture_url, mp.latitude, mp.longitude, mp.created_at, mp.updated_at, " +
+            "u.username " +
+            "FROM musician_profiles mp " +
+            "JOIN users u ON mp.user_id = u.user_id ";
 
-    public JdbcMusicianProfileDao(JdbcTemplate jdbcTemplate) {
+    private final JdbcTemplate jdbcTemplate;
+    private final ProfileFacetIndex facetIndex;
+    private final ZipCentroids zipCentroids;
+    private final ProximityIndex proximityIndex;
+    private final RecommendationIndex recommendationIndex;
+    private final MusicianSimilarityIndex similarityIndex;
+
+    public JdbcMusicianProfileDao(JdbcTemplate jdbcTemplate, ProfileFacetIndex facetIndex, ZipCentroids zipCentroids,
+                                  ProximityIndex proximityIndex, RecommendationIndex recommendationIndex,
+                                  MusicianSimilarityIndex similarityIndex) {
         this.jdbcTemplate = jdbcTemplate;
+        this.facetIndex = facetIndex;
+        this.zipCentroids = zipCentroids;
+        this.proximityIndex = proximityIndex;
+        this.recommendationIndex = recommendationIndex;
+        this.similarityIndex = similarityIndex;
     }
 
     @Override
     public MusicianProfile getMusicianProfileByUserId(Long userId) throws DaoException {
-        String sql = "SELECT mp.musician_profile_id, mp.user_id, mp.name, mp.bio, mp.location, mp.genres, mp.instruments, " +
-                "mp.profile_picture_url, mp.created_at, mp.updated_at, u.username " +
-                "FROM musician_profiles mp " +
-                "JOIN users u ON mp.user_id = u.user_id " +
-                "WHERE mp.user_id = ?";
+        String sql = PROFILE_SELECT + "WHERE mp.user_id = ?";
         SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userId);
         if (results.next()) {
             return mapRowToMusicianProfile(results);
@@ -33,6 +55,16 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
         }
     }
 
+    @Override
+    public List<MusicianProfile> getAllMusicianProfiles() {
+        List<MusicianProfile> profiles = new ArrayList<>();
+        SqlRowSet results = jdbcTemplate.queryForRowSet(PROFILE_SELECT + "ORDER BY mp.user_id");
+        while (results.next()) {
+            profiles.add(mapRowToMusicianProfile(results));
+        }
+        return profiles;
+    }
+
     @Override
     public MusicianProfile createMusicianProfile(Long userId) throws DaoException {
         String sql = "INSERT INTO musician_profiles (user_id, name, created_at) " +
@@ -41,14 +73,22 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
         if (profileId == null) {
             throw new DaoException("Failed to create musician profile for user ID: " + userId);
         }
-        return getMusicianProfileByUserId(userId);
+        MusicianProfile profile = getMusicianProfileByUserId(userId);
+        facetIndex.putMusician(userId, profile);
+        recommendationIndex.putMusician(userId, profile);
+        similarityIndex.put(userId, profile);
+        return profile;
     }
 
     @Override
+    @Transactional
     public void updateMusicianProfile(Long userId, MusicianProfile profile) throws DaoException {
+        GeoPoint point = zipCentroids.resolveLocation(profile.getLocation());
+        profile.setLatitude(point != null ? point.getLatitude() : null);
+        profile.setLongitude(point != null ? point.getLongitude() : null);
         String sql = "UPDATE musician_profiles " +
                 "SET name = ?, bio = ?, location = ?, genres = ?, instruments = ?, profile_picture_url = ?, " +
-                "updated_at = CURRENT_TIMESTAMP " +
+                "latitude = ?, longitude = ?, updated_at = CURRENT_TIMESTAMP " +
                 "WHERE user_id = ?";
         int rowsAffected = jdbcTemplate.update(sql,
                 profile.getName() != null ? profile.getName() : "",
@@ -57,11 +97,18 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
                 profile.getGenres() != null ? profile.getGenres() : "",
                 profile.getInstruments() != null ? profile.getInstruments() : "",
                 profile.getProfilePictureUrl() != null ? profile.getProfilePictureUrl() : "",
+                profile.getLatitude(),
+                profile.getLongitude(),
                 userId
         );
         if (rowsAffected == 0) {
             throw new DaoException("No profile updated for user ID: " + userId);
         }
+        syncUserInstruments(userId, profile.getInstruments());
+        facetIndex.putMusician(userId, profile);
+        proximityIndex.put(userId, User.UserType.Musician, point);
+        recommendationIndex.putMusician(userId, profile);
+        similarityIndex.put(userId, profile);
     }
 
     @Override
@@ -71,6 +118,10 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
         if (rowsAffected == 0) {
             throw new DaoException("No profile found to delete for user ID: " + userId);
         }
+        facetIndex.remove(userId);
+        proximityIndex.remove(userId);
+        recommendationIndex.remove(userId);
+        similarityIndex.remove(userId);
     }
 
     @Override
@@ -83,12 +134,70 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
     }
 
     @Override
+    @Transactional
     public void updateMusicianProfileInstruments(Long userId, String instruments) throws DaoException {
         String sql = "UPDATE musician_profiles SET instruments = ?, updated_at = CURRENT_TIMESTAMP WHERE user_id = ?";
         int rowsAffected = jdbcTemplate.update(sql, instruments != null ? instruments : "", userId);
         if (rowsAffected == 0) {
             throw new DaoException("No profile updated for user ID: " + userId);
         }
+        syncUserInstruments(userId, instruments);
+        facetIndex.replaceInstruments(userId, instruments);
+        similarityIndex.replaceInstruments(userId, instruments);
+    }
+
+    @Override
+    public List<MusicianProfile> getMusiciansPlaying(List<String> instrumentNames) {
+        String sql = PROFILE_SELECT +
+                "WHERE mp.user_id IN (SELECT ui.user_id FROM user_instruments ui " +
+                "JOIN instruments i ON i.instrument_id = ui.instrument_id WHERE i.instrument_name = ANY(?)) " +
+                "ORDER BY mp.user_id";
+        SqlRowSet results = jdbcTemplate.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", instrumentNames.toArray())),
+                new SqlRowSetResultSetExtractor());
+        List<MusicianProfile> profiles = new ArrayList<>();
+        while (results != null && results.next()) {
+            profiles.add(mapRowToMusicianProfile(results));
+        }
+        return profiles;
+    }
+
+    @Override
+    public List<Long> getMusiciansMissingUserInstruments() {
+        String sql = "SELECT mp.user_id FROM musician_profiles mp " +
+                "WHERE trim(coalesce(mp.instruments, '')) <> '' " +
+                "AND NOT EXISTS (SELECT 1 FROM user_instruments ui WHERE ui.user_id = mp.user_id) " +
+                "ORDER BY mp.user_id";
+        return jdbcTemplate.queryForList(sql, Long.class);
+    }
+
+    @Override
+    @Transactional
+    public void syncUserInstruments(Long userId, String instruments) {
+        Object[] names = instrumentNames(instruments).toArray();
+        jdbcTemplate.update("INSERT INTO instruments (instrument_name) SELECT unnest(?) ON CONFLICT DO NOTHING",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", names)));
+        jdbcTemplate.update("DELETE FROM user_instruments WHERE user_id = ?", userId);
+        jdbcTemplate.update("INSERT INTO user_instruments (user_id, instrument_id) " +
+                "SELECT ?, instrument_id FROM instruments WHERE instrument_name = ANY(?)", ps -> {
+            ps.setLong(1, userId);
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", names));
+        });
+    }
+
+    /**
+     * The distinct instruments in a profile's instruments text, lower-cased so "Guitar" and "guitar " are one
+     * instrument, and cut to the 50 characters instruments.instrument_name holds.
+     */
+    static List<String> instrumentNames(String instruments) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String value : ProfileFacetIndex.splitList(instruments)) {
+            String name = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (!name.isEmpty()) {
+                names.add(name.length() > 50 ? name.substring(0, 50) : name);
+            }
+        }
+        return new ArrayList<>(names);
     }
 
     private MusicianProfile mapRowToMusicianProfile(SqlRowSet rs) {
@@ -106,6 +215,8 @@ public class JdbcMusicianProfileDao implements MusicianProfileDao {
         profile.setGenres(rs.getString("genres") != null ? rs.getString("genres") : "");
         profile.setInstruments(rs.getString("instruments") != null ? rs.getString("instruments") : "");
         profile.setProfilePictureUrl(rs.getString("profile_picture_url") != null ? rs.getString("profile_picture_url") : "");
+        profile.setLatitude(rs.getObject("latitude") != null ? rs.getDouble("latitude") : null);
+        profile.setLongitude(rs.getObject("longitude") != null ? rs.getDouble("longitude") : null);
 
         Timestamp createdAt = rs.getTimestamp("created_at");
         profile.setCreatedAt(createdAt != null ? createdAt.toString() : "");
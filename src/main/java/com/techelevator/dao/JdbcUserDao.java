@@ -5,13 +5,12 @@ import com.techelevator.exception.UserCreationException;
 import com.techelevator.exception.UserDeletionException;
 import com.techelevator.exception.UserNotFoundException;
 import com.techelevator.dto.RegisterUserDto;
+import com.techelevator.dto.UserDto;
 import com.techelevator.model.*;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
-import org.springframework.lang.Nullable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
@@ -21,8 +20,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 public class JdbcUserDao implements UserDao {
@@ -31,6 +34,28 @@ public class JdbcUserDao implements UserDao {
     private final MusicianProfileDao musicianProfileDao;
     private final VenueProfileDao venueProfileDao;
 
+    /*
+        Every user query selects its authorities in the same statement, aggregated into one comma-separated
+        column, so mapping a page of users costs one round trip instead of one per user. The aggregate is a
+        per-row subquery rather than a GROUP BY so that ORDER BY ... LIMIT can stop reading users early.
+     */
+    private static final String USER_SELECT = "SELECT u.user_id, u.username, u.email, u.password_hash, u.user_type, u.created_at, " +
+            "(SELECT string_agg(ua.authority_name, ',') FROM user_authorities ua WHERE ua.user_id = u.user_id) AS authorities " +
+            "FROM users u ";
+
+    /*
+        A user card is what the directory shows: user fields, roles and the profile picture from whichever profile
+        table matches the user type, all read in one statement.
+     */
+    private static final String USER_CARD_SELECT = "SELECT u.user_id, u.username, u.email, u.user_type, " +
+            "(SELECT string_agg(ua.authority_name, ',') FROM user_authorities ua WHERE ua.user_id = u.user_id) AS authorities, " +
+            "COALESCE(mp.profile_picture_url, vp.profile_picture_url) AS profile_picture_url " +
+            "FROM users u " +
+            "LEFT JOIN musician_profiles mp ON mp.user_id = u.user_id AND u.user_type = 'Musician' " +
+            "LEFT JOIN venue_profiles vp ON vp.user_id = u.user_id AND u.user_type = 'VenueOwner' ";
+
+    private static final Pattern PLAN_ROWS = Pattern.compile("\"Plan Rows\":\\s*(\\d+)");
+
     public JdbcUserDao(JdbcTemplate jdbcTemplate, MusicianProfileDao musicianProfileDao, VenueProfileDao venueProfileDao) {
         this.jdbcTemplate = jdbcTemplate;
         this.musicianProfileDao = musicianProfileDao;
@@ -40,10 +65,9 @@ public class JdbcUserDao implements UserDao {
     @Override
     public List<User> getUsersByType(User.UserType userType, int page, int size) {
         List<User> users = new ArrayList<>();
-        String sql = "SELECT user_id, username, email, password_hash, user_type, created_at " +
-                "FROM users " +
-                "WHERE user_type = ? " +
-                "ORDER BY username " +
+        String sql = USER_SELECT +
+                "WHERE u.user_type = ? " +
+                "ORDER BY u.username " +
                 "LIMIT ? OFFSET ?";
         try {
             SqlRowSet results = jdbcTemplate.queryForRowSet(
@@ -61,10 +85,104 @@ public class JdbcUserDao implements UserDao {
         return users;
     }
 
+    @Override
+    public List<UserDto> getUserCardsByType(User.UserType userType, int page, int size) {
+        String sql = USER_CARD_SELECT +
+                "WHERE u.user_type = ? " +
+                "ORDER BY u.username " +
+                "LIMIT ? OFFSET ?";
+        return queryForUserCards(sql, userType.toString(), size, page * size);
+    }
+
+    @Override
+    public List<UserDto> getUserCardsByTypeAfter(User.UserType userType, String afterUsername, Long afterUserId, int size) {
+        if (afterUsername == null || afterUserId == null) {
+            String sql = USER_CARD_SELECT +
+                    "WHERE u.user_type = ? " +
+                    "ORDER BY u.username, u.user_id " +
+                    "LIMIT ?";
+            return queryForUserCards(sql, userType.toString(), size);
+        }
+        String sql = USER_CARD_SELECT +
+                "WHERE u.user_type = ? AND (u.username, u.user_id) > (?, ?) " +
+                "ORDER BY u.username, u.user_id " +
+                "LIMIT ?";
+        return queryForUserCards(sql, userType.toString(), afterUsername, afterUserId, size);
+    }
+
+    @Override
+    public UserDto getUserCardById(Long userId) {
+        List<UserDto> cards = queryForUserCards(USER_CARD_SELECT + "WHERE u.user_id = ?", userId);
+        return cards.isEmpty() ? null : cards.get(0);
+    }
+
+    @Override
+    public List<UserDto> getUserCardsByIds(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // The ids travel as one array literal, so any number of them is still a single statement
+        String idArray = userIds.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}"));
+        String sql = USER_CARD_SELECT +
+                "JOIN unnest(?::int[]) WITH ORDINALITY AS ids(user_id, position) ON ids.user_id = u.user_id " +
+                "ORDER BY ids.position";
+        return queryForUserCards(sql, idArray);
+    }
+
+    @Override
+    public List<UserDto> searchUserCards(String query, User.UserType userType, int page, int size) {
+        // Only the profile tables that can match the requested type are searched, each through its GIN index
+        List<String> branches = new ArrayList<>();
+        if (userType == null || userType == User.UserType.Musician) {
+            branches.add("SELECT mp.user_id, ts_rank_cd(mp.search_vector, q.query) AS rank " +
+                    "FROM musician_profiles mp, q WHERE mp.search_vector @@ q.query");
+        }
+        if (userType == null || userType == User.UserType.VenueOwner) {
+            branches.add("SELECT vp.user_id, ts_rank_cd(vp.search_vector, q.query) AS rank " +
+                    "FROM venue_profiles vp, q WHERE vp.search_vector @@ q.query");
+        }
+        if (branches.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "WITH q AS (SELECT websearch_to_tsquery('english', ?) AS query), " +
+                "matches AS (" + String.join(" UNION ALL ", branches) + ") " +
+                USER_CARD_SELECT +
+                // The page is cut before joining users so broad terms don't look up every matching row
+                "JOIN (SELECT * FROM matches ORDER BY rank DESC, user_id LIMIT ? OFFSET ?) s ON s.user_id = u.user_id " +
+                "ORDER BY s.rank DESC, u.user_id";
+        return queryForUserCards(sql, query, size, page * size);
+    }
+
+    private List<UserDto> queryForUserCards(String sql, Object... params) {
+        List<UserDto> cards = new ArrayList<>();
+        try {
+            SqlRowSet results = jdbcTemplate.queryForRowSet(sql, params);
+            while (results.next()) {
+                cards.add(mapRowToUserCard(results));
+            }
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+        return cards;
+    }
+
+    @Override
+    public long estimateUserCountByType(User.UserType userType) {
+        // Row estimate from the planner's statistics; avoids the full scan a COUNT(*) would need
+        String sql = "EXPLAIN (FORMAT JSON) SELECT 1 FROM users WHERE user_type = ?";
+        try {
+            String plan = jdbcTemplate.queryForObject(sql, String.class, userType.toString());
+            Matcher matcher = PLAN_ROWS.matcher(plan != null ? plan : "");
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+        } catch (CannotGetJdbcConnectionException e) {
+            throw new DaoException("Unable to connect to server or database", e);
+        }
+    }
+
     @Override
     public User getUserById(Long userId) {
         User user = null;
-        String sql = "SELECT user_id, username, email, password_hash, user_type, created_at FROM users WHERE user_id = ?";
+        String sql = USER_SELECT + "WHERE u.user_id = ?";
         try {
             SqlRowSet results = jdbcTemplate.queryForRowSet(sql, userId);
             if (results.next()) {
@@ -78,9 +196,14 @@ public class JdbcUserDao implements UserDao {
 
     @Override
     public List<User> getUsers() {
-        String sql = "SELECT user_id, username, email, password_hash, user_type, created_at FROM users";
+        List<User> users = new ArrayList<>();
+        String sql = USER_SELECT + "ORDER BY u.user_id";
         try {
-            return jdbcTemplate.query(sql, new UserRowMapper());
+            SqlRowSet results = jdbcTemplate.queryForRowSet(sql);
+            while (results.next()) {
+                users.add(mapRowToUser(results));
+            }
+            return users;
         } catch (CannotGetJdbcConnectionException e) {
             throw new DaoException("Unable to connect to server or database", e);
         }
@@ -90,7 +213,7 @@ public class JdbcUserDao implements UserDao {
     public User getUserByUsername(String username) {
         if (username == null) throw new IllegalArgumentException("Username cannot be null");
         User user = null;
-        String sql = "SELECT user_id, username, email, password_hash, user_type, created_at FROM users WHERE username = LOWER(TRIM(?));";
+        String sql = USER_SELECT + "WHERE u.username = LOWER(TRIM(?))";
         try {
             SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sql, username);
             if (rowSet.next()) {
@@ -106,7 +229,15 @@ public class JdbcUserDao implements UserDao {
     public User createUser(RegisterUserDto user) throws UserCreationException {
         String insertUserSql = "INSERT INTO users (username, password_hash, user_type, email) VALUES (LOWER(TRIM(?)), ?, ?, ?) RETURNING user_id";
         String password_hash = new BCryptPasswordEncoder().encode(user.getPassword());
-        User.UserType userType = User.UserType.valueOf(user.getUserType());
+        if (user.getUserType() == null) {
+            throw new UserCreationException("User type is required");
+        }
+        User.UserType userType;
+        try {
+            userType = User.UserType.valueOf(user.getUserType());
+        } catch (IllegalArgumentException e) {
+            throw new UserCreationException("Unknown user type: " + user.getUserType(), e);
+        }
         try {
             Long newUserId = jdbcTemplate.queryForObject(insertUserSql, Long.class, user.getUsername(), password_hash, userType.toString(), user.getEmail());
 
@@ -181,6 +312,18 @@ public class JdbcUserDao implements UserDao {
         return results.next() && results.getInt(1) > 0;
     }
 
+    private UserDto mapRowToUserCard(SqlRowSet rs) {
+        UserDto dto = new UserDto();
+        dto.setUserId(rs.getLong("user_id"));
+        dto.setUsername(rs.getString("username"));
+        dto.setEmail(rs.getString("email"));
+        dto.setUserType(rs.getString("user_type"));
+        String roles = rs.getString("authorities");
+        dto.setRoles(roles != null ? Arrays.asList(roles.split(",")) : new ArrayList<>());
+        dto.setProfilePictureUrl(rs.getString("profile_picture_url"));
+        return dto;
+    }
+
     private User mapRowToUser(SqlRowSet rs) {
         User user = new User();
         user.setUserId(rs.getLong("user_id"));
@@ -190,22 +333,16 @@ public class JdbcUserDao implements UserDao {
         user.setUserType(User.UserType.valueOf(rs.getString("user_type")));
         user.setCreatedAt(rs.getTimestamp("created_at"));
 
-        String sqlAuthorities = "SELECT authority_name FROM user_authorities WHERE user_id = ?";
-        List<String> roles = jdbcTemplate.queryForList(sqlAuthorities, String.class, user.getUserId());
-        List<Authority> authorityList = roles.stream().map(Authority::new).toList();
-        user.getAuthorities().addAll(authorityList);
+        String roles = rs.getString("authorities");
+        if (roles != null) {
+            for (String role : roles.split(",")) {
+                user.getAuthorities().add(new Authority(role));
+            }
+        }
 
         return user;
     }
 
-    private class UserRowMapper implements RowMapper<User> {
-        @Override
-        public User mapRow(@Nullable java.sql.ResultSet rs, int rowNum) throws java.sql.SQLException {
-            assert rs != null;
-            return mapRowToUser((SqlRowSet) rs);
-        }
-    }
-
     @Override
     public String uploadProfilePicture(Long userId, MultipartFile file) throws UserNotFoundException {
         User user = getUserById(userId);
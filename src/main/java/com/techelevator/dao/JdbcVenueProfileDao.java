@@ -1,6 +1,8 @@
 package com.techelevator.dao;
 
+import com.techelevator.dto.VenueSearchDto;
 import com.techelevator.exception.DaoException;
+import com.techelevator.model.GeoPoint;
 import com.techelevator.model.User;
 import com.techelevator.model.VenueProfile;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -9,8 +11,10 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 
 import java.sql.Array;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
@@ -19,9 +23,18 @@ import java.util.ArrayList;
 public class JdbcVenueProfileDao implements VenueProfileDao {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ProfileFacetIndex facetIndex;
+    private final ZipCentroids zipCentroids;
+    private final ProximityIndex proximityIndex;
+    private final RecommendationIndex recommendationIndex;
 
-    public JdbcVenueProfileDao(JdbcTemplate jdbcTemplate) {
+    public JdbcVenueProfileDao(JdbcTemplate jdbcTemplate, ProfileFacetIndex facetIndex, ZipCentroids zipCentroids,
+                               ProximityIndex proximityIndex, RecommendationIndex recommendationIndex) {
         this.jdbcTemplate = jdbcTemplate;
+        this.facetIndex = facetIndex;
+        this.zipCentroids = zipCentroids;
+        this.proximityIndex = proximityIndex;
+        this.recommendationIndex = recommendationIndex;
     }
 
     @Override
@@ -35,6 +48,61 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
         }
     }
 
+    @Override
+    public List<VenueProfile> getAllVenueProfiles() {
+        return jdbcTemplate.query("SELECT * FROM venue_profiles ORDER BY user_id", new VenueProfileRowMapper());
+    }
+
+    @Override
+    public List<VenueProfile> searchVenues(VenueSearchDto criteria, String afterName, Long afterUserId, int size) {
+        SearchQuery query = buildSearchQuery(criteria, afterName, afterUserId, size);
+        return jdbcTemplate.query(query.getSql(), query, new VenueProfileRowMapper());
+    }
+
+    /*
+        Each filter maps onto one index: GIN for the array overlaps, (state, lower(city)) for location, capacity for
+        ranges and (name, user_id) for the keyset order, so the planner can start from whichever is most selective.
+     */
+    SearchQuery buildSearchQuery(VenueSearchDto criteria, String afterName, Long afterUserId, int size) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (criteria.getMinCapacity() != null) {
+            conditions.add("capacity >= ?");
+            args.add(criteria.getMinCapacity());
+        }
+        if (criteria.getMaxCapacity() != null) {
+            conditions.add("capacity <= ?");
+            args.add(criteria.getMaxCapacity());
+        }
+        if (criteria.getState() != null && !criteria.getState().isBlank()) {
+            conditions.add("state = ?");
+            args.add(criteria.getState().trim().toUpperCase());
+        }
+        if (criteria.getCity() != null && !criteria.getCity().isBlank()) {
+            conditions.add("lower(city) = lower(?)");
+            args.add(criteria.getCity().trim());
+        }
+        if (criteria.getGenres() != null && !criteria.getGenres().isEmpty()) {
+            conditions.add("genre_preferences && ?");
+            args.add(criteria.getGenres().toArray(new String[0]));
+        }
+        if (criteria.getAmenities() != null && !criteria.getAmenities().isEmpty()) {
+            conditions.add("amenities && ?");
+            args.add(criteria.getAmenities().toArray(new String[0]));
+        }
+        if (afterName != null && afterUserId != null) {
+            conditions.add("(name, user_id) > (?, ?)");
+            args.add(afterName);
+            args.add(afterUserId);
+        }
+        String sql = "SELECT * FROM venue_profiles " +
+                (conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions) + " ") +
+                "ORDER BY name, user_id " +
+                "LIMIT ?";
+        args.add(size);
+        return new SearchQuery(sql, args);
+    }
+
     @Override
     public VenueProfile createVenueProfile(Long userId, String venueName) throws DaoException {
         String sql = "INSERT INTO venue_profiles (user_id, name) VALUES (?, ?) RETURNING venue_profile_id";
@@ -42,11 +110,17 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
         if (profileId == null) {
             throw new DaoException("Failed to create venue profile for user ID: " + userId);
         }
-        return getVenueProfileByUserId(userId); // Fetch the newly created profile
+        VenueProfile profile = getVenueProfileByUserId(userId); // Fetch the newly created profile
+        facetIndex.putVenue(userId, profile);
+        recommendationIndex.putVenue(userId, profile);
+        return profile;
     }
 
     @Override
     public void updateVenueProfile(Long userId, VenueProfile profile) throws DaoException {
+        GeoPoint point = zipCentroids.resolve(profile.getZipCode(), profile.getCity(), profile.getState());
+        profile.setLatitude(point != null ? point.getLatitude() : null);
+        profile.setLongitude(point != null ? point.getLongitude() : null);
         String sql = "UPDATE venue_profiles SET " +
                 "name = ?, " +
                 "address = ?, " +
@@ -62,6 +136,8 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
                 "profile_picture_url = ?, " +
                 "genre_preferences = ?, " +
                 "amenities = ?, " +
+                "latitude = ?, " +
+                "longitude = ?, " +
                 "updated_at = CURRENT_TIMESTAMP " +
                 "WHERE user_id = ?";
         int rowsAffected = jdbcTemplate.update(sql, new PreparedStatementSetter() {
@@ -81,12 +157,17 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
                 ps.setString(12, profile.getProfilePictureUrl());
                 ps.setArray(13, profile.getGenrePreferences() != null ? ps.getConnection().createArrayOf("text", profile.getGenrePreferences().toArray()) : null);
                 ps.setArray(14, profile.getAmenities() != null ? ps.getConnection().createArrayOf("text", profile.getAmenities().toArray()) : null);
-                ps.setLong(15, userId);
+                ps.setObject(15, profile.getLatitude(), Types.DOUBLE);
+                ps.setObject(16, profile.getLongitude(), Types.DOUBLE);
+                ps.setLong(17, userId);
             }
         });
         if (rowsAffected == 0) {
             throw new DaoException("No profile updated for user ID: " + userId);
         }
+        facetIndex.putVenue(userId, profile);
+        proximityIndex.put(userId, User.UserType.VenueOwner, point);
+        recommendationIndex.putVenue(userId, profile);
     }
 
     @Override
@@ -96,6 +177,9 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
         if (rowsAffected == 0) {
             throw new DaoException("No profile found to delete for user ID: " + userId);
         }
+        facetIndex.remove(userId);
+        proximityIndex.remove(userId);
+        recommendationIndex.remove(userId);
     }
 
     @Override
@@ -129,6 +213,7 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
         if (rowsAffected == 0) {
             throw new DaoException("No profile updated for user ID: " + userId);
         }
+        facetIndex.replace(userId, ProfileFacetIndex.Facet.GENRE, genrePreferences);
     }
 
     @Override
@@ -146,6 +231,32 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
         }
     }
 
+    static class SearchQuery implements PreparedStatementSetter {
+        private final String sql;
+        private final List<Object> args;
+
+        SearchQuery(String sql, List<Object> args) {
+            this.sql = sql;
+            this.args = args;
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps) throws SQLException {
+            for (int i = 0; i < args.size(); i++) {
+                Object arg = args.get(i);
+                if (arg instanceof String[]) {
+                    ps.setArray(i + 1, ps.getConnection().createArrayOf("text", (String[]) arg));
+                } else {
+                    ps.setObject(i + 1, arg);
+                }
+            }
+        }
+    }
+
     private class VenueProfileRowMapper implements RowMapper<VenueProfile> {
         @Override
         public VenueProfile mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -164,6 +275,8 @@ public class JdbcVenueProfileDao implements VenueProfileDao {
             profile.setWebsiteUrl(rs.getString("website_url"));
             profile.setOperatingHours(rs.getString("operating_hours"));
             profile.setProfilePictureUrl(rs.getString("profile_picture_url"));
+            profile.setLatitude(rs.getObject("latitude") != null ? rs.getDouble("latitude") : null);
+            profile.setLongitude(rs.getObject("longitude") != null ? rs.getDouble("longitude") : null);
             profile.setCreatedAt(rs.getString("created_at"));
             profile.setUpdatedAt(rs.getString("updated_at"));
 
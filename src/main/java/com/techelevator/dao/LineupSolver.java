@@ -0,0 +1,443 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import com.techelevator.model.MusicianProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds small groups of musicians who between them play every requested instrument, ranked by how many genres the
+ * whole group (and the musician asking, if any) has in common.
+ * <p>
+ * Candidates are the musicians user_instruments lists for at least one requested instrument, optionally within a
+ * radius. Each is reduced to two bitmasks, the requested instruments they play and the genres they share with the
+ * asker (or, with no asker, the 64 most common genres among the candidates), and candidates with identical masks are
+ * collapsed to the few nearest, since a lineup never needs two of them. The search then always fills the lowest
+ * uncovered instrument next, so every member adds something, and cuts a branch as soon as the genres still shared or
+ * the members still needed mean it can't beat the lineups already found. The first member's choices are searched in
+ * parallel, and the search stops at its time budget with the best lineups found so far.
+ */
+@Component
+public class LineupSolver {
+
+    static final int MAX_INSTRUMENTS = 16;
+    private static final int MAX_GENRES = 64;
+
+    private final MusicianProfileDao musicianProfileDao;
+    private final long timeBudgetMs;
+    private final ExecutorService executor;
+
+    public LineupSolver(MusicianProfileDao musicianProfileDao,
+                        @Value("${lineups.time-budget-ms:250}") long timeBudgetMs,
+                        @Value("${lineups.threads:4}") int threads) {
+        this.musicianProfileDao = musicianProfileDao;
+        this.timeBudgetMs = timeBudgetMs;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "lineup-solver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The best lineups covering the requested instruments.
+     * @param instruments The instruments to cover, at most {@value #MAX_INSTRUMENTS}.
+     * @param requester The musician looking for a band, whose genres are the ones to match and who is never a
+     *                  candidate; may be null.
+     * @param center With radiusMiles, only musicians placed within the radius of this point are candidates; may be
+     *               null.
+     * @param maxSize The most musicians a lineup may have, not counting the requester.
+     * @param limit How many lineups to return.
+     */
+    public Result solve(List<String> instruments, MusicianProfile requester, GeoPoint center, Double radiusMiles,
+                        int maxSize, int limit) {
+        List<String> wanted = new ArrayList<>();
+        for (String instrument : instruments) {
+            for (String name : JdbcMusicianProfileDao.instrumentNames(instrument)) {
+                if (!wanted.contains(name)) {
+                    wanted.add(name);
+                }
+            }
+        }
+        if (wanted.isEmpty() || wanted.size() > MAX_INSTRUMENTS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_INSTRUMENTS + " instruments are required");
+        }
+
+        Long requesterId = requester != null ? requester.getUser().getUserId() : null;
+        List<MusicianProfile> profiles = new ArrayList<>();
+        for (MusicianProfile profile : musicianProfileDao.getMusiciansPlaying(wanted)) {
+            if (!profile.getUser().getUserId().equals(requesterId) && inRange(profile, center, radiusMiles)) {
+                profiles.add(profile);
+            }
+        }
+        List<String> genres = genreUniverse(requester, profiles);
+        Search search = new Search(wanted, genres, candidates(profiles, wanted, genres, center, limit), maxSize, limit);
+        return search.run();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static boolean inRange(MusicianProfile profile, GeoPoint center, Double radiusMiles) {
+        if (center == null || radiusMiles == null) {
+            return true;
+        }
+        GeoPoint point = pointOf(profile);
+        return point != null && center.distanceMiles(point) <= radiusMiles;
+    }
+
+    // The requester's genres when they have any, otherwise the candidates' most common ones
+    private static List<String> genreUniverse(MusicianProfile requester, List<MusicianProfile> profiles) {
+        List<String> own = requester != null ? genresOf(requester) : List.of();
+        if (!own.isEmpty()) {
+            return own.size() > MAX_GENRES ? own.subList(0, MAX_GENRES) : own;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (MusicianProfile profile : profiles) {
+            for (String genre : genresOf(profile)) {
+                counts.merge(genre, 1, Integer::sum);
+            }
+        }
+        List<String> common = new ArrayList<>(counts.keySet());
+        common.sort(Comparator.comparing((String genre) -> counts.get(genre)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return common.size() > MAX_GENRES ? new ArrayList<>(common.subList(0, MAX_GENRES)) : common;
+    }
+
+    /*
+        One candidate per musician, then at most limit per distinct (instruments, genres) pair, nearest first: two such
+        musicians are interchangeable, so a lineup only ever holds one, and only limit lineups are returned.
+     */
+    private static List<Candidate> candidates(List<MusicianProfile> profiles, List<String> wanted, List<String> genres,
+                                              GeoPoint center, int limit) {
+        Map<String, List<Candidate>> byMasks = new LinkedHashMap<>();
+        for (MusicianProfile profile : profiles) {
+            int instrumentMask = 0;
+            for (String name : JdbcMusicianProfileDao.instrumentNames(profile.getInstruments())) {
+                int bit = wanted.indexOf(name);
+                if (bit >= 0) {
+                    instrumentMask |= 1 << bit;
+                }
+            }
+            if (instrumentMask == 0) {
+                continue;
+            }
+            long genreMask = 0;
+            for (String genre : genresOf(profile)) {
+                int bit = genres.indexOf(genre);
+                if (bit >= 0) {
+                    genreMask |= 1L << bit;
+                }
+            }
+            GeoPoint point = pointOf(profile);
+            double distance = center != null && point != null ? center.distanceMiles(point) : Double.MAX_VALUE;
+            byMasks.computeIfAbsent(instrumentMask + ":" + genreMask, k -> new ArrayList<>())
+                    .add(new Candidate(profile.getUser().getUserId(), instrumentMask, genreMask, distance));
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (List<Candidate> group : byMasks.values()) {
+            group.sort(Comparator.comparingDouble((Candidate c) -> c.distance).thenComparing(c -> c.userId));
+            candidates.addAll(group.subList(0, Math.min(limit, group.size())));
+        }
+        return candidates;
+    }
+
+    private static List<String> genresOf(MusicianProfile profile) {
+        List<String> genres = new ArrayList<>();
+        for (String value : ProfileFacetIndex.splitList(profile.getGenres())) {
+            String genre = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (!genre.isEmpty() && !genres.contains(genre)) {
+                genres.add(genre);
+            }
+        }
+        return genres;
+    }
+
+    private static GeoPoint pointOf(MusicianProfile profile) {
+        return profile.getLatitude() != null && profile.getLongitude() != null
+                ? new GeoPoint(profile.getLatitude(), profile.getLongitude()) : null;
+    }
+
+    private class Search {
+        private final List<String> wanted;
+        private final List<String> genres;
+        private final int maxSize;
+        private final int limit;
+        private final int allInstruments;
+        // Candidates playing each instrument, most shared genres first so good lineups are found early
+        private final List<List<Candidate>> byInstrument = new ArrayList<>();
+        private final int mostInstrumentsPerMusician;
+        private final long deadline;
+        private final TreeSet<Lineup> best = new TreeSet<>(Lineup.BEST_FIRST);
+        private final Set<List<Long>> seen = new HashSet<>();
+        private volatile boolean timedOut;
+
+        private Search(List<String> wanted, List<String> genres, List<Candidate> candidates, int maxSize, int limit) {
+            this.wanted = wanted;
+            this.genres = genres;
+            this.maxSize = maxSize;
+            this.limit = limit;
+            this.allInstruments = (1 << wanted.size()) - 1;
+            int most = 1;
+            for (int bit = 0; bit < wanted.size(); bit++) {
+                List<Candidate> players = new ArrayList<>();
+                for (Candidate candidate : candidates) {
+                    if ((candidate.instruments & (1 << bit)) != 0) {
+                        players.add(candidate);
+                    }
+                    most = Math.max(most, Integer.bitCount(candidate.instruments));
+                }
+                players.sort(Comparator.comparingInt((Candidate c) -> -Long.bitCount(c.genres))
+                        .thenComparingDouble(c -> c.distance).thenComparing(c -> c.userId));
+                byInstrument.add(players);
+            }
+            this.mostInstrumentsPerMusician = most;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        }
+
+        private Result run() {
+            long allGenres = genres.isEmpty() ? 0 : -1L >>> (64 - genres.size());
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Candidate first : byInstrument.get(0)) {
+                tasks.add(() -> {
+                    List<Candidate> chosen = new ArrayList<>();
+                    chosen.add(first);
+                    extend(chosen, first.instruments, allGenres & first.genres);
+                    return null;
+                });
+            }
+            try {
+                long remaining = deadline - System.nanoTime();
+                // Tasks check the deadline themselves; the timeout only covers ones that never got to start, and
+                // those come back cancelled without having searched their branch
+                List<Future<Void>> futures = executor.invokeAll(tasks,
+                        Math.max(0, remaining) + TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.NANOSECONDS);
+                for (Future<Void> future : futures) {
+                    if (future.isCancelled()) {
+                        timedOut = true;
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+            }
+            synchronized (this) {
+                List<Lineup> lineups = new ArrayList<>(best);
+                return new Result(lineups, !timedOut, wanted, genres);
+            }
+        }
+
+        private void extend(List<Candidate> chosen, int covered, long sharedGenres) {
+            if (System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+                timedOut = true;
+                return;
+            }
+            if (covered == allInstruments) {
+                offer(chosen, sharedGenres);
+                return;
+            }
+            int missing = Integer.bitCount(allInstruments & ~covered);
+            int fewestMore = (missing + mostInstrumentsPerMusician - 1) / mostInstrumentsPerMusician;
+            if (chosen.size() + fewestMore > maxSize || !canImprove(Long.bitCount(sharedGenres), chosen.size() + fewestMore)) {
+                return;
+            }
+            int next = Integer.numberOfTrailingZeros(allInstruments & ~covered);
+            for (Candidate candidate : byInstrument.get(next)) {
+                long shared = sharedGenres & candidate.genres;
+                if (!canImprove(Long.bitCount(shared), chosen.size() + 1)) {
+                    // Sorted by genre count, but a smaller mask can still keep more of what's shared, so go on
+                    continue;
+                }
+                chosen.add(candidate);
+                extend(chosen, covered | candidate.instruments, shared);
+                chosen.remove(chosen.size() - 1);
+                if (timedOut) {
+                    return;
+                }
+            }
+        }
+
+        // Whether a lineup with this many shared genres and at least this many members could still make the cut
+        private synchronized boolean canImprove(int sharedGenres, int size) {
+            if (best.size() < limit) {
+                return true;
+            }
+            Lineup worst = best.last();
+            return sharedGenres > worst.sharedGenreCount
+                    || (sharedGenres == worst.sharedGenreCount && size <= worst.members.size());
+        }
+
+        private synchronized void offer(List<Candidate> chosen, long sharedGenres) {
+            // A member added for one instrument can make an earlier one redundant; the lineup without them is better
+            for (Candidate member : chosen) {
+                int others = 0;
+                for (Candidate other : chosen) {
+                    if (other != member) {
+                        others |= other.instruments;
+                    }
+                }
+                if (others == allInstruments) {
+                    return;
+                }
+            }
+            List<Long> members = new ArrayList<>();
+            for (Candidate candidate : chosen) {
+                members.add(candidate.userId);
+            }
+            members.sort(Comparator.naturalOrder());
+            if (!seen.add(members)) {
+                return;
+            }
+            Lineup lineup = new Lineup(members, instrumentsByMember(chosen), sharedGenres, Long.bitCount(sharedGenres));
+            best.add(lineup);
+            if (best.size() > limit) {
+                best.pollLast();
+            }
+        }
+
+        private Map<Long, List<String>> instrumentsByMember(List<Candidate> chosen) {
+            Map<Long, List<String>> instruments = new LinkedHashMap<>();
+            for (Candidate candidate : chosen) {
+                List<String> names = new ArrayList<>();
+                for (int bit = 0; bit < wanted.size(); bit++) {
+                    if ((candidate.instruments & (1 << bit)) != 0) {
+                        names.add(wanted.get(bit));
+                    }
+                }
+                instruments.put(candidate.userId, names);
+            }
+            return instruments;
+        }
+    }
+
+    private static final class Candidate {
+        private final Long userId;
+        private final int instruments;
+        private final long genres;
+        private final double distance;
+
+        private Candidate(Long userId, int instruments, long genres, double distance) {
+            this.userId = userId;
+            this.instruments = instruments;
+            this.genres = genres;
+            this.distance = distance;
+        }
+    }
+
+    public static class Lineup {
+        // Most shared genres first, then fewest members, then by member ids so the order is stable
+        private static final Comparator<Lineup> BEST_FIRST = Comparator
+                .comparingInt((Lineup l) -> -l.sharedGenreCount)
+                .thenComparingInt(l -> l.members.size())
+                .thenComparing(l -> l.members, Lineup::compareIds);
+
+        private final List<Long> members;
+        private final Map<Long, List<String>> instrumentsByMember;
+        private final long sharedGenreMask;
+        private final int sharedGenreCount;
+
+        private Lineup(List<Long> members, Map<Long, List<String>> instrumentsByMember, long sharedGenreMask,
+                       int sharedGenreCount) {
+            this.members = members;
+            this.instrumentsByMember = instrumentsByMember;
+            this.sharedGenreMask = sharedGenreMask;
+            this.sharedGenreCount = sharedGenreCount;
+        }
+
+        /**
+         * Member user ids, in ascending order.
+         */
+        public List<Long> getMembers() {
+            return members;
+        }
+
+        /**
+         * The requested instruments each member covers.
+         */
+        public List<String> getInstruments(Long userId) {
+            return instrumentsByMember.getOrDefault(userId, List.of());
+        }
+
+        public int getSharedGenreCount() {
+            return sharedGenreCount;
+        }
+
+        private static int compareIds(List<Long> a, List<Long> b) {
+            for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+                int compared = a.get(i).compareTo(b.get(i));
+                if (compared != 0) {
+                    return compared;
+                }
+            }
+            return Integer.compare(a.size(), b.size());
+        }
+    }
+
+    public static class Result {
+        private final List<Lineup> lineups;
+        private final boolean exhaustive;
+        private final List<String> instruments;
+        private final List<String> genres;
+
+        private Result(List<Lineup> lineups, boolean exhaustive, List<String> instruments, List<String> genres) {
+            this.lineups = lineups;
+            this.exhaustive = exhaustive;
+            this.instruments = instruments;
+            this.genres = genres;
+        }
+
+        /**
+         * The best lineups found, best first.
+         */
+        public List<Lineup> getLineups() {
+            return lineups;
+        }
+
+        /**
+         * False when the time budget ran out first, so better lineups may exist.
+         */
+        public boolean isExhaustive() {
+            return exhaustive;
+        }
+
+        /**
+         * The requested instruments, normalized.
+         */
+        public List<String> getInstruments() {
+            return instruments;
+        }
+
+        /**
+         * The genres the lineup's members all have, in the order of the genres matched against.
+         */
+        public List<String> getSharedGenres(Lineup lineup) {
+            List<String> shared = new ArrayList<>();
+            for (int bit = 0; bit < genres.size(); bit++) {
+                if ((lineup.sharedGenreMask & (1L << bit)) != 0) {
+                    shared.add(genres.get(bit));
+                }
+            }
+            return shared;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind stage for chat messages. When enabled, submitted messages are collected for up to a few
+ * milliseconds (or until a batch fills) and group-committed with MessageDao.sendMessages, so throughput is no longer
+ * bounded by one commit per message. Each caller still gets back its message with the server-assigned id.
+ * When disabled, or when the queue is full, messages are written straight through with MessageDao.sendMessage.
+ */
+@Component
+public class MessageBatchWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    private final MessageDao messageDao;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BlockingQueue<PendingMessage> queue;
+    private final Thread writerThread;
+    // Guards running together with the enqueue, so nothing is queued after shutdown has taken its final drain
+    private final Object submitLock = new Object();
+    private volatile boolean running = true;
+
+    public MessageBatchWriter(MessageDao messageDao,
+                              @Value("${chat.write-behind.enabled:false}") boolean enabled,
+                              @Value("${chat.write-behind.max-batch-size:100}") int maxBatchSize,
+                              @Value("${chat.write-behind.max-delay-ms:5}") long maxDelayMillis,
+                              @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity) {
+        this.messageDao = messageDao;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        if (enabled) {
+            writerThread = new Thread(this::run, "message-batch-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            writerThread = null;
+        }
+    }
+
+    /**
+     * Saves a message, possibly batched with others.
+     * @return a future completed with the saved message, or exceptionally if it could not be saved
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        if (enabled) {
+            PendingMessage pending = new PendingMessage(message);
+            synchronized (submitLock) {
+                if (running && queue.offer(pending)) {
+                    return pending.future;
+                }
+            }
+        }
+        try {
+            return CompletableFuture.completedFuture(writeOne(message));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingMessage> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+        try {
+            List<Message> saved = messageDao.sendMessages(messages);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(saved.get(i));
+            }
+        } catch (RuntimeException e) {
+            // One bad row fails the whole batch; retry individually so the rest still get saved
+            log.warn("Batched insert of {} messages failed, retrying one at a time: {}", batch.size(), e.getMessage());
+            for (PendingMessage pending : batch) {
+                try {
+                    pending.future.complete(writeOne(pending.message));
+                } catch (RuntimeException ex) {
+                    pending.future.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private Message writeOne(Message message) {
+        return messageDao.sendMessage(message.getConversationId(), message.getSenderId(), message.getReceiverId(),
+                message.getContent(), message.getParentMessageId());
+    }
+
+    /**
+     * Stops accepting new messages and writes out everything still queued.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        synchronized (submitLock) {
+            running = false;
+        }
+        if (writerThread != null) {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private static final class PendingMessage {
+        private final Message message;
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        private PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package com.techelevator.dao;
 
 import com.techelevator.model.Message;
-import com.techelevator.model.Conversation;
-import com.techelevator.model.User;
+import com.techelevator.model.ReadCursor;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface MessageDao {
 
@@ -15,10 +16,17 @@ public interface MessageDao {
      * @param receiverId The ID of the user receiving the message (for one-to-one chats; can be null or ignored for group chats).
      * @param content The content of the message.
      * @param parentMessageId The ID of the message this message is replying to, or null if it's a top-level message.
-     * @return The newly created Message object.
+     * @return The newly created Message object, with the ID, seq and sent_at as stored.
      */
     Message sendMessage(Long conversationId, Long senderId, Long receiverId, String content, Long parentMessageId);
 
+    /**
+     * Inserts several messages in one transaction and one JDBC batch.
+     * @param messages The messages to insert; their IDs and sentAt are ignored.
+     * @return The saved messages, in the same order, with server-assigned IDs, seqs and timestamps.
+     */
+    List<Message> sendMessages(List<Message> messages);
+
     /**
      * Retrieves all messages from a specific conversation, ordered by timestamp.
      * @param conversationId The ID of the conversation to fetch messages from.
@@ -27,13 +35,82 @@ public interface MessageDao {
     List<Message> getMessagesByConversation(Long conversationId);
 
     /**
-     * Marks a message as read by a specific user.
+     * Retrieves one page of a conversation's history, keyed on the per-conversation seq and returned oldest first.
+     * With neither cursor set, the most recent messages are returned.
+     * @param conversationId The ID of the conversation to fetch messages from.
+     * @param beforeMessageId Return messages older than this message, or null.
+     * @param afterMessageId Return messages newer than this message, or null. Ignored if beforeMessageId is set.
+     * @param limit The maximum number of messages to return.
+     * @return Up to limit messages, with the oldest message first.
+     */
+    List<Message> getMessagesPage(Long conversationId, Long beforeMessageId, Long afterMessageId, int limit);
+
+    /**
+     * Messages in a conversation after a sequence number, for clients that track seq to detect gaps.
+     * @param conversationId The ID of the conversation.
+     * @param sinceSeq Only messages with a greater seq are returned (0 for all).
+     * @param limit The maximum number of messages to return.
+     * @return Up to limit messages, in seq order.
+     */
+    List<Message> getMessagesSinceSeq(Long conversationId, long sinceSeq, int limit);
+
+    /**
+     * Loads the given messages in one query.
+     * @param messageIds The IDs to load; unknown IDs are skipped.
+     * @return The messages found, ordered by message ID.
+     */
+    List<Message> getMessagesByIds(Collection<Long> messageIds);
+
+    /**
+     * Messages with an ID above the given one in any conversation that one of the given users participates in.
+     * Used to recover fan-out notifications that may have been lost.
+     * @param afterMessageId Only messages with a greater ID are returned.
+     * @param userIds The participants whose conversations are searched.
+     * @param limit The maximum number of messages to return.
+     * @return Up to limit messages, ordered by message ID.
+     */
+    List<Message> getMessagesForParticipantsAfter(long afterMessageId, Collection<Long> userIds, int limit);
+
+    /**
+     * Messages newer than a per-conversation position, for catching a reconnecting client up.
+     * @param lastSeenByConversation Conversation ID to the last message ID the client has (0 for none).
+     * @param limit The maximum number of messages to return.
+     * @return Up to limit messages across those conversations, ordered by message ID.
+     */
+    List<Message> getMessagesAfter(Map<Long, Long> lastSeenByConversation, int limit);
+
+    /**
+     * Marks a message, and everything before it in its conversation, as read by a specific user.
      * @param messageId The ID of the message to mark as read.
      * @param userId The ID of the user who is marking the message as read.
-     * @return true if the message was successfully marked as read, false otherwise.
+     * @return true if the user's read cursor was updated, false if the user is not in the message's conversation.
      */
     boolean markMessageAsRead(Long messageId, Long userId);
 
+    /**
+     * Moves the user's read cursor in a conversation forward to the given message. Never moves it backwards, and never
+     * past the newest message of the conversation at or below the given id, whatever id the client sends.
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the participant whose cursor is moved.
+     * @param messageId The ID of the last message read.
+     * @return true if the user is a participant of the conversation, false otherwise.
+     */
+    boolean markReadUpTo(Long conversationId, Long userId, Long messageId);
+
+    /**
+     * Moves several read cursors forward in one JDBC batch, with the same rules as {@link #markReadUpTo}.
+     * @param cursors The new read positions.
+     */
+    void updateReadCursors(List<ReadCursor> cursors);
+
+    /**
+     * Counts messages from other participants after the user's read cursor.
+     * @param conversationId The ID of the conversation.
+     * @param userId The ID of the participant.
+     * @return The number of unread messages.
+     */
+    int getUnreadCount(Long conversationId, Long userId);
+
     /**
      * Deletes a message if the user has permission to do so.
      * @param messageId The ID of the message to delete.
@@ -0,0 +1,482 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * The newest messages of recently read conversations, so that opening a conversation or paging near its end doesn't
+ * go to Postgres. Each conversation gets a fixed-size ring holding ids, seqs, timestamps and sender/receiver/parent
+ * ids in primitive arrays, plus the content strings.
+ * <p>
+ * A ring always holds a gap-free run of the conversation's newest messages: a write whose seq doesn't directly follow
+ * the ring's newest message drops the ring rather than leaving a hole. Writes are applied after their transaction
+ * commits. Rings are only created by reads, and the least recently read ones are evicted once the estimated size of
+ * all rings passes the memory budget.
+ * <p>
+ * Edits and deletes are announced to the invalidation listeners once applied. With Postgres fan-out the bus forwards
+ * them, and the other instances drop that conversation's ring so their next read goes to Postgres.
+ */
+@Component
+public class MessageTailCache {
+
+    // Rough per-message overhead of the parallel arrays and the String object, in bytes
+    private static final int ENTRY_OVERHEAD = 6 * Long.BYTES + 48;
+    private static final int LOCK_STRIPES = 64;
+
+    private final boolean enabled;
+    private final int capacity;
+    private final long maxBytes;
+    private final Map<Long, Tail> tails = new LinkedHashMap<>(16, 0.75f, true);
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final List<Consumer<Long>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    public MessageTailCache(@Value("${chat.tail-cache.enabled:true}") boolean enabled,
+                            @Value("${chat.tail-cache.messages-per-conversation:64}") int capacity,
+                            @Value("${chat.tail-cache.max-bytes:67108864}") long maxBytes) {
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * The newest limit messages, oldest first. On a miss the conversation's tail is read with the loader, which is
+     * given the ring capacity and must return that many newest messages, oldest first.
+     */
+    public List<Message> getLatest(Long conversationId, int limit, IntFunction<List<Message>> loader) {
+        if (!enabled || limit > capacity) {
+            misses.increment();
+            return loader.apply(limit);
+        }
+        Tail tail = get(conversationId);
+        if (tail != null) {
+            List<Message> page = tail.latest(limit);
+            if (page != null) {
+                hits.increment();
+                return page;
+            }
+        }
+        misses.increment();
+        // Hold the stripe while loading so no committed write can slip in between the read and the install
+        synchronized (lock(conversationId)) {
+            List<Message> loaded = loader.apply(capacity);
+            install(conversationId, loaded, loaded.size() < capacity);
+            return new ArrayList<>(loaded.subList(Math.max(0, loaded.size() - limit), loaded.size()));
+        }
+    }
+
+    /**
+     * Up to limit messages before or after the given message, oldest first, or null if the ring can't answer.
+     */
+    public List<Message> getPage(Long conversationId, Long beforeMessageId, Long afterMessageId, int limit) {
+        Tail tail = enabled ? get(conversationId) : null;
+        List<Message> page = tail != null ? tail.page(beforeMessageId, afterMessageId, limit) : null;
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    /**
+     * Up to limit messages with seq greater than sinceSeq, or null if the ring can't answer.
+     */
+    public List<Message> getSinceSeq(Long conversationId, long sinceSeq, int limit) {
+        Tail tail = enabled ? get(conversationId) : null;
+        List<Message> page = tail != null ? tail.sinceSeq(sinceSeq, limit) : null;
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    /**
+     * The whole conversation, or null unless it is small enough to be entirely in its ring.
+     */
+    public List<Message> getAll(Long conversationId) {
+        Tail tail = enabled ? get(conversationId) : null;
+        List<Message> all = tail != null ? tail.all() : null;
+        (all != null ? hits : misses).increment();
+        return all;
+    }
+
+    /**
+     * Records a newly saved message, after the current transaction commits.
+     */
+    public void append(Message message) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (lock(message.getConversationId())) {
+                Tail tail = get(message.getConversationId());
+                if (tail != null && !tail.append(message)) {
+                    remove(message.getConversationId());
+                }
+            }
+            evictIfOverBudget();
+        });
+    }
+
+    /**
+     * Records an edit, after the current transaction commits.
+     */
+    public void update(Message message) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (lock(message.getConversationId())) {
+                Tail tail = get(message.getConversationId());
+                if (tail != null) {
+                    tail.update(message.getMessageId(), message.getContent());
+                }
+            }
+            notifyInvalidated(message.getConversationId());
+        });
+    }
+
+    /**
+     * Records a delete, along with the replies that cascade with it, after the current transaction commits.
+     */
+    public void delete(Long conversationId, Long messageId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (lock(conversationId)) {
+                Tail tail = get(conversationId);
+                if (tail != null) {
+                    tail.delete(messageId);
+                }
+            }
+            notifyInvalidated(conversationId);
+        });
+    }
+
+    /**
+     * Drops a conversation's ring because another instance edited or deleted one of its messages.
+     */
+    public void evict(Long conversationId) {
+        synchronized (lock(conversationId)) {
+            remove(conversationId);
+        }
+    }
+
+    /**
+     * Drops every ring, for when edits or deletes from other instances may have been missed.
+     */
+    public void clear() {
+        List<Tail> cleared;
+        synchronized (tails) {
+            cleared = new ArrayList<>(tails.values());
+            tails.clear();
+        }
+        for (Tail tail : cleared) {
+            tail.release();
+        }
+    }
+
+    /**
+     * Registers a callback run with the conversation id after each edit or delete made here is applied.
+     */
+    public void addInvalidationListener(Consumer<Long> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getBytes() {
+        return totalBytes.get();
+    }
+
+    public int size() {
+        synchronized (tails) {
+            return tails.size();
+        }
+    }
+
+    // Reads and writes both count as use for LRU purposes
+    private Tail get(Long conversationId) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (tails) {
+            return tails.get(conversationId);
+        }
+    }
+
+    private void install(Long conversationId, List<Message> messages, boolean complete) {
+        Tail tail = new Tail(conversationId, complete);
+        for (Message message : messages) {
+            tail.append(message);
+        }
+        Tail previous;
+        synchronized (tails) {
+            previous = tails.put(conversationId, tail);
+        }
+        if (previous != null) {
+            previous.release();
+        }
+        evictIfOverBudget();
+    }
+
+    private void remove(Long conversationId) {
+        Tail tail;
+        synchronized (tails) {
+            tail = tails.remove(conversationId);
+        }
+        if (tail != null) {
+            tail.release();
+        }
+    }
+
+    /**
+     * Drops the least recently read rings until the cache is back under 90% of its budget.
+     */
+    private void evictIfOverBudget() {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+        List<Tail> evicted = new ArrayList<>();
+        synchronized (tails) {
+            long target = maxBytes / 10 * 9;
+            long projected = totalBytes.get();
+            Iterator<Tail> it = tails.values().iterator();
+            while (projected > target && it.hasNext()) {
+                Tail tail = it.next();
+                projected -= tail.bytes;
+                evicted.add(tail);
+                it.remove();
+            }
+        }
+        for (Tail tail : evicted) {
+            tail.release();
+            evictions.increment();
+        }
+    }
+
+    private void notifyInvalidated(Long conversationId) {
+        for (Consumer<Long> listener : invalidationListeners) {
+            listener.accept(conversationId);
+        }
+    }
+
+    private Object lock(Long conversationId) {
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static long toMicros(Timestamp timestamp) {
+        return Math.floorDiv(timestamp.getTime(), 1000) * 1_000_000 + timestamp.getNanos() / 1000;
+    }
+
+    private static Timestamp fromMicros(long micros) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1_000_000) * 1000);
+        timestamp.setNanos(Math.floorMod(micros, 1_000_000) * 1000);
+        return timestamp;
+    }
+
+    private static long entryBytes(String content) {
+        return ENTRY_OVERHEAD + (content != null ? 2L * content.length() : 0);
+    }
+
+    /**
+     * Ring of the newest messages of one conversation, oldest at start.
+     */
+    private final class Tail {
+        private final long conversationId;
+        private final long[] ids = new long[capacity];
+        private final long[] seqs = new long[capacity];
+        // Microseconds since the epoch, Postgres' own timestamp precision
+        private final long[] sentAt = new long[capacity];
+        private final long[] senderIds = new long[capacity];
+        // 0 stands for no receiver (a group message) or no parent, since ids start at 1
+        private final long[] receiverIds = new long[capacity];
+        private final long[] parentIds = new long[capacity];
+        private final String[] contents = new String[capacity];
+        private int start;
+        private int size;
+        private long lastSeq;
+        // True while the ring holds every message of the conversation, not just the newest ones
+        private boolean complete;
+        private long bytes;
+        private boolean released;
+
+        private Tail(long conversationId, boolean complete) {
+            this.conversationId = conversationId;
+            this.complete = complete;
+        }
+
+        private int slot(int i) {
+            return (start + i) % capacity;
+        }
+
+        /**
+         * @return false if the message doesn't directly follow the newest one here, so the ring would have a gap
+         */
+        synchronized boolean append(Message message) {
+            long seq = message.getSeq();
+            if (size > 0 || lastSeq > 0) {
+                if (seq <= lastSeq) {
+                    return true; // already here
+                }
+                if (seq != lastSeq + 1) {
+                    return false;
+                }
+            }
+            if (size == capacity) {
+                adjustBytes(-entryBytes(contents[start]));
+                start = slot(1);
+                size--;
+                complete = false;
+            }
+            int s = slot(size);
+            ids[s] = message.getMessageId();
+            seqs[s] = seq;
+            sentAt[s] = message.getSentAt() != null ? toMicros(Timestamp.valueOf(message.getSentAt())) : 0;
+            senderIds[s] = message.getSenderId() != null ? message.getSenderId() : 0;
+            receiverIds[s] = message.getReceiverId() != null ? message.getReceiverId() : 0;
+            parentIds[s] = message.getParentMessageId() != null ? message.getParentMessageId() : 0;
+            contents[s] = message.getContent();
+            size++;
+            lastSeq = seq;
+            adjustBytes(entryBytes(message.getContent()));
+            return true;
+        }
+
+        synchronized void update(long messageId, String content) {
+            int i = indexOf(messageId);
+            if (i >= 0) {
+                int s = slot(i);
+                adjustBytes(entryBytes(content) - entryBytes(contents[s]));
+                contents[s] = content;
+            }
+        }
+
+        synchronized void delete(long messageId) {
+            // Replies always come after their parent, so one pass also catches replies to replies
+            Set<Long> removed = new HashSet<>();
+            removed.add(messageId);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int s = slot(i);
+                if (removed.contains(ids[s]) || removed.contains(parentIds[s])) {
+                    removed.add(ids[s]);
+                    adjustBytes(-entryBytes(contents[s]));
+                    contents[s] = null;
+                    continue;
+                }
+                if (kept != i) {
+                    int d = slot(kept);
+                    ids[d] = ids[s];
+                    seqs[d] = seqs[s];
+                    sentAt[d] = sentAt[s];
+                    senderIds[d] = senderIds[s];
+                    receiverIds[d] = receiverIds[s];
+                    parentIds[d] = parentIds[s];
+                    contents[d] = contents[s];
+                    contents[s] = null;
+                }
+                kept++;
+            }
+            size = kept;
+        }
+
+        synchronized List<Message> latest(int limit) {
+            if (size < limit && !complete) {
+                return null;
+            }
+            return copy(Math.max(0, size - limit), size);
+        }
+
+        synchronized List<Message> page(Long beforeMessageId, Long afterMessageId, int limit) {
+            if (beforeMessageId != null) {
+                int i = indexOf(beforeMessageId);
+                if (i < 0 || (i < limit && !complete)) {
+                    return null;
+                }
+                return copy(Math.max(0, i - limit), i);
+            }
+            if (afterMessageId != null) {
+                // Everything after a message that is in the ring is also in the ring
+                int i = indexOf(afterMessageId);
+                return i < 0 ? null : copy(i + 1, Math.min(size, i + 1 + limit));
+            }
+            return latest(limit);
+        }
+
+        synchronized List<Message> sinceSeq(long sinceSeq, int limit) {
+            int from = 0;
+            while (from < size && seqs[slot(from)] <= sinceSeq) {
+                from++;
+            }
+            // Unless the ring is complete, it only answers if nothing between sinceSeq and its oldest entry is missing
+            if (!complete && (size == 0 || sinceSeq < seqs[start] - 1)) {
+                return null;
+            }
+            return copy(from, Math.min(size, from + limit));
+        }
+
+        synchronized List<Message> all() {
+            return complete ? copy(0, size) : null;
+        }
+
+        private int indexOf(long messageId) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[slot(i)] == messageId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private List<Message> copy(int from, int to) {
+            List<Message> messages = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                int s = slot(i);
+                Message message = new Message();
+                message.setMessageId(ids[s]);
+                message.setConversationId(conversationId);
+                message.setSeq(seqs[s]);
+                message.setSentAt(sentAt[s] != 0 ? fromMicros(sentAt[s]).toString() : null);
+                message.setSenderId(senderIds[s]);
+                message.setReceiverId(receiverIds[s] != 0 ? receiverIds[s] : null);
+                message.setParentMessageId(parentIds[s] != 0 ? parentIds[s] : null);
+                message.setContent(contents[s]);
+                messages.add(message);
+            }
+            return messages;
+        }
+
+        private void adjustBytes(long delta) {
+            bytes += delta;
+            if (!released) {
+                totalBytes.addAndGet(delta);
+            }
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                totalBytes.addAndGet(-bytes);
+            }
+        }
+    }
+}
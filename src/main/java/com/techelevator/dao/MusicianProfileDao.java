@@ -3,10 +3,18 @@ package com.techelevator.dao;
 import com.techelevator.exception.DaoException;
 import com.techelevator.model.MusicianProfile;
 
+import java.util.List;
+
 public interface MusicianProfileDao {
 
     MusicianProfile getMusicianProfileByUserId(Long userId) throws DaoException;
 
+    /**
+     * Retrieves every musician profile, ordered by user ID.
+     * @return All musician profiles.
+     */
+    List<MusicianProfile> getAllMusicianProfiles();
+
     /**
      * Creates a new musician profile for the given user ID and returns the profile.
      * @param userId The ID of the user for whom the profile is being created.
@@ -45,4 +53,26 @@ public interface MusicianProfileDao {
      * @throws DaoException if there's an error updating the instruments in the database.
      */
     void updateMusicianProfileInstruments(Long userId, String instruments) throws DaoException;
+
+    /**
+     * Retrieves the profiles of musicians who play any of the given instruments, according to user_instruments.
+     * @param instrumentNames Instrument names, normalized as by {@link JdbcMusicianProfileDao#instrumentNames}.
+     * @return The matching musician profiles, ordered by user ID.
+     */
+    List<MusicianProfile> getMusiciansPlaying(List<String> instrumentNames);
+
+    /**
+     * Retrieves the IDs of musicians whose profile lists instruments that aren't recorded in user_instruments, such as
+     * profiles saved before the table was kept in sync.
+     * @return The user IDs, in ascending order.
+     */
+    List<Long> getMusiciansMissingUserInstruments();
+
+    /**
+     * Replaces the user's rows in user_instruments with the instruments listed in the given text, adding any
+     * instrument not yet in the instruments table.
+     * @param userId The ID of the musician.
+     * @param instruments The instruments as entered on the profile, e.g. "Guitar, Vocals".
+     */
+    void syncUserInstruments(Long userId, String instruments);
 }
\ No newline at end of file
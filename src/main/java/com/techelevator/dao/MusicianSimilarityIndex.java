@@ -0,0 +1,308 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.MusicianProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "Musicians like me" over the set of each musician's genres and instruments, using MinHash signatures and
+ * locality-sensitive hashing so a query only looks at musicians that share a bucket instead of every profile.
+ * <p>
+ * Each signature is bands * rows MinHash values; a musician lands in one bucket per band, keyed by that band's rows.
+ * Two musicians with Jaccard similarity s share at least one bucket with probability 1 - (1 - s^rows)^bands, so more
+ * bands find weaker matches at the cost of bigger candidate sets, and more rows do the opposite. Candidates are then
+ * ranked by their exact similarity, so the approximation only ever misses matches, never misorders them.
+ * <p>
+ * Filled at startup by {@link ProfileIndexLoader} and kept current by {@link JdbcMusicianProfileDao}, whose writes
+ * are applied after their transaction commits.
+ */
+@Component
+public class MusicianSimilarityIndex {
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Genre and instrument values are numbered once so each musician's set is a small sorted int array
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final Map<Long, Entry> byUser = new HashMap<>();
+    private final List<Map<Long, Set<Long>>> buckets = new ArrayList<>();
+
+    public MusicianSimilarityIndex(@Value("${similarity.minhash.bands:20}") int bands,
+                                   @Value("${similarity.minhash.rows:3}") int rows) {
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < seeds.length; i++) {
+            seed = mix(seed + i);
+            seeds[i] = seed;
+        }
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public void put(Long userId, MusicianProfile profile) {
+        List<String> genres = ProfileFacetIndex.splitList(profile.getGenres());
+        List<String> instruments = ProfileFacetIndex.splitList(profile.getInstruments());
+        TransactionHooks.afterCommit(() -> write(userId, genres, instruments));
+    }
+
+    /**
+     * Replaces an indexed musician's instruments, keeping their genres; unknown users are ignored.
+     */
+    public void replaceInstruments(Long userId, String instruments) {
+        List<String> values = ProfileFacetIndex.splitList(instruments);
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Entry entry = byUser.get(userId);
+                if (entry != null) {
+                    unindex(userId);
+                    index(userId, entry.genres, values);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long userId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                unindex(userId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * The musicians most similar to the given one, most similar first, or null if they aren't indexed. Musicians
+     * with nothing in common are never returned.
+     */
+    public List<Hit> similarTo(Long userId, int limit) {
+        Comparator<Hit> mostSimilarFirst =
+                Comparator.comparingDouble(Hit::getSimilarity).reversed().thenComparing(Hit::getUserId);
+        PriorityQueue<Hit> best = new PriorityQueue<>(mostSimilarFirst.reversed());
+        lock.readLock().lock();
+        try {
+            Entry entry = byUser.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            for (Long candidateId : candidates(userId, entry)) {
+                double similarity = jaccard(entry.tokens, byUser.get(candidateId).tokens);
+                if (similarity <= 0) {
+                    continue;
+                }
+                Hit hit = new Hit(candidateId, similarity);
+                if (best.size() < limit) {
+                    best.add(hit);
+                } else if (mostSimilarFirst.compare(hit, best.peek()) < 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(mostSimilarFirst);
+        return hits;
+    }
+
+    /**
+     * Exact Jaccard similarity of two indexed musicians' genre and instrument sets, or 0 if either isn't indexed.
+     */
+    public double similarity(Long userId, Long otherUserId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUser.get(userId);
+            Entry other = byUser.get(otherUserId);
+            return entry != null && other != null ? jaccard(entry.tokens, other.tokens) : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byUser.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a profile immediately, without waiting for a transaction; used by the startup load.
+     */
+    void load(MusicianProfile profile) {
+        write(profile.getUser().getUserId(), ProfileFacetIndex.splitList(profile.getGenres()),
+                ProfileFacetIndex.splitList(profile.getInstruments()));
+    }
+
+    /**
+     * Every musician sharing at least one bucket with the given one, not including them.
+     */
+    Set<Long> candidates(Long userId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUser.get(userId);
+            return entry != null ? candidates(userId, entry) : new HashSet<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the read lock
+    private Set<Long> candidates(Long userId, Entry entry) {
+        Set<Long> candidates = new HashSet<>();
+        if (entry.bandKeys != null) {
+            for (int band = 0; band < bands; band++) {
+                candidates.addAll(buckets.get(band).get(entry.bandKeys[band]));
+            }
+            candidates.remove(userId);
+        }
+        return candidates;
+    }
+
+    private void write(Long userId, List<String> genres, List<String> instruments) {
+        lock.writeLock().lock();
+        try {
+            unindex(userId);
+            index(userId, genres, instruments);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock; musicians with no genres or instruments are kept but not put in any bucket
+    private void index(Long userId, List<String> genres, List<String> instruments) {
+        Set<Integer> ids = new HashSet<>();
+        for (String genre : genres) {
+            addToken(ids, "genre:", genre);
+        }
+        for (String instrument : instruments) {
+            addToken(ids, "instrument:", instrument);
+        }
+        int[] tokens = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+        if (tokens.length == 0) {
+            byUser.put(userId, new Entry(tokens, null, new ArrayList<>(genres)));
+            return;
+        }
+
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int token : tokens) {
+            for (int i = 0; i < seeds.length; i++) {
+                signature[i] = Math.min(signature[i], mix(token ^ seeds[i]));
+            }
+        }
+        long[] bandKeys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int row = 0; row < rows; row++) {
+                key = mix(key ^ signature[band * rows + row]);
+            }
+            bandKeys[band] = key;
+            buckets.get(band).computeIfAbsent(key, k -> new HashSet<>()).add(userId);
+        }
+        byUser.put(userId, new Entry(tokens, bandKeys, new ArrayList<>(genres)));
+    }
+
+    // Caller holds the write lock
+    private void unindex(Long userId) {
+        Entry entry = byUser.remove(userId);
+        if (entry == null || entry.bandKeys == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            Set<Long> bucket = buckets.get(band).get(entry.bandKeys[band]);
+            bucket.remove(userId);
+            if (bucket.isEmpty()) {
+                buckets.get(band).remove(entry.bandKeys[band]);
+            }
+        }
+    }
+
+    private void addToken(Set<Integer> ids, String prefix, String value) {
+        String normalized = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if (!normalized.isEmpty()) {
+            ids.add(tokenIds.computeIfAbsent(prefix + normalized, k -> tokenIds.size()));
+        }
+    }
+
+    private static double jaccard(int[] a, int[] b) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - shared;
+        return union > 0 ? (double) shared / union : 0;
+    }
+
+    // SplitMix64 finalizer: a cheap, well-mixed 64-bit hash, seeded differently for each MinHash function
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Entry {
+        private final int[] tokens;
+        private final long[] bandKeys;
+        // Kept so an instruments-only update can rebuild the set
+        private final List<String> genres;
+
+        private Entry(int[] tokens, long[] bandKeys, List<String> genres) {
+            this.tokens = tokens;
+            this.bandKeys = bandKeys;
+            this.genres = genres;
+        }
+    }
+
+    public static class Hit {
+        private final Long userId;
+        private final double similarity;
+
+        public Hit(Long userId, double similarity) {
+            this.userId = userId;
+            this.similarity = similarity;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.MusicianProfile;
+import com.techelevator.model.User;
+import com.techelevator.model.VenueProfile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Genre, instrument, city and venue type facets of every musician and venue profile, held in memory as one
+ * compressed bitmap per facet value so that combined filters and per-value counts are set operations rather than
+ * queries.
+ * <p>
+ * Each profile gets a dense document number, and a value's bitmap costs about 2 bytes per profile holding it, capped
+ * at 8KB per 65,536 profiles, so rare values stay cheap however many profiles there are. A query combines its filters
+ * as plain bitmaps of one bit per profile, counts each value with a bit test per profile holding it, and visits a
+ * facet's values most common first, stopping once no remaining value could make the top of the list.
+ * <p>
+ * Values are matched case-insensitively; musician genres and instruments are free text and are split on commas,
+ * semicolons or slashes (or on spaces when there are none), and a musician's city is their location up to the first
+ * comma.
+ * <p>
+ * Filled at startup by {@link ProfileIndexLoader} and kept current by the profile DAOs, whose writes are applied
+ * after their transaction commits. Writes made by other app instances are only picked up on restart.
+ */
+@Component
+public class ProfileFacetIndex {
+
+    public enum Facet { GENRE, INSTRUMENT, CITY, VENUE_TYPE }
+
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("[,;/]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> docByUser = new HashMap<>();
+    private long[] userByDoc = new long[1024];
+    private int docCount;
+    private final CompressedBitmap musicians = new CompressedBitmap();
+    private final CompressedBitmap venues = new CompressedBitmap();
+    // Musicians and venues together, kept so unfiltered queries don't have to build it
+    private final CompressedBitmap profiles = new CompressedBitmap();
+    private final Map<Facet, Map<String, CompressedBitmap>> postings = new EnumMap<>(Facet.class);
+    // Each facet's postings, most profiles first; built by the first query after a write to the facet
+    private final Map<Facet, List<Posting>> bySize = new ConcurrentHashMap<>();
+    // First spelling seen of each normalized value, used as its display label
+    private final Map<Facet, Map<String, String>> labels = new EnumMap<>(Facet.class);
+
+    public ProfileFacetIndex() {
+        for (Facet facet : Facet.values()) {
+            postings.put(facet, new HashMap<>());
+            labels.put(facet, new HashMap<>());
+        }
+    }
+
+    public void putMusician(Long userId, MusicianProfile profile) {
+        Map<Facet, Collection<String>> values = musicianValues(profile);
+        TransactionHooks.afterCommit(() -> put(userId, User.UserType.Musician, values));
+    }
+
+    public void putVenue(Long userId, VenueProfile profile) {
+        Map<Facet, Collection<String>> values = venueValues(profile);
+        TransactionHooks.afterCommit(() -> put(userId, User.UserType.VenueOwner, values));
+    }
+
+    /**
+     * Replaces one facet's values for an already indexed profile; unknown users are ignored.
+     */
+    public void replace(Long userId, Facet facet, Collection<String> values) {
+        List<String> copy = values != null ? new ArrayList<>(values) : List.of();
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Integer doc = docByUser.get(userId);
+                if (doc != null) {
+                    setValues(doc, facet, copy, false);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Replaces a musician's instruments, given as the same free text stored on the profile.
+     */
+    public void replaceInstruments(Long userId, String instruments) {
+        replace(userId, Facet.INSTRUMENT, splitList(instruments));
+    }
+
+    public void remove(Long userId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Integer doc = docByUser.get(userId);
+                if (doc == null) {
+                    return;
+                }
+                musicians.remove(doc);
+                venues.remove(doc);
+                profiles.remove(doc);
+                for (Facet facet : Facet.values()) {
+                    setValues(doc, facet, List.of(), false);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Profiles matching every given facet (any of the values within one facet), plus per-value counts for each facet.
+     * A facet's counts ignore that facet's own filter, so the client can show how many results picking another value
+     * of the same facet would add.
+     * @param userType Only match profiles of this type, or null for both.
+     * @param filters Facet to the values to filter by; facets without values don't filter.
+     * @param offset Number of matching users to skip, in index order.
+     * @param limit Maximum number of user ids to return.
+     * @param valuesPerFacet Maximum number of values to count per facet, most frequent first.
+     */
+    public Result query(User.UserType userType, Map<Facet, ? extends Collection<String>> filters,
+                        int offset, int limit, int valuesPerFacet) {
+        lock.readLock().lock();
+        try {
+            // Filters are combined as plain bitmaps sized to the index, so each step is a pass over words; the
+            // compressed postings are only read
+            int words = (docCount + 63) >>> 6;
+            long[] base = baseFor(userType, words);
+            Map<Facet, long[]> selected = new EnumMap<>(Facet.class);
+            for (Map.Entry<Facet, ? extends Collection<String>> entry : filters.entrySet()) {
+                if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    selected.put(entry.getKey(), union(entry.getKey(), entry.getValue(), words));
+                }
+            }
+            long[] matched = intersect(base, selected.values());
+
+            Map<Facet, Map<String, Integer>> counts = new EnumMap<>(Facet.class);
+            for (Facet facet : Facet.values()) {
+                long[] mask = matched;
+                if (selected.containsKey(facet)) {
+                    Map<Facet, long[]> others = new EnumMap<>(selected);
+                    others.remove(facet);
+                    mask = intersect(base, others.values());
+                }
+                counts.put(facet, countValues(facet, mask, valuesPerFacet));
+            }
+
+            // Words before the page are only counted; the page's bits are walked one by one
+            List<Long> userIds = new ArrayList<>();
+            int total = 0;
+            for (int i = 0; i < matched.length; i++) {
+                int bits = Long.bitCount(matched[i]);
+                if (total + bits > offset && userIds.size() < limit) {
+                    int seen = total;
+                    for (long word = matched[i]; word != 0 && userIds.size() < limit; word &= word - 1) {
+                        if (seen++ >= offset) {
+                            userIds.add(userByDoc[(i << 6) | Long.numberOfTrailingZeros(word)]);
+                        }
+                    }
+                }
+                total += bits;
+            }
+            return new Result(total, userIds, counts);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return profiles.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a profile immediately, without waiting for a transaction; used by the startup load.
+     */
+    void load(MusicianProfile profile) {
+        put(profile.getUser().getUserId(), User.UserType.Musician, musicianValues(profile));
+    }
+
+    /**
+     * Indexes a profile immediately, without waiting for a transaction; used by the startup load.
+     */
+    void load(VenueProfile profile) {
+        put(profile.getUser().getUserId(), User.UserType.VenueOwner, venueValues(profile));
+    }
+
+    private static Map<Facet, Collection<String>> musicianValues(MusicianProfile profile) {
+        Map<Facet, Collection<String>> values = new EnumMap<>(Facet.class);
+        values.put(Facet.GENRE, splitList(profile.getGenres()));
+        values.put(Facet.INSTRUMENT, splitList(profile.getInstruments()));
+        values.put(Facet.CITY, cityOf(profile.getLocation()));
+        return values;
+    }
+
+    private static Map<Facet, Collection<String>> venueValues(VenueProfile profile) {
+        Map<Facet, Collection<String>> values = new EnumMap<>(Facet.class);
+        values.put(Facet.GENRE, profile.getGenrePreferences() != null ? new ArrayList<>(profile.getGenrePreferences()) : List.of());
+        values.put(Facet.CITY, single(profile.getCity()));
+        values.put(Facet.VENUE_TYPE, single(profile.getVenueType()));
+        return values;
+    }
+
+    static List<String> splitList(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String[] parts = LIST_SEPARATOR.matcher(text).find() ? LIST_SEPARATOR.split(text) : WHITESPACE.split(text.trim());
+        return Arrays.asList(parts);
+    }
+
+    private static List<String> cityOf(String location) {
+        if (location == null) {
+            return List.of();
+        }
+        int comma = location.indexOf(',');
+        return single(comma >= 0 ? location.substring(0, comma) : location);
+    }
+
+    private static List<String> single(String value) {
+        return value != null ? List.of(value) : List.of();
+    }
+
+    private void put(Long userId, User.UserType userType, Map<Facet, Collection<String>> values) {
+        lock.writeLock().lock();
+        try {
+            boolean known = docByUser.containsKey(userId);
+            int doc = docFor(userId);
+            if (userType == User.UserType.Musician) {
+                musicians.add(doc);
+            } else {
+                musicians.remove(doc);
+            }
+            if (userType == User.UserType.VenueOwner) {
+                venues.add(doc);
+            } else {
+                venues.remove(doc);
+            }
+            profiles.add(doc);
+            for (Facet facet : Facet.values()) {
+                setValues(doc, facet, values.getOrDefault(facet, List.of()), known);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private int docFor(Long userId) {
+        Integer doc = docByUser.get(userId);
+        if (doc != null) {
+            return doc;
+        }
+        if (docCount == userByDoc.length) {
+            userByDoc = Arrays.copyOf(userByDoc, docCount * 2);
+        }
+        userByDoc[docCount] = userId;
+        docByUser.put(userId, docCount);
+        return docCount++;
+    }
+
+    // Caller holds the write lock; a doc that was never indexed can't be in any posting, so there's nothing to clear
+    private void setValues(int doc, Facet facet, Collection<String> rawValues, boolean known) {
+        Map<String, String> normalized = new LinkedHashMap<>();
+        for (String raw : rawValues) {
+            String key = normalize(raw);
+            if (!key.isEmpty()) {
+                normalized.putIfAbsent(key, WHITESPACE.matcher(raw.trim()).replaceAll(" "));
+            }
+        }
+        // The doc's previous values aren't kept per doc, which would cost more than the bitmaps; clearing its bit in
+        // every posting of the facet is a few hundred O(1) operations for typical facet sizes
+        Map<String, CompressedBitmap> facetPostings = postings.get(facet);
+        Iterator<Map.Entry<String, CompressedBitmap>> it = known ? facetPostings.entrySet().iterator()
+                : Collections.emptyIterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CompressedBitmap> posting = it.next();
+            if (!normalized.containsKey(posting.getKey()) && posting.getValue().contains(doc)) {
+                posting.getValue().remove(doc);
+                if (posting.getValue().isEmpty()) {
+                    it.remove();
+                    labels.get(facet).remove(posting.getKey());
+                }
+            }
+        }
+        for (Map.Entry<String, String> value : normalized.entrySet()) {
+            facetPostings.computeIfAbsent(value.getKey(), k -> new CompressedBitmap()).add(doc);
+            labels.get(facet).putIfAbsent(value.getKey(), value.getValue());
+        }
+        bySize.remove(facet);
+    }
+
+    private long[] baseFor(User.UserType userType, int words) {
+        long[] base = new long[words];
+        if (userType == User.UserType.Musician) {
+            musicians.orInto(base);
+        } else if (userType == User.UserType.VenueOwner) {
+            venues.orInto(base);
+        } else if (userType == null) {
+            profiles.orInto(base);
+        }
+        return base;
+    }
+
+    private long[] union(Facet facet, Collection<String> values, int words) {
+        long[] bits = new long[words];
+        for (String value : values) {
+            CompressedBitmap posting = postings.get(facet).get(normalize(value));
+            if (posting != null) {
+                posting.orInto(bits);
+            }
+        }
+        return bits;
+    }
+
+    private static long[] intersect(long[] base, Collection<long[]> others) {
+        if (others.isEmpty()) {
+            return base;
+        }
+        long[] bits = base.clone();
+        for (long[] other : others) {
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] &= other[i];
+            }
+        }
+        return bits;
+    }
+
+    private static boolean isEmpty(long[] bits) {
+        for (long word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Postings are visited largest first, so once one holds fewer profiles than the current top list's smallest
+    // count, neither it nor any after it can get in; ties still go on, since they may win on key order
+    private Map<String, Integer> countValues(Facet facet, long[] mask, int valuesPerFacet) {
+        Comparator<Map.Entry<String, Integer>> order = Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<>(order.reversed());
+        if (valuesPerFacet > 0 && !isEmpty(mask)) {
+            for (Posting posting : bySize.computeIfAbsent(facet, this::sortBySize)) {
+                if (top.size() == valuesPerFacet && posting.size < top.peek().getValue()) {
+                    break;
+                }
+                int count = posting.bitmap.andCardinality(mask);
+                if (count == 0) {
+                    continue;
+                }
+                if (top.size() < valuesPerFacet) {
+                    top.add(Map.entry(posting.key, count));
+                } else if (count > top.peek().getValue()
+                        || (count == top.peek().getValue() && posting.key.compareTo(top.peek().getKey()) < 0)) {
+                    top.poll();
+                    top.add(Map.entry(posting.key, count));
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> counted = new ArrayList<>(top);
+        counted.sort(order);
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : counted) {
+            counts.put(labels.get(facet).get(entry.getKey()), entry.getValue());
+        }
+        return counts;
+    }
+
+    // Caller holds the read lock, so no write can change the postings while they're sorted
+    private List<Posting> sortBySize(Facet facet) {
+        List<Posting> sorted = new ArrayList<>();
+        for (Map.Entry<String, CompressedBitmap> posting : postings.get(facet).entrySet()) {
+            sorted.add(new Posting(posting.getKey(), posting.getValue()));
+        }
+        sorted.sort(Comparator.comparingInt((Posting posting) -> posting.size).reversed());
+        return sorted;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static class Posting {
+        private final String key;
+        private final CompressedBitmap bitmap;
+        private final int size;
+
+        private Posting(String key, CompressedBitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.size = bitmap.cardinality();
+        }
+    }
+
+    public static class Result {
+        private final int total;
+        private final List<Long> userIds;
+        private final Map<Facet, Map<String, Integer>> counts;
+
+        public Result(int total, List<Long> userIds, Map<Facet, Map<String, Integer>> counts) {
+            this.total = total;
+            this.userIds = userIds;
+            this.counts = counts;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        public Map<Facet, Map<String, Integer>> getCounts() {
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.techelevator.dao;
+
+import com.techelevator.exception.DaoException;
+import com.techelevator.model.GeoPoint;
+import com.techelevator.model.MusicianProfile;
+import com.techelevator.model.User;
+import com.techelevator.model.VenueProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the in-memory profile indexes ({@link ProfileFacetIndex}, {@link ProximityIndex}, {@link RecommendationIndex},
+ * {@link MusicianSimilarityIndex}) from the profile tables in one pass once the app has started, and then builds the
+ * recommendations. Before that it copies the ZIP centroids into zip_codes and fills in user_instruments for profiles
+ * saved before that table was kept in sync. Kept apart from the indexes because the profile DAOs depend on them to
+ * keep them current.
+ */
+@Component
+public class ProfileIndexLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileIndexLoader.class);
+
+    private final ProfileFacetIndex facetIndex;
+    private final ProximityIndex proximityIndex;
+    private final RecommendationIndex recommendationIndex;
+    private final MusicianSimilarityIndex similarityIndex;
+    private final ZipCentroids zipCentroids;
+    private final MusicianProfileDao musicianProfileDao;
+    private final VenueProfileDao venueProfileDao;
+
+    public ProfileIndexLoader(ProfileFacetIndex facetIndex, ProximityIndex proximityIndex,
+                              RecommendationIndex recommendationIndex, MusicianSimilarityIndex similarityIndex,
+                              ZipCentroids zipCentroids,
+                              MusicianProfileDao musicianProfileDao, VenueProfileDao venueProfileDao) {
+        this.facetIndex = facetIndex;
+        this.proximityIndex = proximityIndex;
+        this.recommendationIndex = recommendationIndex;
+        this.similarityIndex = similarityIndex;
+        this.zipCentroids = zipCentroids;
+        this.musicianProfileDao = musicianProfileDao;
+        this.venueProfileDao = venueProfileDao;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        try {
+            zipCentroids.syncTable();
+            for (Long userId : musicianProfileDao.getMusiciansMissingUserInstruments()) {
+                musicianProfileDao.syncUserInstruments(userId,
+                        musicianProfileDao.getMusicianProfileByUserId(userId).getInstruments());
+            }
+            for (MusicianProfile profile : musicianProfileDao.getAllMusicianProfiles()) {
+                facetIndex.load(profile);
+                GeoPoint point = pointOf(profile.getLatitude(), profile.getLongitude());
+                if (point == null) {
+                    point = zipCentroids.resolveLocation(profile.getLocation());
+                    setPoint(profile, point);
+                }
+                proximityIndex.load(profile.getUser().getUserId(), User.UserType.Musician, point);
+                recommendationIndex.load(profile);
+                similarityIndex.load(profile);
+            }
+            for (VenueProfile profile : venueProfileDao.getAllVenueProfiles()) {
+                facetIndex.load(profile);
+                GeoPoint point = pointOf(profile.getLatitude(), profile.getLongitude());
+                if (point == null) {
+                    point = zipCentroids.resolve(profile.getZipCode(), profile.getCity(), profile.getState());
+                    setPoint(profile, point);
+                }
+                proximityIndex.load(profile.getUser().getUserId(), User.UserType.VenueOwner, point);
+                recommendationIndex.load(profile);
+            }
+            log.info("Loaded {} profiles into the facet index and placed {} in the proximity index in {} ms",
+                    facetIndex.size(), proximityIndex.size(), System.currentTimeMillis() - start);
+            start = System.currentTimeMillis();
+            recommendationIndex.rebuild();
+            log.info("Computed recommendations for {} profiles in {} ms",
+                    recommendationIndex.size(), System.currentTimeMillis() - start);
+        } catch (DaoException | DataAccessException e) {
+            log.warn("Profile indexes not loaded: {}", e.getMessage());
+        }
+    }
+
+    // Profiles saved before coordinates were stored are placed from their location as they load
+    private static GeoPoint pointOf(Double latitude, Double longitude) {
+        return latitude != null && longitude != null ? new GeoPoint(latitude, longitude) : null;
+    }
+
+    private static void setPoint(MusicianProfile profile, GeoPoint point) {
+        if (point != null) {
+            profile.setLatitude(point.getLatitude());
+            profile.setLongitude(point.getLongitude());
+        }
+    }
+
+    private static void setPoint(VenueProfile profile, GeoPoint point) {
+        if (point != null) {
+            profile.setLatitude(point.getLatitude());
+            profile.setLongitude(point.getLongitude());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import com.techelevator.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Where every placed musician and venue profile is, bucketed into a grid of cell-degrees by cell-degrees cells so
+ * that radius and nearest-neighbour queries only look at the cells around the query point instead of every profile.
+ * <p>
+ * Filled at startup by {@link ProfileIndexLoader} and kept current by the profile DAOs, whose writes are applied
+ * after their transaction commits. The grid doesn't wrap at the antimeridian, which our US-only data never crosses.
+ */
+@Component
+public class ProximityIndex {
+
+    private static final double MILES_PER_DEGREE_LATITUDE = 69.0;
+
+    private final double cellDegrees;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final Map<Long, Entry> byUser = new HashMap<>();
+
+    public ProximityIndex(@Value("${geo.grid.cell-degrees:0.25}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Places a profile, or removes it when point is null because its location couldn't be resolved.
+     */
+    public void put(Long userId, User.UserType userType, GeoPoint point) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeEntry(userId);
+                if (point != null) {
+                    Entry entry = new Entry(userId, userType, point, cellKey(point));
+                    byUser.put(userId, entry);
+                    cells.computeIfAbsent(entry.cell, k -> new ArrayList<>()).add(entry);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long userId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeEntry(userId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Where the given user's profile is placed, or null if it isn't.
+     */
+    public GeoPoint locate(Long userId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUser.get(userId);
+            return entry != null ? entry.point : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Profiles within radiusMiles of the center, nearest first.
+     * @param userType Only return profiles of this type, or null for both.
+     * @param excludeUserId A user to leave out, typically the one the search is centered on; may be null.
+     */
+    public List<Hit> withinRadius(GeoPoint center, double radiusMiles, User.UserType userType, Long excludeUserId,
+                                  int limit) {
+        double latSpan = radiusMiles / MILES_PER_DEGREE_LATITUDE;
+        double maxLat = Math.min(89.9, Math.abs(center.getLatitude()) + latSpan);
+        double lonSpan = Math.min(180, radiusMiles / (MILES_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(maxLat))));
+
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int minRow = cellIndex(center.getLatitude() - latSpan);
+            int maxRow = cellIndex(center.getLatitude() + latSpan);
+            int minCol = cellIndex(center.getLongitude() - lonSpan);
+            int maxCol = cellIndex(center.getLongitude() + lonSpan);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    for (Entry entry : cells.getOrDefault(cellKey(row, col), List.of())) {
+                        if (matches(entry, userType, excludeUserId)) {
+                            double distance = center.distanceMiles(entry.point);
+                            if (distance <= radiusMiles) {
+                                hits.add(new Hit(entry.userId, distance));
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceMiles).thenComparing(Hit::getUserId));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * The k profiles nearest the center, nearest first. Searches outward one ring of cells at a time and stops once
+     * the k-th nearest found so far is closer than anything in the unexplored rings could be.
+     */
+    public List<Hit> nearest(GeoPoint center, int k, User.UserType userType, Long excludeUserId) {
+        PriorityQueue<Hit> best = new PriorityQueue<>(
+                Comparator.comparingDouble(Hit::getDistanceMiles).thenComparing(Hit::getUserId).reversed());
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            int centerRow = cellIndex(center.getLatitude());
+            int centerCol = cellIndex(center.getLongitude());
+            int maxRing = (int) Math.ceil(360 / cellDegrees);
+            int examined = 0;
+            for (int ring = 0; ring <= maxRing && examined < byUser.size(); ring++) {
+                for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                    for (int col = centerCol - ring; col <= centerCol + ring; col++) {
+                        if (Math.abs(row - centerRow) != ring && Math.abs(col - centerCol) != ring) {
+                            continue;
+                        }
+                        for (Entry entry : cells.getOrDefault(cellKey(row, col), List.of())) {
+                            examined++;
+                            if (!matches(entry, userType, excludeUserId)) {
+                                continue;
+                            }
+                            Hit hit = new Hit(entry.userId, center.distanceMiles(entry.point));
+                            if (best.size() < k) {
+                                best.add(hit);
+                            } else if (best.comparator().compare(hit, best.peek()) > 0) {
+                                best.poll();
+                                best.add(hit);
+                            }
+                        }
+                    }
+                }
+                if (best.size() == k && best.peek().getDistanceMiles() <= unexploredDistance(center, ring)) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceMiles).thenComparing(Hit::getUserId));
+        return hits;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byUser.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Places or removes a profile immediately, without waiting for a transaction; used by the startup load and by
+     * indexes that keep a private grid of their own.
+     */
+    void load(Long userId, User.UserType userType, GeoPoint point) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(userId);
+            if (point != null) {
+                Entry entry = new Entry(userId, userType, point, cellKey(point));
+                byUser.put(userId, entry);
+                cells.computeIfAbsent(entry.cell, k -> new ArrayList<>()).add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Lower bound on the distance from center to any cell outside the rings searched so far
+    private double unexploredDistance(GeoPoint center, int ring) {
+        double rowOffset = center.getLatitude() / cellDegrees - Math.floor(center.getLatitude() / cellDegrees);
+        double colOffset = center.getLongitude() / cellDegrees - Math.floor(center.getLongitude() / cellDegrees);
+        double latDegrees = (ring + Math.min(rowOffset, 1 - rowOffset)) * cellDegrees;
+        double lonDegrees = (ring + Math.min(colOffset, 1 - colOffset)) * cellDegrees;
+        double poleward = Math.min(89.9, Math.abs(center.getLatitude()) + latDegrees);
+        return Math.min(latDegrees * MILES_PER_DEGREE_LATITUDE,
+                lonDegrees * MILES_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(poleward)));
+    }
+
+    // Caller holds the write lock
+    private void removeEntry(Long userId) {
+        Entry previous = byUser.remove(userId);
+        if (previous != null) {
+            List<Entry> cell = cells.get(previous.cell);
+            cell.remove(previous);
+            if (cell.isEmpty()) {
+                cells.remove(previous.cell);
+            }
+        }
+    }
+
+    private static boolean matches(Entry entry, User.UserType userType, Long excludeUserId) {
+        return (userType == null || entry.userType == userType) && !entry.userId.equals(excludeUserId);
+    }
+
+    private int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private long cellKey(GeoPoint point) {
+        return cellKey(cellIndex(point.getLatitude()), cellIndex(point.getLongitude()));
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    private static final class Entry {
+        private final Long userId;
+        private final User.UserType userType;
+        private final GeoPoint point;
+        private final long cell;
+
+        private Entry(Long userId, User.UserType userType, GeoPoint point, long cell) {
+            this.userId = userId;
+            this.userType = userType;
+            this.point = point;
+            this.cell = cell;
+        }
+    }
+
+    public static class Hit {
+        private final Long userId;
+        private final double distanceMiles;
+
+        public Hit(Long userId, double distanceMiles) {
+            this.userId = userId;
+            this.distanceMiles = distanceMiles;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public double getDistanceMiles() {
+            return distanceMiles;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.ReadCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects "read up to message X" updates arriving over WebSocket and writes them out periodically. Updates for the
+ * same participant and conversation collapse into the highest message id, so scrolling through a 500-message
+ * backlog costs one row update per flush rather than one per message.
+ */
+@Component
+public class ReadCursorCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadCursorCoalescer.class);
+
+    private final MessageDao messageDao;
+    private final Map<Key, Long> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public ReadCursorCoalescer(MessageDao messageDao,
+                               @Value("${chat.read-cursor.flush-interval-ms:1000}") long flushIntervalMillis) {
+        this.messageDao = messageDao;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "read-cursor-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a cursor move. The id is clamped to the conversation's messages when written, so any value is safe here.
+     */
+    public void markReadUpTo(Long conversationId, Long userId, Long messageId) {
+        pending.merge(new Key(conversationId, userId), messageId, Math::max);
+    }
+
+    /**
+     * Writes every pending cursor in one batch.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ReadCursor> cursors = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            Long messageId = pending.remove(key);
+            if (messageId != null) {
+                cursors.add(new ReadCursor(key.conversationId, key.userId, messageId));
+            }
+        }
+        try {
+            messageDao.updateReadCursors(cursors);
+        } catch (RuntimeException e) {
+            // Write the rest one at a time; whatever still fails goes back in the queue for the next flush
+            log.warn("Batched write of {} read cursors failed, retrying one at a time: {}", cursors.size(), e.getMessage());
+            int requeued = 0;
+            for (ReadCursor cursor : cursors) {
+                try {
+                    messageDao.markReadUpTo(cursor.getConversationId(), cursor.getUserId(), cursor.getLastReadMessageId());
+                } catch (RuntimeException ex) {
+                    markReadUpTo(cursor.getConversationId(), cursor.getUserId(), cursor.getLastReadMessageId());
+                    requeued++;
+                }
+            }
+            if (requeued > 0) {
+                log.warn("Re-queued {} read cursors that could not be written", requeued);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    private static final class Key {
+        private final Long conversationId;
+        private final Long userId;
+
+        private Key(Long conversationId, Long userId) {
+            this.conversationId = conversationId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return conversationId.equals(key.conversationId) && userId.equals(key.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conversationId, userId);
+        }
+    }
+}
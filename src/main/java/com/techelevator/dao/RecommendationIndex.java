@@ -0,0 +1,427 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import com.techelevator.model.MusicianProfile;
+import com.techelevator.model.User;
+import com.techelevator.model.VenueProfile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Precomputed venue recommendations for every musician and musician recommendations for every venue, so serving
+ * them is a map lookup rather than scoring every profile of the other type per request.
+ * <p>
+ * A musician and a venue score {@value #GENRE_WEIGHT} times the Jaccard overlap of the musician's genres and the
+ * venue's genre preferences, plus {@value #LOCATION_WEIGHT} times their closeness (1 at the same spot, falling to 0
+ * at max-distance-miles), plus {@value #VENUE_TYPE_WEIGHT} when the musician's bio or genres name the venue's type.
+ * Musicians have no venue type of their own, so the type only adds to a pair that genre or location already matched;
+ * that keeps the candidates for a profile down to the other side's genre postings and a radius query on a private
+ * proximity grid.
+ * <p>
+ * The full build runs on a fork/join pool at startup ({@link ProfileIndexLoader}). After that, a profile update
+ * recomputes that profile's own list and touches only the lists of profiles it was or now is a candidate for: most
+ * are patched in place, and only a full list the profile falls out of or drops down is recomputed, since the next
+ * best match isn't known. Updates are applied after their transaction commits.
+ */
+@Component
+public class RecommendationIndex {
+
+    static final double GENRE_WEIGHT = 0.6;
+    static final double LOCATION_WEIGHT = 0.3;
+    static final double VENUE_TYPE_WEIGHT = 0.1;
+
+    private static final int TASK_THRESHOLD = 64;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Match> BEST_FIRST =
+            Comparator.comparingDouble(Match::getScore).reversed().thenComparing(Match::getUserId);
+
+    private final int topK;
+    private final double maxDistanceMiles;
+    private final ForkJoinPool pool;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Features> profiles = new HashMap<>();
+    private final Map<String, Set<Long>> musiciansByGenre = new HashMap<>();
+    private final Map<String, Set<Long>> venuesByGenre = new HashMap<>();
+    private final ProximityIndex places;
+    // Written from pool threads during a build, so concurrent; each list is replaced, never mutated
+    private final Map<Long, List<Match>> recommendations = new ConcurrentHashMap<>();
+
+    public RecommendationIndex(@Value("${recommendations.top-k:20}") int topK,
+                               @Value("${recommendations.max-distance-miles:100}") double maxDistanceMiles,
+                               @Value("${recommendations.parallelism:0}") int parallelism) {
+        this.topK = topK;
+        this.maxDistanceMiles = maxDistanceMiles;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        // Cells about the size of the radius, so a candidate query looks at a handful of cells
+        this.places = new ProximityIndex(Math.max(0.1, maxDistanceMiles / 69.0));
+    }
+
+    public void putMusician(Long userId, MusicianProfile profile) {
+        Features features = Features.of(userId, profile);
+        TransactionHooks.afterCommit(() -> update(userId, features));
+    }
+
+    public void putVenue(Long userId, VenueProfile profile) {
+        Features features = Features.of(userId, profile);
+        TransactionHooks.afterCommit(() -> update(userId, features));
+    }
+
+    public void remove(Long userId) {
+        TransactionHooks.afterCommit(() -> update(userId, null));
+    }
+
+    /**
+     * The best matches for the given user, best first, or null if they have no indexed profile.
+     */
+    public List<Match> recommendationsFor(Long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            if (!profiles.containsKey(userId)) {
+                return null;
+            }
+            List<Match> matches = recommendations.getOrDefault(userId, List.of());
+            return new ArrayList<>(matches.subList(0, Math.min(limit, matches.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return profiles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a profile's features without computing anything; used by the startup load, followed by {@link #rebuild()}.
+     */
+    void load(MusicianProfile profile) {
+        load(Features.of(profile.getUser().getUserId(), profile));
+    }
+
+    void load(VenueProfile profile) {
+        load(Features.of(profile.getUser().getUserId(), profile));
+    }
+
+    /**
+     * Recomputes every profile's list on the fork/join pool.
+     */
+    void rebuild() {
+        lock.writeLock().lock();
+        try {
+            recommendations.clear();
+            pool.invoke(new ComputeTask(profiles.keySet().toArray(new Long[0]), 0, profiles.size()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void load(Features features) {
+        lock.writeLock().lock();
+        try {
+            index(features);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void update(Long userId, Features features) {
+        lock.writeLock().lock();
+        try {
+            Features previous = profiles.get(userId);
+            Set<Long> affected = new HashSet<>();
+            if (previous != null) {
+                affected.addAll(candidates(previous));
+                unindex(previous);
+            }
+            if (features != null) {
+                index(features);
+                affected.addAll(candidates(features));
+                recommendations.put(userId, compute(features));
+            } else {
+                recommendations.remove(userId);
+            }
+
+            List<Long> stale = new ArrayList<>();
+            for (Long otherId : affected) {
+                Features other = profiles.get(otherId);
+                double score = features != null ? score(features, other) : 0;
+                if (!patch(otherId, userId, score)) {
+                    stale.add(otherId);
+                }
+            }
+            if (!stale.isEmpty()) {
+                pool.invoke(new ComputeTask(stale.toArray(new Long[0]), 0, stale.size()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+        Applies a changed score for one match to another profile's list, returning false when the list has to be
+        recomputed instead: the match was in a full list and fell, so something outside the list may now beat it.
+     */
+    private boolean patch(Long ownerId, Long matchId, double score) {
+        List<Match> list = recommendations.getOrDefault(ownerId, List.of());
+        int at = -1;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getUserId().equals(matchId)) {
+                at = i;
+                break;
+            }
+        }
+        boolean full = list.size() >= topK;
+        Match match = new Match(matchId, score);
+        if (at >= 0) {
+            if (full && score < list.get(at).getScore()) {
+                return false;
+            }
+        } else if (score <= 0 || (full && BEST_FIRST.compare(match, list.get(list.size() - 1)) > 0)) {
+            return true;
+        }
+        List<Match> patched = new ArrayList<>(list);
+        if (at >= 0) {
+            patched.remove(at);
+        }
+        if (score > 0) {
+            patched.add(match);
+            patched.sort(BEST_FIRST);
+        }
+        recommendations.put(ownerId, List.copyOf(patched.subList(0, Math.min(topK, patched.size()))));
+        return true;
+    }
+
+    private List<Match> compute(Features features) {
+        PriorityQueue<Match> best = new PriorityQueue<>(BEST_FIRST.reversed());
+        for (Long otherId : candidates(features)) {
+            double score = score(features, profiles.get(otherId));
+            if (score <= 0) {
+                continue;
+            }
+            Match match = new Match(otherId, score);
+            if (best.size() < topK) {
+                best.add(match);
+            } else if (BEST_FIRST.compare(match, best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(BEST_FIRST);
+        return List.copyOf(matches);
+    }
+
+    // Every profile of the other type that could score above zero: a shared genre or within max-distance-miles
+    private Set<Long> candidates(Features features) {
+        Map<String, Set<Long>> otherByGenre = features.isMusician() ? venuesByGenre : musiciansByGenre;
+        Set<Long> candidates = new HashSet<>();
+        for (String genre : features.genres) {
+            candidates.addAll(otherByGenre.getOrDefault(genre, Set.of()));
+        }
+        if (features.point != null) {
+            User.UserType otherType = features.isMusician() ? User.UserType.VenueOwner : User.UserType.Musician;
+            for (ProximityIndex.Hit hit : places.withinRadius(features.point, maxDistanceMiles, otherType, null,
+                    Integer.MAX_VALUE)) {
+                candidates.add(hit.getUserId());
+            }
+        }
+        return candidates;
+    }
+
+    double score(Features a, Features b) {
+        Features musician = a.isMusician() ? a : b;
+        Features venue = a.isMusician() ? b : a;
+        double genre = jaccard(musician.genres, venue.genres);
+        double location = 0;
+        if (musician.point != null && venue.point != null) {
+            location = Math.max(0, 1 - musician.point.distanceMiles(venue.point) / maxDistanceMiles);
+        }
+        if (genre == 0 && location == 0) {
+            return 0;
+        }
+        boolean typeNamed = !venue.words.isEmpty() && musician.words.containsAll(venue.words);
+        return GENRE_WEIGHT * genre + LOCATION_WEIGHT * location + (typeNamed ? VENUE_TYPE_WEIGHT : 0);
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int shared = 0;
+        for (String value : a) {
+            if (b.contains(value)) {
+                shared++;
+            }
+        }
+        return (double) shared / (a.size() + b.size() - shared);
+    }
+
+    // Caller holds the write lock
+    private void index(Features features) {
+        Features previous = profiles.put(features.userId, features);
+        if (previous != null) {
+            unindexPostings(previous);
+        }
+        Map<String, Set<Long>> byGenre = features.isMusician() ? musiciansByGenre : venuesByGenre;
+        for (String genre : features.genres) {
+            byGenre.computeIfAbsent(genre, k -> new HashSet<>()).add(features.userId);
+        }
+        places.load(features.userId, features.userType, features.point);
+    }
+
+    // Caller holds the write lock
+    private void unindex(Features features) {
+        profiles.remove(features.userId);
+        unindexPostings(features);
+        places.load(features.userId, features.userType, null);
+    }
+
+    private void unindexPostings(Features features) {
+        Map<String, Set<Long>> byGenre = features.isMusician() ? musiciansByGenre : venuesByGenre;
+        for (String genre : features.genres) {
+            Set<Long> users = byGenre.get(genre);
+            if (users != null) {
+                users.remove(features.userId);
+                if (users.isEmpty()) {
+                    byGenre.remove(genre);
+                }
+            }
+        }
+    }
+
+    // Splits a batch of profiles in half until it is small enough to score directly
+    private class ComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Long[] userIds;
+        private final int from;
+        private final int to;
+
+        private ComputeTask(Long[] userIds, int from, int to) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    recommendations.put(userIds[i], RecommendationIndex.this.compute(profiles.get(userIds[i])));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComputeTask(userIds, from, middle), new ComputeTask(userIds, middle, to));
+            }
+        }
+    }
+
+    /**
+     * What a profile is scored on: normalized genres, its location, and the words of a musician's bio and genres or
+     * of a venue's type.
+     */
+    static final class Features {
+        private final Long userId;
+        private final User.UserType userType;
+        private final Set<String> genres;
+        private final GeoPoint point;
+        private final Set<String> words;
+
+        Features(Long userId, User.UserType userType, Collection<String> genres, GeoPoint point, String text) {
+            this.userId = userId;
+            this.userType = userType;
+            this.genres = new HashSet<>();
+            for (String genre : genres) {
+                if (!genre.isBlank()) {
+                    this.genres.add(genre.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            this.point = point;
+            this.words = words(text);
+        }
+
+        static Features of(Long userId, MusicianProfile profile) {
+            return new Features(userId, User.UserType.Musician, ProfileFacetIndex.splitList(profile.getGenres()),
+                    pointOf(profile.getLatitude(), profile.getLongitude()),
+                    (profile.getBio() != null ? profile.getBio() : "") + " " +
+                            (profile.getGenres() != null ? profile.getGenres() : ""));
+        }
+
+        static Features of(Long userId, VenueProfile profile) {
+            return new Features(userId, User.UserType.VenueOwner,
+                    profile.getGenrePreferences() != null ? profile.getGenrePreferences() : List.of(),
+                    pointOf(profile.getLatitude(), profile.getLongitude()), profile.getVenueType());
+        }
+
+        boolean isMusician() {
+            return userType == User.UserType.Musician;
+        }
+
+        private static GeoPoint pointOf(Double latitude, Double longitude) {
+            return latitude != null && longitude != null ? new GeoPoint(latitude, longitude) : null;
+        }
+
+        // Lower-cased words with a plural "s" dropped, so a bio mentioning "bars" names the venue type "Bar"
+        private static Set<String> words(String text) {
+            Set<String> words = new HashSet<>();
+            if (text == null) {
+                return words;
+            }
+            for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+                if (word.length() > 3 && word.endsWith("s")) {
+                    word = word.substring(0, word.length() - 1);
+                }
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+            return words;
+        }
+    }
+
+    public static class Match {
+        private final Long userId;
+        private final double score;
+
+        public Match(Long userId, double score) {
+            this.userId = userId;
+            this.score = score;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
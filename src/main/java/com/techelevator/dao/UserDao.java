@@ -2,6 +2,7 @@ package com.techelevator.dao;
 
 import com.techelevator.exception.UserNotFoundException;
 import com.techelevator.dto.RegisterUserDto;
+import com.techelevator.dto.UserDto;
 import com.techelevator.model.MusicianProfile;
 import com.techelevator.model.User;
 import com.techelevator.model.VenueProfile;
@@ -29,6 +30,52 @@ public interface UserDao {
 
     List<User> getUsersByType(User.UserType userType, int page, int size);
 
+    /**
+     * Page of user cards (user fields, roles and profile picture) of the given type, ordered by username.
+     * All cards on the page are read in a single statement.
+     * @param userType The type of users to list.
+     * @param page The zero-based page number.
+     * @param size The number of cards per page.
+     * @return The user cards on the requested page.
+     */
+    List<UserDto> getUserCardsByType(User.UserType userType, int page, int size);
+
+    /**
+     * Keyset page of user cards of the given type, ordered by (username, user_id).
+     * @param userType The type of users to list.
+     * @param afterUsername Username of the last user on the previous page, or null for the first page.
+     * @param afterUserId User ID of the last user on the previous page, or null for the first page.
+     * @param size The maximum number of cards to return.
+     * @return The user cards that sort after the given position.
+     */
+    List<UserDto> getUserCardsByTypeAfter(User.UserType userType, String afterUsername, Long afterUserId, int size);
+
+    /**
+     * The user card for a single user, or null if the user does not exist.
+     */
+    UserDto getUserCardById(Long userId);
+
+    /**
+     * User cards for the given users, read in a single statement, in the order the IDs were given.
+     * IDs of users that don't exist are skipped.
+     */
+    List<UserDto> getUserCardsByIds(List<Long> userIds);
+
+    /**
+     * Page of user cards whose musician or venue profile matches a full-text query, best matches first.
+     * @param query Search terms in web-search syntax ("quoted phrases", or, -excluded).
+     * @param userType Only search profiles of this type, or null for both musicians and venues.
+     * @param page The zero-based page number.
+     * @param size The number of cards per page.
+     * @return The matching user cards on the requested page.
+     */
+    List<UserDto> searchUserCards(String query, User.UserType userType, int page, int size);
+
+    /**
+     * Estimated number of users of the given type, taken from planner statistics rather than a COUNT(*).
+     */
+    long estimateUserCountByType(User.UserType userType);
+
     void addInstrumentToMusician(Long userId, String instrumentName);
 
     MusicianProfile getMusicianProfileByUserId(Long userId);
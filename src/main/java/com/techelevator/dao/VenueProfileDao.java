@@ -1,5 +1,6 @@
 package com.techelevator.dao;
 
+import com.techelevator.dto.VenueSearchDto;
 import com.techelevator.exception.DaoException;
 import com.techelevator.model.VenueProfile;
 
@@ -15,6 +16,22 @@ public interface VenueProfileDao {
      */
     VenueProfile getVenueProfileByUserId(Long userId) throws DaoException;
 
+    /**
+     * Retrieves every venue profile, ordered by user ID.
+     * @return All venue profiles.
+     */
+    List<VenueProfile> getAllVenueProfiles();
+
+    /**
+     * Keyset page of venues matching all of the given filters, ordered by (name, user_id).
+     * @param criteria The filters to apply; null fields don't filter.
+     * @param afterName Name of the last venue on the previous page, or null for the first page.
+     * @param afterUserId User ID of the last venue on the previous page, or null for the first page.
+     * @param size The maximum number of venues to return.
+     * @return The matching venues that sort after the given position.
+     */
+    List<VenueProfile> searchVenues(VenueSearchDto criteria, String afterName, Long afterUserId, int size);
+
     /**
      * Creates a new venue profile for the given user ID with the specified venue name and returns the profile.
      * @param userId The ID of the user for whom the profile is being created.
@@ -0,0 +1,196 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * ZIP code centroids, read from a bundled file so that placing a profile never needs the network, and used to turn a
+ * profile's ZIP code, city/state or free-text location into coordinates. The file is either our CSV
+ * (zip,latitude,longitude,city,state) or the Census ZCTA Gazetteer file, and is copied into the zip_codes table at
+ * startup so the same reference data can be joined against in SQL.
+ * <p>
+ * City lookups use the average of that city's ZIP centroids. A city name on its own only resolves when no other state
+ * has a city of that name.
+ */
+@Component
+public class ZipCentroids {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipCentroids.class);
+    private static final Pattern ZIP = Pattern.compile("\\b(\\d{5})(?:-\\d{4})?\\b");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, GeoPoint> byZip = new HashMap<>();
+    private final Map<String, String[]> placeByZip = new HashMap<>();
+    private final Map<String, GeoPoint> byCityState = new HashMap<>();
+    private final Map<String, GeoPoint> byUniqueCity = new HashMap<>();
+
+    public ZipCentroids(JdbcTemplate jdbcTemplate,
+                        @Value("${geo.zip-centroids:classpath:geo/zip_centroids.csv}") Resource file) {
+        this.jdbcTemplate = jdbcTemplate;
+        try {
+            read(file);
+        } catch (IOException e) {
+            log.warn("ZIP centroids not loaded from {}: {}", file, e.getMessage());
+        }
+        indexCities();
+    }
+
+    public GeoPoint forZip(String zip) {
+        if (zip == null) {
+            return null;
+        }
+        Matcher matcher = ZIP.matcher(zip);
+        return matcher.find() ? byZip.get(matcher.group(1)) : null;
+    }
+
+    public GeoPoint forCity(String city, String state) {
+        if (city == null || city.isBlank()) {
+            return null;
+        }
+        if (state != null && !state.isBlank()) {
+            return byCityState.get(cityKey(city, state));
+        }
+        return byUniqueCity.get(normalize(city));
+    }
+
+    /**
+     * Coordinates for a venue-style address: the ZIP code when it is known, otherwise the city and state.
+     */
+    public GeoPoint resolve(String zip, String city, String state) {
+        GeoPoint point = forZip(zip);
+        return point != null ? point : forCity(city, state);
+    }
+
+    /**
+     * Coordinates for a free-text location such as "44113", "Cleveland, OH" or "Cleveland".
+     */
+    public GeoPoint resolveLocation(String location) {
+        if (location == null || location.isBlank()) {
+            return null;
+        }
+        GeoPoint point = forZip(location);
+        if (point != null) {
+            return point;
+        }
+        String[] parts = location.split(",");
+        String state = parts.length > 1 ? ZIP.matcher(parts[1]).replaceAll("").trim() : null;
+        return forCity(parts[0], state);
+    }
+
+    public int size() {
+        return byZip.size();
+    }
+
+    /**
+     * Copies the centroids into the zip_codes table, replacing rows for the same ZIP codes.
+     */
+    public void syncTable() {
+        String sql = "INSERT INTO zip_codes (zip_code, latitude, longitude, city, state) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (zip_code) DO UPDATE SET latitude = EXCLUDED.latitude, longitude = EXCLUDED.longitude, " +
+                "city = EXCLUDED.city, state = EXCLUDED.state";
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<String, GeoPoint> entry : byZip.entrySet()) {
+            String[] place = placeByZip.get(entry.getKey());
+            rows.add(new Object[]{entry.getKey(), entry.getValue().getLatitude(), entry.getValue().getLongitude(),
+                    place != null ? place[0] : null, place != null ? place[1] : null});
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    private void read(Resource file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            List<String> header = null;
+            String separator = ",";
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                if (header == null) {
+                    separator = line.contains("\t") ? "\t" : ",";
+                    header = Arrays.stream(line.split(separator)).map(h -> h.trim().toLowerCase(Locale.ROOT))
+                            .collect(Collectors.toList());
+                    continue;
+                }
+                String[] fields = line.split(separator, -1);
+                String zip = field(fields, header, "zip", "geoid");
+                String latitude = field(fields, header, "latitude", "intptlat");
+                String longitude = field(fields, header, "longitude", "intptlong");
+                if (zip == null || latitude == null || longitude == null) {
+                    continue;
+                }
+                byZip.put(zip, new GeoPoint(Double.parseDouble(latitude), Double.parseDouble(longitude)));
+                String city = field(fields, header, "city", "city");
+                String state = field(fields, header, "state", "state");
+                if (city != null && state != null) {
+                    placeByZip.put(zip, new String[]{city, state});
+                }
+            }
+        }
+    }
+
+    private void indexCities() {
+        Map<String, double[]> sums = new HashMap<>();
+        Map<String, Set<String>> statesByCity = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : placeByZip.entrySet()) {
+            GeoPoint point = byZip.get(entry.getKey());
+            String city = entry.getValue()[0];
+            String state = entry.getValue()[1];
+            double[] sum = sums.computeIfAbsent(cityKey(city, state), k -> new double[3]);
+            sum[0] += point.getLatitude();
+            sum[1] += point.getLongitude();
+            sum[2]++;
+            statesByCity.computeIfAbsent(normalize(city), k -> new HashSet<>()).add(normalize(state));
+        }
+        for (Map.Entry<String, double[]> entry : sums.entrySet()) {
+            double[] sum = entry.getValue();
+            byCityState.put(entry.getKey(), new GeoPoint(sum[0] / sum[2], sum[1] / sum[2]));
+        }
+        for (Map.Entry<String, Set<String>> entry : statesByCity.entrySet()) {
+            if (entry.getValue().size() == 1) {
+                String state = entry.getValue().iterator().next();
+                byUniqueCity.put(entry.getKey(), byCityState.get(entry.getKey() + "|" + state));
+            }
+        }
+    }
+
+    private static String field(String[] fields, List<String> header, String name, String alternative) {
+        int index = header.indexOf(name);
+        if (index < 0) {
+            index = header.indexOf(alternative);
+        }
+        if (index < 0 || index >= fields.length || fields[index].isBlank()) {
+            return null;
+        }
+        return fields[index].trim();
+    }
+
+    private static String cityKey(String city, String state) {
+        return normalize(city) + "|" + normalize(state);
+    }
+
+    private static String normalize(String value) {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,47 @@
+package com.techelevator.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of users matching a set of facet filters, with the total number of matches and, for each facet, how many
+ * matches each of its values has, e.g. facets.genre = {"Rock": 1204, "Jazz": 311}.
+ */
+public class FacetSearchDto {
+
+    private int total;
+    private List<UserDto> users;
+    private Map<String, Map<String, Integer>> facets;
+
+    public FacetSearchDto() {}
+
+    public FacetSearchDto(int total, List<UserDto> users, Map<String, Map<String, Integer>> facets) {
+        this.total = total;
+        this.users = users;
+        this.facets = facets;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public List<UserDto> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDto> users) {
+        this.users = users;
+    }
+
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Map<String, Integer>> facets) {
+        this.facets = facets;
+    }
+}
@@ -0,0 +1,50 @@
+package com.techelevator.dto;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One row of a user's inbox: a conversation with the other participants, a preview of its latest message and how
+ * many messages the user hasn't read yet.
+ */
+public class InboxEntryDto {
+
+    private Long conversationId;
+    private Date createdAt;
+    private List<String> participantNames;
+    private Long lastMessageId;
+    private Long lastSenderId;
+    private String lastMessagePreview;
+    private Date lastMessageAt;
+    private int unreadCount;
+
+    public InboxEntryDto() {}
+
+    public Long getConversationId() { return conversationId; }
+    public void setConversationId(Long conversationId) { this.conversationId = conversationId; }
+    public Date getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Date createdAt) { this.createdAt = createdAt; }
+    public List<String> getParticipantNames() { return participantNames; }
+    public void setParticipantNames(List<String> participantNames) { this.participantNames = participantNames; }
+    public Long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(Long lastMessageId) { this.lastMessageId = lastMessageId; }
+    public Long getLastSenderId() { return lastSenderId; }
+    public void setLastSenderId(Long lastSenderId) { this.lastSenderId = lastSenderId; }
+    public String getLastMessagePreview() { return lastMessagePreview; }
+    public void setLastMessagePreview(String lastMessagePreview) { this.lastMessagePreview = lastMessagePreview; }
+    public Date getLastMessageAt() { return lastMessageAt; }
+    public void setLastMessageAt(Date lastMessageAt) { this.lastMessageAt = lastMessageAt; }
+    public int getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+
+    @Override
+    public String toString() {
+        return "InboxEntryDto{" +
+                "conversationId=" + conversationId +
+                ", participantNames=" + participantNames +
+                ", lastMessageId=" + lastMessageId +
+                ", lastMessageAt=" + lastMessageAt +
+                ", unreadCount=" + unreadCount +
+                '}';
+    }
+}
@@ -0,0 +1,35 @@
+package com.techelevator.dto;
+
+import java.util.List;
+
+/**
+ * A suggested lineup covering every requested instrument, with the genres all of its members have in common.
+ */
+public class LineupDto {
+
+    private List<LineupMemberDto> members;
+    private List<String> sharedGenres;
+
+    public LineupDto() {}
+
+    public LineupDto(List<LineupMemberDto> members, List<String> sharedGenres) {
+        this.members = members;
+        this.sharedGenres = sharedGenres;
+    }
+
+    public List<LineupMemberDto> getMembers() {
+        return members;
+    }
+
+    public void setMembers(List<LineupMemberDto> members) {
+        this.members = members;
+    }
+
+    public List<String> getSharedGenres() {
+        return sharedGenres;
+    }
+
+    public void setSharedGenres(List<String> sharedGenres) {
+        this.sharedGenres = sharedGenres;
+    }
+}
@@ -0,0 +1,35 @@
+package com.techelevator.dto;
+
+import java.util.List;
+
+/**
+ * One musician in a suggested lineup, with the requested instruments they cover.
+ */
+public class LineupMemberDto {
+
+    private UserDto user;
+    private List<String> instruments;
+
+    public LineupMemberDto() {}
+
+    public LineupMemberDto(UserDto user, List<String> instruments) {
+        this.user = user;
+        this.instruments = instruments;
+    }
+
+    public UserDto getUser() {
+        return user;
+    }
+
+    public void setUser(UserDto user) {
+        this.user = user;
+    }
+
+    public List<String> getInstruments() {
+        return instruments;
+    }
+
+    public void setInstruments(List<String> instruments) {
+        this.instruments = instruments;
+    }
+}
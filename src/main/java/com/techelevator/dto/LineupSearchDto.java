@@ -0,0 +1,35 @@
+package com.techelevator.dto;
+
+import java.util.List;
+
+/**
+ * Suggested lineups, best first. exhaustive is false when the search ran out of time, so better lineups may exist.
+ */
+public class LineupSearchDto {
+
+    private List<LineupDto> lineups;
+    private boolean exhaustive;
+
+    public LineupSearchDto() {}
+
+    public LineupSearchDto(List<LineupDto> lineups, boolean exhaustive) {
+        this.lineups = lineups;
+        this.exhaustive = exhaustive;
+    }
+
+    public List<LineupDto> getLineups() {
+        return lineups;
+    }
+
+    public void setLineups(List<LineupDto> lineups) {
+        this.lineups = lineups;
+    }
+
+    public boolean isExhaustive() {
+        return exhaustive;
+    }
+
+    public void setExhaustive(boolean exhaustive) {
+        this.exhaustive = exhaustive;
+    }
+}
@@ -0,0 +1,33 @@
+package com.techelevator.dto;
+
+/**
+ * A user card returned by proximity search, with the user's distance from the search center.
+ */
+public class NearbyUserDto {
+
+    private UserDto user;
+    private double distanceMiles;
+
+    public NearbyUserDto() {}
+
+    public NearbyUserDto(UserDto user, double distanceMiles) {
+        this.user = user;
+        this.distanceMiles = distanceMiles;
+    }
+
+    public UserDto getUser() {
+        return user;
+    }
+
+    public void setUser(UserDto user) {
+        this.user = user;
+    }
+
+    public double getDistanceMiles() {
+        return distanceMiles;
+    }
+
+    public void setDistanceMiles(double distanceMiles) {
+        this.distanceMiles = distanceMiles;
+    }
+}
@@ -0,0 +1,33 @@
+package com.techelevator.dto;
+
+/**
+ * A recommended match for a musician or venue, with its match score between 0 and 1.
+ */
+public class RecommendationDto {
+
+    private UserDto user;
+    private double score;
+
+    public RecommendationDto() {}
+
+    public RecommendationDto(UserDto user, double score) {
+        this.user = user;
+        this.score = score;
+    }
+
+    public UserDto getUser() {
+        return user;
+    }
+
+    public void setUser(UserDto user) {
+        this.user = user;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,34 @@
+package com.techelevator.dto;
+
+/**
+ * A musician returned by similarity search, with the Jaccard similarity of their genres and instruments to the
+ * searched-for musician's.
+ */
+public class SimilarMusicianDto {
+
+    private UserDto user;
+    private double similarity;
+
+    public SimilarMusicianDto() {}
+
+    public SimilarMusicianDto(UserDto user, double similarity) {
+        this.user = user;
+        this.similarity = similarity;
+    }
+
+    public UserDto getUser() {
+        return user;
+    }
+
+    public void setUser(UserDto user) {
+        this.user = user;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    public void setSimilarity(double similarity) {
+        this.similarity = similarity;
+    }
+}
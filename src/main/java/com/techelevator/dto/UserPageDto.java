@@ -0,0 +1,87 @@
+package com.techelevator.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One keyset page of users. nextCursor is an opaque token the client passes back to get the following page; it is
+ * null on the last page.
+ */
+public class UserPageDto {
+
+    private List<UserDto> users;
+    private String nextCursor;
+    private Long estimatedTotal;
+
+    public UserPageDto() {}
+
+    public UserPageDto(List<UserDto> users, String nextCursor, Long estimatedTotal) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    /**
+     * Encodes a (username, userId) position as an opaque URL-safe cursor.
+     */
+    public static String encodeCursor(String username, Long userId) {
+        String raw = userId + ":" + username;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor produced by encodeCursor.
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static Cursor decodeCursor(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = raw.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new Cursor(raw.substring(separator + 1), Long.valueOf(raw.substring(0, separator)));
+    }
+
+    public List<UserDto> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserDto> users) {
+        this.users = users;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Long getEstimatedTotal() {
+        return estimatedTotal;
+    }
+
+    public void setEstimatedTotal(Long estimatedTotal) {
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    public static class Cursor {
+        private final String username;
+        private final Long userId;
+
+        public Cursor(String username, Long userId) {
+            this.username = username;
+            this.userId = userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.techelevator.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One keyset page of venue search results. nextCursor is an opaque token the client passes back to get the following
+ * page; it is null on the last page.
+ */
+public class VenuePageDto {
+
+    private List<VenueProfileDto> venues;
+    private String nextCursor;
+
+    public VenuePageDto() {}
+
+    public VenuePageDto(List<VenueProfileDto> venues, String nextCursor) {
+        this.venues = venues;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Encodes a (name, userId) position as an opaque URL-safe cursor.
+     */
+    public static String encodeCursor(String name, Long userId) {
+        String raw = userId + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor produced by encodeCursor.
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static Cursor decodeCursor(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = raw.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new Cursor(raw.substring(separator + 1), Long.valueOf(raw.substring(0, separator)));
+    }
+
+    public List<VenueProfileDto> getVenues() {
+        return venues;
+    }
+
+    public void setVenues(List<VenueProfileDto> venues) {
+        this.venues = venues;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public static class Cursor {
+        private final String name;
+        private final Long userId;
+
+        public Cursor(String name, Long userId) {
+            this.name = name;
+            this.userId = userId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+    }
+}
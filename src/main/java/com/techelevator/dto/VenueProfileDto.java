@@ -6,6 +6,7 @@ import com.techelevator.model.VenueProfile;
 public class VenueProfileDto {
 
     private Long venueProfileId;
+    private Long userId;
     private String venueName;
     private String address;
     private String city;
@@ -51,6 +52,7 @@ public class VenueProfileDto {
     // Static method to convert from entity to DTO
     public static VenueProfileDto fromEntity(VenueProfile profile) {
         VenueProfileDto dto = new VenueProfileDto(profile.getVenueProfileId());
+        dto.setUserId(profile.getUser() != null ? profile.getUser().getUserId() : null);
         dto.setVenueName(profile.getName());
         dto.setAddress(profile.getAddress());
         dto.setCity(profile.getCity());
@@ -72,6 +74,14 @@ public class VenueProfileDto {
 
     // Getters and Setters...
 
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
     public Long getVenueProfileId() {
         return venueProfileId;
     }
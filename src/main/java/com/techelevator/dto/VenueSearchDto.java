@@ -0,0 +1,67 @@
+package com.techelevator.dto;
+
+import java.util.List;
+
+/**
+ * Filters for a venue search. Every field is optional; null or empty fields don't filter. genres and amenities
+ * match venues that list any of the given values.
+ */
+public class VenueSearchDto {
+
+    private Integer minCapacity;
+    private Integer maxCapacity;
+    private String city;
+    private String state;
+    private List<String> genres;
+    private List<String> amenities;
+
+    public VenueSearchDto() {}
+
+    public Integer getMinCapacity() {
+        return minCapacity;
+    }
+
+    public void setMinCapacity(Integer minCapacity) {
+        this.minCapacity = minCapacity;
+    }
+
+    public Integer getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    public void setMaxCapacity(Integer maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public List<String> getGenres() {
+        return genres;
+    }
+
+    public void setGenres(List<String> genres) {
+        this.genres = genres;
+    }
+
+    public List<String> getAmenities() {
+        return amenities;
+    }
+
+    public void setAmenities(List<String> amenities) {
+        this.amenities = amenities;
+    }
+}
@@ -1,12 +1,12 @@
 package com.techelevator.exception;
 
-public class UserCreationException extends RuntimeException {
+public class UserCreationException extends DaoException {
 
     public UserCreationException(String message) {
         super(message);
     }
 
-    public UserCreationException(String message, Throwable cause) {
+    public UserCreationException(String message, Exception cause) {
         super(message, cause);
     }
 }
\ No newline at end of file
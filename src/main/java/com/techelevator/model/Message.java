@@ -11,6 +11,7 @@ public class Message {
     private Long receiverId;
     private String content;
     private Long parentMessageId;
+    private Long seq;
     private String sentAt; // Changed to String for JSON compatibility
 
     public Message() {
@@ -74,6 +75,14 @@ public class Message {
         this.parentMessageId = parentMessageId;
     }
 
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
     public String getSentAt() {
         return sentAt;
     }
@@ -113,6 +122,7 @@ public class Message {
                 ", receiverId=" + receiverId +
                 ", content='" + content + '\'' +
                 ", parentMessageId=" + parentMessageId +
+                ", seq=" + seq +
                 ", sentAt='" + sentAt + '\'' +
                 '}';
     }
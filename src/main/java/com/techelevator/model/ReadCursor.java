@@ -0,0 +1,70 @@
+package com.techelevator.model;
+
+import java.util.Objects;
+
+/**
+ * A participant's read position in a conversation: every message up to and including lastReadMessageId has been read.
+ */
+public class ReadCursor {
+
+    private Long conversationId;
+    private Long userId;
+    private Long lastReadMessageId;
+
+    public ReadCursor() {
+    }
+
+    public ReadCursor(Long conversationId, Long userId, Long lastReadMessageId) {
+        this.conversationId = conversationId;
+        this.userId = userId;
+        this.lastReadMessageId = lastReadMessageId;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getLastReadMessageId() {
+        return lastReadMessageId;
+    }
+
+    public void setLastReadMessageId(Long lastReadMessageId) {
+        this.lastReadMessageId = lastReadMessageId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReadCursor that = (ReadCursor) o;
+        return Objects.equals(conversationId, that.conversationId) &&
+                Objects.equals(userId, that.userId) &&
+                Objects.equals(lastReadMessageId, that.lastReadMessageId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(conversationId, userId, lastReadMessageId);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadCursor{" +
+                "conversationId=" + conversationId +
+                ", userId=" + userId +
+                ", lastReadMessageId=" + lastReadMessageId +
+                '}';
+    }
+}
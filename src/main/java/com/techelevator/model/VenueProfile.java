@@ -63,6 +63,12 @@ public class VenueProfile {
     @Column(name = "profile_picture_url")
     private String profilePictureUrl;
 
+    @Column(name = "latitude")
+    private Double latitude;
+
+    @Column(name = "longitude")
+    private Double longitude;
+
     @Column(name = "created_at")
     private String createdAt;
 
@@ -201,6 +207,22 @@ public class VenueProfile {
         this.profilePictureUrl = profilePictureUrl;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
     public String getCreatedAt() {
         return createdAt;
     }
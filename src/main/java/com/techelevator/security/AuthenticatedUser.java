@@ -0,0 +1,59 @@
+package com.techelevator.security;
+
+import com.techelevator.model.User;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * Security principal that carries the user's id and type alongside the username and authorities, so controllers
+ * can identify the caller without looking the user up again. Built from the database at login and from the JWT
+ * claims on every later request.
+ */
+public class AuthenticatedUser extends org.springframework.security.core.userdetails.User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long userId;
+    private final User.UserType userType;
+    private final transient User user;
+
+    public AuthenticatedUser(Long userId, String username, String password, User.UserType userType,
+                             Collection<? extends GrantedAuthority> authorities) {
+        this(userId, username, password, userType, authorities, null);
+    }
+
+    public AuthenticatedUser(Long userId, String username, String password, User.UserType userType,
+                             Collection<? extends GrantedAuthority> authorities, User user) {
+        super(username, password, authorities);
+        this.userId = userId;
+        this.userType = userType;
+        this.user = user;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public User.UserType getUserType() {
+        return userType;
+    }
+
+    /**
+     * The full user record this principal was loaded from. Only present on the principal built at login; principals
+     * rebuilt from a token return null.
+     */
+    public User getUser() {
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticatedUser{" +
+                "userId=" + userId +
+                ", username='" + getUsername() + '\'' +
+                ", userType=" + userType +
+                ", authorities=" + getAuthorities() +
+                '}';
+    }
+}
@@ -41,7 +41,7 @@ public class UserModelDetailsService implements UserDetailsService {
         return createSpringSecurityUser(login, user);
     }
 
-    private org.springframework.security.core.userdetails.User createSpringSecurityUser(String login, User user) {
+    private AuthenticatedUser createSpringSecurityUser(String login, User user) {
         // Check if the user is activated based on userType
         if (user.getUserType() == null) {
             throw new UserNotActivatedException("User " + login + " was not activated");
@@ -53,8 +53,11 @@ public class UserModelDetailsService implements UserDetailsService {
             grantedAuthorities.add(new SimpleGrantedAuthority(authority.getName()));
         }
 
-        return new org.springframework.security.core.userdetails.User(user.getUsername(),
+        return new AuthenticatedUser(user.getUserId(),
+                user.getUsername(),
                 user.getPasswordHash(),
-                grantedAuthorities);
+                user.getUserType(),
+                grantedAuthorities,
+                user);
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.techelevator.security.jwt;
 
+import com.techelevator.model.User;
+import com.techelevator.security.AuthenticatedUser;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -11,7 +13,6 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
@@ -24,27 +25,33 @@ public class TokenProvider implements InitializingBean {
     private final Logger log = LoggerFactory.getLogger(TokenProvider.class);
 
     private static final String AUTHORITIES_KEY = "auth";
+    private static final String USER_ID_KEY = "uid";
+    private static final String USER_TYPE_KEY = "type";
 
     private final String base64Secret;
     private final long tokenValidityInMilliseconds;
     private final long tokenValidityInMillisecondsForRememberMe;
 
     private Key key;
-
+    private JwtParser jwtParser;
+    private final TokenAuthenticationCache authenticationCache;
 
     public TokenProvider(
             @Value("${jwt.base64-secret}") String base64Secret,
             @Value("${jwt.token-validity-in-seconds}") long tokenValidityInSeconds,
-            @Value("${jwt.token-validity-in-seconds-for-remember-me}") long tokenValidityInSecondsForRememberMe) {
+            @Value("${jwt.token-validity-in-seconds-for-remember-me}") long tokenValidityInSecondsForRememberMe,
+            @Value("${jwt.cache.max-size:10000}") int cacheMaxSize) {
         this.base64Secret = base64Secret;
         this.tokenValidityInMilliseconds = tokenValidityInSeconds * 1000;
         this.tokenValidityInMillisecondsForRememberMe = tokenValidityInSecondsForRememberMe * 1000;
+        this.authenticationCache = new TokenAuthenticationCache(cacheMaxSize);
     }
 
     @Override
     public void afterPropertiesSet() {
         byte[] keyBytes = Decoders.BASE64.decode(base64Secret);
         this.key = Keys.hmacShaKeyFor(keyBytes);
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(key).build();
     }
 
     public String createToken(Authentication authentication, boolean rememberMe) {
@@ -64,35 +71,90 @@ public class TokenProvider implements InitializingBean {
             validity = new Date(now + this.tokenValidityInMilliseconds);
         }
 
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setSubject(authentication.getName())
-                .claim(AUTHORITIES_KEY, authorities)
+                .claim(AUTHORITIES_KEY, authorities);
+        if (authentication.getPrincipal() instanceof AuthenticatedUser) {
+            AuthenticatedUser principal = (AuthenticatedUser) authentication.getPrincipal();
+            builder.claim(USER_ID_KEY, principal.getUserId());
+            if (principal.getUserType() != null) {
+                builder.claim(USER_TYPE_KEY, principal.getUserType().name());
+            }
+        }
+
+        return builder
                 .signWith(key, SignatureAlgorithm.HS512)
                 .setExpiration(validity)
                 .compact();
     }
 
+    /**
+     * Verifies the token and builds its Authentication in a single pass. Tokens that have already been verified are
+     * served from a bounded cache until they expire.
+     * @param token the compact JWT from the request
+     * @return the Authentication for the token, or null if the token is not valid
+     */
+    public Authentication resolveAuthentication(String token) {
+        Authentication cached = authenticationCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+        Claims claims = parseClaims(token);
+        if (claims == null) {
+            return null;
+        }
+        if (claims.get(USER_ID_KEY) == null) {
+            log.info("JWT token has no user id claim.");
+            return null;
+        }
+        Authentication authentication = buildAuthentication(claims, token);
+        if (claims.getExpiration() != null) {
+            authenticationCache.put(token, authentication, claims.getExpiration().getTime());
+        }
+        return authentication;
+    }
+
     public Authentication getAuthentication(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return buildAuthentication(jwtParser.parseClaimsJws(token).getBody(), token);
+    }
 
+    public boolean validateToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    public long getCacheHits() {
+        return authenticationCache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return authenticationCache.getMisses();
+    }
+
+    public int getCacheSize() {
+        return authenticationCache.size();
+    }
+
+    private Authentication buildAuthentication(Claims claims, String token) {
         Collection<? extends GrantedAuthority> authorities =
                 Arrays.stream(claims.get(AUTHORITIES_KEY).toString().split(","))
                         .map(SimpleGrantedAuthority::new)
                         .collect(Collectors.toList());
 
-        User principal = new User(claims.getSubject(), "", authorities);
+        Number userId = claims.get(USER_ID_KEY, Number.class);
+        String userType = claims.get(USER_TYPE_KEY, String.class);
+        AuthenticatedUser principal = new AuthenticatedUser(
+                userId != null ? userId.longValue() : null,
+                claims.getSubject(),
+                "",
+                userType != null ? User.UserType.valueOf(userType) : null,
+                authorities);
 
         return new UsernamePasswordAuthenticationToken(principal, token, authorities);
     }
 
-    public boolean validateToken(String authToken) {
+    private Claims parseClaims(String authToken) {
         try {
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
-            return true;
+            return jwtParser.parseClaimsJws(authToken).getBody();
         } catch (io.jsonwebtoken.security.SecurityException | MalformedJwtException e) {
             log.info("Invalid JWT signature.");
             log.trace("Invalid JWT signature trace: {}", e);
@@ -106,6 +168,6 @@ public class TokenProvider implements InitializingBean {
             log.info("JWT token compact of handler are invalid.");
             log.trace("JWT token compact of handler are invalid trace: {}", e);
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,65 @@
+package com.techelevator.config;
+
+import com.techelevator.model.Message;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ChatSessionTests {
+
+    @Test
+    public void live_messages_wait_until_held_ones_are_handed_over() throws InterruptedException {
+        ChatSession sut = new ChatSession(1L, Mockito.mock(WebSocketSession.class), 5000, 65536);
+        sut.beginResume(10);
+        Assert.assertTrue(sut.holdIfResuming(message(1L)));
+
+        List<Long> handedOver = new ArrayList<>();
+        AtomicBoolean liveHeld = new AtomicBoolean(true);
+        Thread live = new Thread(() -> liveHeld.set(sut.holdIfResuming(message(2L))));
+        sut.endResume((held, dropped) -> {
+            live.start();
+            try {
+                live.join(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // The live delivery can't decide to send until the held messages have been queued
+            Assert.assertTrue(live.isAlive());
+            Assert.assertFalse(dropped);
+            held.forEach(message -> handedOver.add(message.getMessageId()));
+        });
+        live.join(5000);
+
+        Assert.assertEquals(List.of(1L), handedOver);
+        Assert.assertFalse(liveHeld.get());
+    }
+
+    @Test
+    public void messages_past_the_hold_limit_are_reported_dropped() {
+        ChatSession sut = new ChatSession(1L, Mockito.mock(WebSocketSession.class), 5000, 65536);
+        sut.beginResume(1);
+        sut.holdIfResuming(message(1L));
+        Assert.assertTrue(sut.holdIfResuming(message(2L)));
+
+        List<Boolean> reported = new ArrayList<>();
+        sut.endResume((held, dropped) -> {
+            Assert.assertEquals(1, held.size());
+            reported.add(dropped);
+        });
+
+        Assert.assertEquals(List.of(true), reported);
+        Assert.assertFalse(sut.holdIfResuming(message(3L)));
+    }
+
+    private static Message message(Long messageId) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setConversationId(1L);
+        return message;
+    }
+}
@@ -0,0 +1,133 @@
+package com.techelevator.config;
+
+import com.techelevator.dao.BaseDaoTests;
+import com.techelevator.dao.ConversationMembershipCache;
+import com.techelevator.dao.MessageDao;
+import com.techelevator.dao.MessageTailCache;
+import com.techelevator.model.Message;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Two buses on one database, as two app instances would be; everything but Postgres is mocked
+public class PostgresChatFanoutBusTests extends BaseDaoTests {
+
+    private JdbcTemplate notifyTemplate;
+    private final List<Node> nodes = new ArrayList<>();
+
+    @Before
+    public void setup() throws InterruptedException {
+        // NOTIFY is only delivered on commit, so notifications go through their own auto-committing connections
+        DriverManagerDataSource testDataSource = (DriverManagerDataSource) dataSource;
+        notifyTemplate = new JdbcTemplate(new DriverManagerDataSource(testDataSource.getUrl(),
+                testDataSource.getUsername(), testDataSource.getPassword()));
+        nodes.add(new Node(testDataSource));
+        nodes.add(new Node(testDataSource));
+        awaitListeners(2);
+    }
+
+    @After
+    public void shutdown() throws InterruptedException {
+        for (Node node : nodes) {
+            node.bus.shutdown();
+        }
+    }
+
+    @Test
+    public void published_message_reaches_the_other_instance() {
+        Node sender = nodes.get(0);
+        Node receiver = nodes.get(1);
+        Message message = message(101L, 7L);
+        Mockito.when(receiver.messageDao.getMessagesByIds(Set.of(101L))).thenReturn(List.of(message));
+
+        sender.bus.publish(message, "sender-session");
+
+        Mockito.verify(sender.delivery).deliver(message, "sender-session");
+        Mockito.verify(receiver.delivery, Mockito.timeout(5000)).deliver(message, null);
+        Mockito.verify(receiver.tailCache, Mockito.timeout(5000)).append(message);
+        // A node ignores its own notifications
+        Mockito.verify(sender.messageDao, Mockito.after(500).never()).getMessagesByIds(Mockito.any());
+    }
+
+    @Test
+    public void committed_invalidations_evict_on_the_other_instance() {
+        nodes.get(0).membershipInvalidated.accept(42L);
+        nodes.get(0).tailInvalidated.accept(43L);
+
+        Mockito.verify(nodes.get(1).membershipCache, Mockito.timeout(5000)).evict(42L);
+        Mockito.verify(nodes.get(1).tailCache, Mockito.timeout(5000)).evict(43L);
+        Mockito.verify(nodes.get(1).membershipCache, Mockito.never()).evict(43L);
+    }
+
+    @Test
+    public void malformed_notifications_are_skipped_and_listening_continues() {
+        Node receiver = nodes.get(1);
+        Message message = message(202L, 8L);
+        Mockito.when(receiver.messageDao.getMessagesByIds(Set.of(202L))).thenReturn(List.of(message));
+
+        notifyTemplate.queryForRowSet("SELECT pg_notify('chat_fanout', 'stranger:1:12,twelve')");
+        notifyTemplate.queryForRowSet("SELECT pg_notify('chat_fanout', 'stranger:x:inv:5')");
+        notifyTemplate.queryForRowSet("SELECT pg_notify('chat_fanout', 'no separators')");
+        nodes.get(0).bus.publish(message, null);
+
+        Mockito.verify(receiver.delivery, Mockito.timeout(5000)).deliver(message, null);
+        Mockito.verify(receiver.membershipCache, Mockito.never()).evict(5L);
+        Mockito.verify(receiver.messageDao, Mockito.never()).getMessagesByIds(Set.of(12L));
+    }
+
+    // Each listener sits on its LISTEN statement once it is subscribed
+    private void awaitListeners(int count) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Integer listening = notifyTemplate.queryForObject("SELECT COUNT(*) FROM pg_stat_activity " +
+                    "WHERE datname = current_database() AND query = 'LISTEN chat_fanout'", Integer.class);
+            if (listening != null && listening >= count) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Assert.fail("Fan-out listeners never subscribed");
+    }
+
+    private static Message message(Long messageId, Long conversationId) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setConversationId(conversationId);
+        return message;
+    }
+
+    private static class Node {
+        private final ChatMessageDelivery delivery = Mockito.mock(ChatMessageDelivery.class);
+        private final ChatSessionRegistry sessionRegistry = Mockito.mock(ChatSessionRegistry.class);
+        private final MessageDao messageDao = Mockito.mock(MessageDao.class);
+        private final MessageTailCache tailCache = Mockito.mock(MessageTailCache.class);
+        private final ConversationMembershipCache membershipCache = Mockito.mock(ConversationMembershipCache.class);
+        private final Consumer<Long> membershipInvalidated;
+        private final Consumer<Long> tailInvalidated;
+        private final PostgresChatFanoutBus bus;
+
+        @SuppressWarnings("unchecked")
+        private Node(DriverManagerDataSource testDataSource) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(testDataSource.getUrl(),
+                    testDataSource.getUsername(), testDataSource.getPassword()));
+            bus = new PostgresChatFanoutBus(delivery, sessionRegistry, messageDao, tailCache, membershipCache,
+                    jdbcTemplate, testDataSource.getUrl(), testDataSource.getUsername(), testDataSource.getPassword(),
+                    200, 5, 10000, 1000);
+            ArgumentCaptor<Consumer<Long>> membership = ArgumentCaptor.forClass(Consumer.class);
+            Mockito.verify(membershipCache).addInvalidationListener(membership.capture());
+            membershipInvalidated = membership.getValue();
+            ArgumentCaptor<Consumer<Long>> tail = ArgumentCaptor.forClass(Consumer.class);
+            Mockito.verify(tailCache).addInvalidationListener(tail.capture());
+            tailInvalidated = tail.getValue();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.techelevator.controller;
+
+import com.techelevator.dao.LineupSolver;
+import com.techelevator.dao.MusicianProfileDao;
+import com.techelevator.dao.MusicianSimilarityIndex;
+import com.techelevator.dao.ProfileFacetIndex;
+import com.techelevator.dao.ProximityIndex;
+import com.techelevator.dao.RecommendationIndex;
+import com.techelevator.dao.UserDao;
+import com.techelevator.dao.VenueProfileDao;
+import com.techelevator.dao.ZipCentroids;
+import com.techelevator.dto.UserPageDto;
+import com.techelevator.model.User;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class ProfileControllerTests {
+
+    private UserDao userDao;
+    private ProfileController sut;
+
+    @Before
+    public void setup() {
+        userDao = Mockito.mock(UserDao.class);
+        sut = new ProfileController(userDao, Mockito.mock(MusicianProfileDao.class), Mockito.mock(VenueProfileDao.class),
+                Mockito.mock(ProfileFacetIndex.class), Mockito.mock(ProximityIndex.class),
+                Mockito.mock(RecommendationIndex.class), Mockito.mock(MusicianSimilarityIndex.class),
+                Mockito.mock(LineupSolver.class), Mockito.mock(ZipCentroids.class));
+    }
+
+    @Test
+    public void malformed_cursors_are_bad_requests() {
+        for (String cursor : new String[]{"not base64!", encode("no separator"), encode("abc:user1"), encode(":user1")}) {
+            try {
+                sut.getUsersByType("Musician", 0, 10, cursor, false);
+                Assert.fail("Accepted cursor " + cursor);
+            } catch (ResponseStatusException e) {
+                Assert.assertEquals(cursor, HttpStatus.BAD_REQUEST, e.getStatus());
+            }
+        }
+        Mockito.verifyNoInteractions(userDao);
+    }
+
+    @Test
+    public void valid_cursor_resumes_after_its_position() {
+        String cursor = UserPageDto.encodeCursor("user1", 1L);
+
+        sut.getUsersByType("Musician", 0, 10, cursor, false);
+
+        Mockito.verify(userDao).getUserCardsByTypeAfter(User.UserType.Musician, "user1", 1L, 11);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,68 @@
+package com.techelevator.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class CompressedBitmapTests {
+
+    @Test
+    public void random_adds_and_removes_match_a_bitset() {
+        Random random = new Random(7);
+        CompressedBitmap sut = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        // Chunk 0 gets dense enough to become a bitmap and sparse again; chunk 2 stays a small array
+        for (int step = 0; step < 40000; step++) {
+            int value = random.nextBoolean() ? random.nextInt(20000) : 131072 + random.nextInt(300);
+            if (step < 25000 || random.nextInt(3) > 0) {
+                sut.add(value);
+                expected.set(value);
+            } else {
+                sut.remove(value);
+                expected.clear(value);
+            }
+        }
+        for (int value = 0; value < 140000; value++) {
+            Assert.assertEquals(String.valueOf(value), expected.get(value), sut.contains(value));
+        }
+        Assert.assertEquals(expected.cardinality(), sut.cardinality());
+
+        long[] words = new long[(140000 + 63) / 64];
+        sut.orInto(words);
+        Assert.assertEquals(expected, BitSet.valueOf(words));
+    }
+
+    @Test
+    public void and_cardinality_counts_shared_values_within_the_words() {
+        Random random = new Random(11);
+        CompressedBitmap dense = new CompressedBitmap();
+        CompressedBitmap sparse = new CompressedBitmap();
+        BitSet denseExpected = new BitSet();
+        BitSet sparseExpected = new BitSet();
+        for (int value = 0; value < 200000; value++) {
+            if (random.nextInt(4) == 0) {
+                dense.add(value);
+                denseExpected.set(value);
+            }
+            if (random.nextInt(100) == 0) {
+                sparse.add(value);
+                sparseExpected.set(value);
+            }
+        }
+
+        long[] words = new long[(200000 + 63) / 64];
+        dense.orInto(words);
+        sparseExpected.and(denseExpected);
+        Assert.assertEquals(sparseExpected.cardinality(), sparse.andCardinality(words));
+        Assert.assertEquals(denseExpected.cardinality(), dense.andCardinality(words));
+
+        // Values past the end of the words don't count
+        long[] shorter = new long[1500];
+        dense.orInto(shorter);
+        Assert.assertEquals(denseExpected.get(0, 1500 * 64).cardinality(), dense.andCardinality(shorter));
+        Assert.assertTrue(new CompressedBitmap().isEmpty());
+        Assert.assertEquals(0, new CompressedBitmap().andCardinality(words));
+    }
+}
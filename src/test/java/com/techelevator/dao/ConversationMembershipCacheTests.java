@@ -0,0 +1,59 @@
+package com.techelevator.dao;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class ConversationMembershipCacheTests extends BaseDaoTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private ConversationMembershipCache sut;
+    private Long conversationId;
+
+    @Before
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        sut = new ConversationMembershipCache(jdbcTemplate, 100);
+        conversationId = jdbcTemplate.queryForObject(
+                "INSERT INTO conversations DEFAULT VALUES RETURNING conversation_id", Long.class);
+        addParticipant(1L);
+        addParticipant(2L);
+    }
+
+    @Test
+    public void contacts_are_loaded_once_and_served_from_memory() {
+        Assert.assertTrue(sut.isContact(1L, 2L));
+        Assert.assertFalse(sut.isContact(1L, 3L));
+        Assert.assertTrue(sut.isContact(3L, 3L));
+        long misses = sut.getMisses();
+
+        Assert.assertTrue(sut.isContact(1L, 2L));
+        Assert.assertArrayEquals(new long[]{2L}, sut.getContactIds(1L));
+        Assert.assertEquals(misses, sut.getMisses());
+    }
+
+    @Test
+    public void participant_changes_drop_cached_contacts() {
+        Assert.assertFalse(sut.isContact(1L, 3L));
+        Assert.assertFalse(sut.isContact(3L, 2L));
+
+        addParticipant(3L);
+        sut.invalidate(conversationId);
+
+        Assert.assertTrue(sut.isContact(1L, 3L));
+        Assert.assertTrue(sut.isContact(3L, 2L));
+        Assert.assertArrayEquals(new long[]{1L, 2L}, sut.getContactIds(3L));
+
+        jdbcTemplate.update("DELETE FROM conversation_participants WHERE conversation_id = ? AND user_id = 1",
+                conversationId);
+        sut.evict(conversationId);
+
+        Assert.assertFalse(sut.isContact(2L, 1L));
+    }
+
+    private void addParticipant(Long userId) {
+        jdbcTemplate.update("INSERT INTO conversation_participants (conversation_id, user_id) VALUES (?, ?)",
+                conversationId, userId);
+    }
+}
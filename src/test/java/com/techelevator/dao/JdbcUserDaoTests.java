@@ -2,24 +2,42 @@ package com.techelevator.dao;
 
 import com.techelevator.exception.DaoException;
 import com.techelevator.dto.RegisterUserDto;
+import com.techelevator.dto.UserDto;
+import com.techelevator.model.MusicianProfile;
 import com.techelevator.model.User;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class JdbcUserDaoTests extends BaseDaoTests {
-    protected static final User USER_1 = new User("user1", "user1@example.com", "passwordHash", User.UserType.Musician);
-    protected static final User USER_2 = new User("user2", "user2@example.com", "passwordHash", User.UserType.VenueOwner);
-    private static final User USER_3 = new User("user3", "user3@example.com", "passwordHash", User.UserType.Musician);
+    protected static final User USER_1 = user(1L, "user1", User.UserType.Musician, "2024-01-01 12:00:00");
+    protected static final User USER_2 = user(2L, "user2", User.UserType.VenueOwner, "2024-01-02 12:00:00");
+    private static final User USER_3 = user(3L, "user3", User.UserType.Musician, "2024-01-03 12:00:00");
     private JdbcUserDao sut;
+    private JdbcMusicianProfileDao musicianProfileDao;
+    private JdbcTemplate jdbcTemplate;
+    private StatementCountingDataSource countingDataSource;
 
     @Before
     public void setup() {
-        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
-        sut = new JdbcUserDao(jdbcTemplate);
+        countingDataSource = new StatementCountingDataSource(dataSource);
+        jdbcTemplate = new JdbcTemplate(countingDataSource);
+        ProfileFacetIndex facetIndex = new ProfileFacetIndex();
+        ZipCentroids zipCentroids = new ZipCentroids(jdbcTemplate, new ClassPathResource("geo/zip_centroids.csv"));
+        ProximityIndex proximityIndex = new ProximityIndex(0.25);
+        RecommendationIndex recommendationIndex = new RecommendationIndex(20, 100, 1);
+        musicianProfileDao = new JdbcMusicianProfileDao(jdbcTemplate, facetIndex, zipCentroids, proximityIndex,
+                recommendationIndex, new MusicianSimilarityIndex(20, 3));
+        sut = new JdbcUserDao(jdbcTemplate, musicianProfileDao,
+                new JdbcVenueProfileDao(jdbcTemplate, facetIndex, zipCentroids, proximityIndex, recommendationIndex));
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -70,6 +88,8 @@ public class JdbcUserDaoTests extends BaseDaoTests {
         registerUserDto.setUsername(null);
         registerUserDto.setPassword(USER_3.getPasswordHash());
         registerUserDto.setRole("ROLE_USER");
+        registerUserDto.setUserType("Musician");
+        registerUserDto.setEmail("user4@example.com");
         sut.createUser(registerUserDto);
     }
 
@@ -79,6 +99,8 @@ public class JdbcUserDaoTests extends BaseDaoTests {
         registerUserDto.setUsername(USER_1.getUsername());
         registerUserDto.setPassword(USER_3.getPasswordHash());
         registerUserDto.setRole("ROLE_USER");
+        registerUserDto.setUserType("Musician");
+        registerUserDto.setEmail("user4@example.com");
         sut.createUser(registerUserDto);
     }
 
@@ -88,6 +110,8 @@ public class JdbcUserDaoTests extends BaseDaoTests {
         registerUserDto.setUsername(USER_3.getUsername());
         registerUserDto.setPassword(null);
         registerUserDto.setRole("ROLE_USER");
+        registerUserDto.setUserType("Musician");
+        registerUserDto.setEmail("user4@example.com");
         sut.createUser(registerUserDto);
     }
 
@@ -97,6 +121,8 @@ public class JdbcUserDaoTests extends BaseDaoTests {
         user.setUsername("new");
         user.setPassword("user");
         user.setRole("ROLE_USER");
+        user.setUserType("Musician");
+        user.setEmail("new@example.com");
         User createdUser = sut.createUser(user);
 
         Assert.assertNotNull(createdUser);
@@ -104,4 +130,145 @@ public class JdbcUserDaoTests extends BaseDaoTests {
         User retrievedUser = sut.getUserByUsername(createdUser.getUsername());
         Assert.assertEquals(retrievedUser, createdUser);
     }
+
+    @Test(expected = DaoException.class)
+    public void createUser_without_user_type() {
+        RegisterUserDto registerUserDto = new RegisterUserDto();
+        registerUserDto.setUsername("new");
+        registerUserDto.setPassword("user");
+        registerUserDto.setRole("ROLE_USER");
+        registerUserDto.setEmail("new@example.com");
+        sut.createUser(registerUserDto);
+    }
+
+    @Test
+    public void getUsers_runs_one_statement_regardless_of_user_count() {
+        countingDataSource.reset();
+        List<User> users = sut.getUsers();
+
+        Assert.assertEquals(3, users.size());
+        Assert.assertEquals(1, countingDataSource.getStatementCount());
+        Assert.assertFalse(users.get(0).getAuthorities().isEmpty());
+    }
+
+    @Test
+    public void getUsersByType_runs_one_statement_per_page() {
+        countingDataSource.reset();
+        List<User> users = sut.getUsersByType(User.UserType.Musician, 0, 100);
+
+        Assert.assertEquals(2, users.size());
+        Assert.assertEquals(1, countingDataSource.getStatementCount());
+    }
+
+    @Test
+    public void getUserByUsername_runs_one_statement() {
+        countingDataSource.reset();
+        User user = sut.getUserByUsername(USER_1.getUsername());
+
+        Assert.assertNotNull(user);
+        Assert.assertEquals(USER_1.getAuthorities(), user.getAuthorities());
+        Assert.assertEquals(1, countingDataSource.getStatementCount());
+    }
+
+    @Test
+    public void getUserCardsByType_runs_one_statement_per_page() {
+        countingDataSource.reset();
+        List<UserDto> cards = sut.getUserCardsByType(User.UserType.Musician, 0, 10);
+
+        Assert.assertEquals(2, cards.size());
+        Assert.assertEquals(List.of("ROLE_USER"), cards.get(0).getRoles());
+        Assert.assertEquals(1, countingDataSource.getStatementCount());
+    }
+
+    @Test
+    public void getUserCardsByTypeAfter_keyset_pages_cover_every_user_once_in_order() {
+        // Names that collate next to each other: case, spacing and punctuation variants of the same letters
+        jdbcTemplate.update("INSERT INTO users (username, email, password_hash, user_type) " +
+                "SELECT (ARRAY['band', 'Band', 'BAND', 'ban d', 'band-', 'band_'])[1 + g % 6] || (g / 6), " +
+                "'pager' || g || '@example.com', 'passwordHash', 'Musician' FROM generate_series(0, 89) AS g");
+        List<UserDto> all = sut.getUserCardsByTypeAfter(User.UserType.Musician, null, null, 1000);
+        Assert.assertEquals(92, all.size());
+
+        List<UserDto> paged = new ArrayList<>();
+        List<UserDto> page = sut.getUserCardsByTypeAfter(User.UserType.Musician, null, null, 7);
+        while (!page.isEmpty()) {
+            paged.addAll(page);
+            UserDto last = page.get(page.size() - 1);
+            page = sut.getUserCardsByTypeAfter(User.UserType.Musician, last.getUsername(), last.getUserId(), 7);
+        }
+
+        Assert.assertEquals(all.size(), paged.size());
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(all.get(i).getUserId(), paged.get(i).getUserId());
+            Assert.assertTrue(seen.add(paged.get(i).getUserId()));
+        }
+    }
+
+    @Test
+    public void getUserCardsByTypeAfter_breaks_username_ties_by_user_id() {
+        // Usernames are unique, so a tie only happens against the cursor itself: a cursor on user3's name with a
+        // lower id still starts at user3, and one with user3's own id starts after it
+        List<UserDto> fromLowerId = sut.getUserCardsByTypeAfter(User.UserType.Musician, "user3", 0L, 10);
+        List<UserDto> fromOwnId = sut.getUserCardsByTypeAfter(User.UserType.Musician, "user3", 3L, 10);
+
+        Assert.assertEquals(Long.valueOf(3), fromLowerId.get(0).getUserId());
+        Assert.assertTrue(fromOwnId.isEmpty());
+    }
+
+    @Test
+    public void searchUserCards_ranks_name_matches_above_bio_matches() {
+        addMusicianProfile(USER_1, "Jazz Hands", "Plays standards");
+        addMusicianProfile(USER_3, "Rita Stone", "Sits in with a jazz trio on Sundays");
+
+        List<UserDto> cards = sut.searchUserCards("jazz", null, 0, 10);
+
+        Assert.assertEquals(2, cards.size());
+        Assert.assertEquals(USER_1.getUsername(), cards.get(0).getUsername());
+        Assert.assertEquals(USER_3.getUsername(), cards.get(1).getUsername());
+    }
+
+    @Test
+    public void searchUserCards_pages_in_rank_order_and_filters_by_type() {
+        addMusicianProfile(USER_1, "Jazz Hands", "Plays standards");
+        addMusicianProfile(USER_3, "Rita Stone", "Sits in with a jazz trio on Sundays");
+        jdbcTemplate.update("INSERT INTO venue_profiles (user_id, name, venue_type, city, state) " +
+                "VALUES (?, 'Jazz Cellar', 'Club', 'Cleveland', 'OH')", USER_2.getUserId());
+
+        List<UserDto> first = sut.searchUserCards("jazz", null, 0, 2);
+        List<UserDto> second = sut.searchUserCards("jazz", null, 1, 2);
+        List<UserDto> venues = sut.searchUserCards("jazz", User.UserType.VenueOwner, 0, 10);
+
+        Assert.assertEquals(2, first.size());
+        Assert.assertEquals(1, second.size());
+        Assert.assertEquals(USER_3.getUsername(), second.get(0).getUsername());
+        Assert.assertFalse(first.stream().anyMatch(card -> card.getUsername().equals(USER_3.getUsername())));
+        Assert.assertEquals(1, venues.size());
+        Assert.assertEquals(USER_2.getUsername(), venues.get(0).getUsername());
+    }
+
+    @Test
+    public void searchUserCards_follows_profile_updates() {
+        addMusicianProfile(USER_1, "Jazz Hands", "Plays standards");
+        MusicianProfile profile = musicianProfileDao.getMusicianProfileByUserId(USER_1.getUserId());
+        profile.setName("Theremin Tom");
+        musicianProfileDao.updateMusicianProfile(USER_1.getUserId(), profile);
+
+        // search_vector is a generated column, so the update alone re-indexes the profile
+        Assert.assertTrue(sut.searchUserCards("jazz", null, 0, 10).isEmpty());
+        Assert.assertEquals(1, sut.searchUserCards("theremin", User.UserType.Musician, 0, 10).size());
+    }
+
+    private void addMusicianProfile(User user, String name, String bio) {
+        jdbcTemplate.update("INSERT INTO musician_profiles (user_id, name, bio) VALUES (?, ?, ?)",
+                user.getUserId(), name, bio);
+    }
+
+    // Matches a row from test-data.sql, which fixes the created_at values so they can be compared
+    private static User user(Long userId, String username, User.UserType userType, String createdAt) {
+        User user = new User(username, username + "@example.com", "passwordHash", userType);
+        user.setUserId(userId);
+        user.setCreatedAt(Timestamp.valueOf(createdAt));
+        return user;
+    }
 }
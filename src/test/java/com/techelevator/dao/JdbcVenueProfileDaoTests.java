@@ -0,0 +1,139 @@
+package com.techelevator.dao;
+
+import com.techelevator.dto.VenueSearchDto;
+import com.techelevator.model.VenueProfile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JdbcVenueProfileDaoTests extends BaseDaoTests {
+    private static final int VENUE_COUNT = 2000;
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcVenueProfileDao sut;
+
+    @Before
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        sut = new JdbcVenueProfileDao(jdbcTemplate, new ProfileFacetIndex(),
+                new ZipCentroids(jdbcTemplate, new ClassPathResource("geo/zip_centroids.csv")), new ProximityIndex(0.25),
+                new RecommendationIndex(20, 100, 1));
+
+        // Common values on most venues, plus a handful of rare ones so each filter has something selective to use
+        jdbcTemplate.update("INSERT INTO users (username, email, password_hash, user_type) " +
+                "SELECT 'venue' || g, 'venue' || g || '@example.com', 'passwordHash', 'VenueOwner' " +
+                "FROM generate_series(1, ?) AS g", VENUE_COUNT);
+        jdbcTemplate.update("INSERT INTO venue_profiles (user_id, name, city, state, capacity, genre_preferences, amenities) " +
+                "SELECT u.user_id, 'Venue ' || lpad(g::text, 4, '0'), " +
+                "CASE WHEN g % 400 = 0 THEN 'Akron' ELSE (ARRAY['Cleveland', 'Columbus', 'Pittsburgh', 'Detroit'])[1 + g % 4] END, " +
+                "(ARRAY['OH', 'OH', 'PA', 'MI'])[1 + g % 4], " +
+                "CASE WHEN g % 500 = 0 THEN 5000 ELSE 50 + (g * 37) % 1000 END, " +
+                "CASE WHEN g % 400 = 1 THEN ARRAY['Bluegrass'] ELSE ARRAY[(ARRAY['Rock', 'Jazz', 'Blues', 'Country'])[1 + g % 4]] END, " +
+                "CASE WHEN g % 400 = 2 THEN ARRAY['Rooftop'] WHEN g % 3 = 0 THEN ARRAY['PA System', 'Green Room'] ELSE ARRAY['Parking'] END " +
+                "FROM generate_series(1, ?) AS g JOIN users u ON u.username = 'venue' || g", VENUE_COUNT);
+        jdbcTemplate.execute("ANALYZE venue_profiles");
+    }
+
+    @Test
+    public void searchVenues_applies_all_filters() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setMinCapacity(200);
+        criteria.setMaxCapacity(500);
+        criteria.setState("oh");
+        criteria.setGenres(List.of("Jazz", "Blues"));
+        criteria.setAmenities(List.of("PA System"));
+
+        List<VenueProfile> venues = sut.searchVenues(criteria, null, null, VENUE_COUNT);
+
+        Integer expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM venue_profiles " +
+                "WHERE capacity BETWEEN 200 AND 500 AND state = 'OH' " +
+                "AND ('Jazz' = ANY(genre_preferences) OR 'Blues' = ANY(genre_preferences)) " +
+                "AND 'PA System' = ANY(amenities)", Integer.class);
+        Assert.assertTrue(expected > 0);
+        Assert.assertEquals(expected.intValue(), venues.size());
+        for (VenueProfile venue : venues) {
+            Assert.assertTrue(venue.getCapacity() >= 200 && venue.getCapacity() <= 500);
+            Assert.assertEquals("OH", venue.getState());
+            Assert.assertTrue(venue.getAmenities().contains("PA System"));
+        }
+    }
+
+    @Test
+    public void searchVenues_keyset_pages_cover_every_match_once_in_order() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setCity("cleveland");
+        List<VenueProfile> all = sut.searchVenues(criteria, null, null, VENUE_COUNT);
+
+        List<VenueProfile> paged = new ArrayList<>();
+        List<VenueProfile> page = sut.searchVenues(criteria, null, null, 37);
+        while (!page.isEmpty()) {
+            paged.addAll(page);
+            VenueProfile last = page.get(page.size() - 1);
+            page = sut.searchVenues(criteria, last.getName(), last.getUser().getUserId(), 37);
+        }
+
+        Assert.assertEquals(all.size(), paged.size());
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(all.get(i).getUser().getUserId(), paged.get(i).getUser().getUserId());
+        }
+    }
+
+    @Test
+    public void genre_overlap_uses_gin_index() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setGenres(List.of("Bluegrass"));
+
+        assertPlanUses(criteria, "idx_venue_profiles_genre_preferences");
+    }
+
+    @Test
+    public void amenity_overlap_uses_gin_index() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setAmenities(List.of("Rooftop"));
+
+        assertPlanUses(criteria, "idx_venue_profiles_amenities");
+    }
+
+    @Test
+    public void city_and_state_use_location_index() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setState("OH");
+        criteria.setCity("Akron");
+
+        assertPlanUses(criteria, "idx_venue_profiles_state_city");
+    }
+
+    @Test
+    public void capacity_range_uses_capacity_index() {
+        VenueSearchDto criteria = new VenueSearchDto();
+        criteria.setMinCapacity(4000);
+
+        assertPlanUses(criteria, "idx_venue_profiles_capacity");
+    }
+
+    @Test
+    public void unfiltered_pages_read_name_index_without_sorting() {
+        String plan = explain(new VenueSearchDto(), "Venue 1000", 1000L);
+
+        Assert.assertTrue(plan, plan.contains("idx_venue_profiles_name_user_id"));
+        Assert.assertFalse(plan, plan.contains("Sort"));
+    }
+
+    private void assertPlanUses(VenueSearchDto criteria, String indexName) {
+        String plan = explain(criteria, null, null);
+        Assert.assertTrue(plan, plan.contains(indexName));
+    }
+
+    private String explain(VenueSearchDto criteria, String afterName, Long afterUserId) {
+        // A 2000-row table fits in a few pages, so take sequential scans off the table to see which index is chosen
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        JdbcVenueProfileDao.SearchQuery query = sut.buildSearchQuery(criteria, afterName, afterUserId, 21);
+        List<String> lines = jdbcTemplate.query("EXPLAIN " + query.getSql(), query, (rs, rowNum) -> rs.getString(1));
+        return String.join("\n", lines);
+    }
+}
@@ -0,0 +1,163 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.MusicianProfile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class LineupSolverTests extends BaseDaoTests {
+    private static final List<String> WANTED = List.of("drums", "bass", "keys");
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcMusicianProfileDao musicianProfileDao;
+    private LineupSolver sut;
+    private Long requesterId;
+
+    @Before
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        musicianProfileDao = new JdbcMusicianProfileDao(jdbcTemplate, new ProfileFacetIndex(),
+                new ZipCentroids(jdbcTemplate, new ClassPathResource("geo/zip_centroids.csv")), new ProximityIndex(0.25),
+                new RecommendationIndex(20, 100, 1), new MusicianSimilarityIndex(20, 3));
+        sut = new LineupSolver(musicianProfileDao, 5000, 4);
+
+        jdbcTemplate.update("INSERT INTO users (username, email, password_hash, user_type) " +
+                "SELECT 'player' || g, 'player' || g || '@example.com', 'passwordHash', 'Musician' " +
+                "FROM generate_series(0, 150) AS g");
+        // One or two instruments and two or three genres each; player0 is the one looking for a band
+        jdbcTemplate.update("INSERT INTO musician_profiles (user_id, name, genres, instruments) " +
+                "SELECT u.user_id, 'Player ' || g, " +
+                "CASE WHEN g = 0 THEN 'Funk, Soul, Jazz' ELSE " +
+                "(ARRAY['Rock', 'Jazz', 'Blues', 'Funk', 'Soul', 'Metal', 'Folk', 'Country'])[1 + g % 8] || ', ' || " +
+                "(ARRAY['Rock', 'Jazz', 'Blues', 'Funk', 'Soul', 'Metal', 'Folk', 'Country'])[1 + (g * 7 / 3) % 8] || " +
+                "CASE WHEN g % 3 = 0 THEN ', ' || (ARRAY['Rock', 'Jazz', 'Blues', 'Funk', 'Soul', 'Metal', 'Folk', 'Country'])[1 + (g / 5) % 8] ELSE '' END END, " +
+                "CASE WHEN g = 0 THEN 'Guitar' ELSE " +
+                "(ARRAY['Drums', 'Bass', 'Keys', 'Guitar', 'Vocals', 'Sax'])[1 + g % 6] || " +
+                "CASE WHEN g % 4 = 0 THEN ', ' || (ARRAY['Drums ', 'bass', 'Keys', 'Guitar', 'Vocals', 'Sax'])[1 + (g / 6) % 6] ELSE '' END END " +
+                "FROM generate_series(0, 150) AS g JOIN users u ON u.username = 'player' || g");
+        for (Long userId : musicianProfileDao.getMusiciansMissingUserInstruments()) {
+            musicianProfileDao.syncUserInstruments(userId,
+                    musicianProfileDao.getMusicianProfileByUserId(userId).getInstruments());
+        }
+        requesterId = jdbcTemplate.queryForObject("SELECT user_id FROM users WHERE username = 'player0'", Long.class);
+    }
+
+    @Test
+    public void user_instruments_are_normalized_and_backfilled() {
+        Assert.assertTrue(musicianProfileDao.getMusiciansMissingUserInstruments().isEmpty());
+        Integer distinct = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM instruments", Integer.class);
+        Assert.assertEquals(6, distinct.intValue());
+
+        musicianProfileDao.updateMusicianProfileInstruments(requesterId, "Drums; Theremin");
+        List<Long> thereminPlayers = new ArrayList<>();
+        for (MusicianProfile profile : musicianProfileDao.getMusiciansPlaying(List.of("theremin"))) {
+            thereminPlayers.add(profile.getUser().getUserId());
+        }
+        Assert.assertEquals(List.of(requesterId), thereminPlayers);
+    }
+
+    @Test
+    public void best_lineups_match_brute_force() {
+        MusicianProfile requester = musicianProfileDao.getMusicianProfileByUserId(requesterId);
+
+        LineupSolver.Result result = sut.solve(List.of("Drums", "BASS", "keys"), requester, null, null, 3, 5);
+
+        Assert.assertTrue(result.isExhaustive());
+        List<int[]> expected = bruteForce(requester, 3, 5);
+        Assert.assertEquals(expected.size(), result.getLineups().size());
+        for (int i = 0; i < expected.size(); i++) {
+            LineupSolver.Lineup lineup = result.getLineups().get(i);
+            Assert.assertEquals("lineup " + i, expected.get(i)[0], lineup.getSharedGenreCount());
+            Assert.assertEquals("lineup " + i, expected.get(i)[1], lineup.getMembers().size());
+            Assert.assertEquals(lineup.getSharedGenreCount(), result.getSharedGenres(lineup).size());
+
+            Set<String> covered = new HashSet<>();
+            for (Long memberId : lineup.getMembers()) {
+                Assert.assertFalse(lineup.getInstruments(memberId).isEmpty());
+                covered.addAll(lineup.getInstruments(memberId));
+            }
+            Assert.assertEquals(new HashSet<>(WANTED), covered);
+        }
+    }
+
+    @Test
+    public void search_stops_at_time_budget() {
+        LineupSolver impatient = new LineupSolver(musicianProfileDao, 0, 2);
+
+        LineupSolver.Result result = impatient.solve(WANTED, null, null, null, 3, 5);
+
+        Assert.assertFalse(result.isExhaustive());
+    }
+
+    // Every group of up to maxSize candidates covering all instruments in which each member covers one nobody else does
+    private List<int[]> bruteForce(MusicianProfile requester, int maxSize, int limit) {
+        Set<String> target = genres(requester);
+        List<MusicianProfile> candidates = new ArrayList<>();
+        for (MusicianProfile profile : musicianProfileDao.getMusiciansPlaying(WANTED)) {
+            if (!profile.getUser().getUserId().equals(requesterId)) {
+                candidates.add(profile);
+            }
+        }
+        List<int[]> lineups = new ArrayList<>();
+        collect(candidates, 0, new ArrayList<>(), target, maxSize, lineups);
+        lineups.sort(Comparator.comparingInt((int[] l) -> -l[0]).thenComparingInt(l -> l[1]));
+        return lineups.subList(0, Math.min(limit, lineups.size()));
+    }
+
+    private void collect(List<MusicianProfile> candidates, int from, List<MusicianProfile> chosen, Set<String> target,
+                         int maxSize, List<int[]> lineups) {
+        if (!chosen.isEmpty() && isMinimalCover(chosen)) {
+            Set<String> shared = new HashSet<>(target);
+            for (MusicianProfile member : chosen) {
+                shared.retainAll(genres(member));
+            }
+            lineups.add(new int[]{shared.size(), chosen.size()});
+        }
+        if (chosen.size() == maxSize) {
+            return;
+        }
+        for (int i = from; i < candidates.size(); i++) {
+            chosen.add(candidates.get(i));
+            collect(candidates, i + 1, chosen, target, maxSize, lineups);
+            chosen.remove(chosen.size() - 1);
+        }
+    }
+
+    private static boolean isMinimalCover(List<MusicianProfile> chosen) {
+        Set<String> covered = new HashSet<>();
+        for (MusicianProfile member : chosen) {
+            covered.addAll(JdbcMusicianProfileDao.instrumentNames(member.getInstruments()));
+        }
+        if (!covered.containsAll(WANTED)) {
+            return false;
+        }
+        for (MusicianProfile member : chosen) {
+            Set<String> others = new HashSet<>();
+            for (MusicianProfile other : chosen) {
+                if (other != member) {
+                    others.addAll(JdbcMusicianProfileDao.instrumentNames(other.getInstruments()));
+                }
+            }
+            if (others.containsAll(WANTED)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> genres(MusicianProfile profile) {
+        Set<String> genres = new HashSet<>();
+        for (String genre : ProfileFacetIndex.splitList(profile.getGenres())) {
+            genres.add(genre.trim().toLowerCase());
+        }
+        return genres;
+    }
+}
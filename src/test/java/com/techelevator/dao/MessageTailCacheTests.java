@@ -0,0 +1,130 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.Message;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MessageTailCacheTests {
+    private static final long CONVERSATION_ID = 7L;
+    private MessageTailCache sut;
+    private List<Message> stored;
+    private AtomicInteger loads;
+
+    @Before
+    public void setup() {
+        sut = new MessageTailCache(true, 4, 1_000_000);
+        stored = new ArrayList<>();
+        loads = new AtomicInteger();
+        for (long seq = 1; seq <= 3; seq++) {
+            stored.add(message(seq));
+        }
+    }
+
+    @Test
+    public void getLatest_second_read_is_served_from_cache() {
+        sut.getLatest(CONVERSATION_ID, 2, this::load);
+        List<Message> page = sut.getLatest(CONVERSATION_ID, 2, this::load);
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals(Long.valueOf(3), page.get(1).getSeq());
+        Assert.assertEquals("2020-01-01 00:00:03.123456", page.get(1).getSentAt());
+        Assert.assertEquals(Long.valueOf(2), page.get(1).getReceiverId());
+        Assert.assertNull(page.get(1).getParentMessageId());
+    }
+
+    @Test
+    public void append_extends_tail_and_evicts_oldest_from_ring() {
+        sut.getLatest(CONVERSATION_ID, 3, this::load);
+        sut.append(message(4));
+        sut.append(message(5));
+
+        List<Message> page = sut.getLatest(CONVERSATION_ID, 4, this::load);
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(Long.valueOf(2), page.get(0).getSeq());
+        Assert.assertEquals(Long.valueOf(5), page.get(3).getSeq());
+        // Message 1 fell out of the ring, so the full history is no longer answerable from memory
+        Assert.assertNull(sut.getAll(CONVERSATION_ID));
+    }
+
+    @Test
+    public void append_with_seq_gap_drops_tail() {
+        sut.getLatest(CONVERSATION_ID, 3, this::load);
+        sut.append(message(5));
+
+        Assert.assertNull(sut.getSinceSeq(CONVERSATION_ID, 0, 10));
+    }
+
+    @Test
+    public void delete_removes_message_and_its_replies() {
+        Message reply = message(4);
+        reply.setParentMessageId(200L);
+        sut.getLatest(CONVERSATION_ID, 3, this::load);
+        sut.append(reply);
+        sut.delete(CONVERSATION_ID, 200L);
+
+        List<Message> all = sut.getAll(CONVERSATION_ID);
+        Assert.assertEquals(2, all.size());
+        Assert.assertEquals(Long.valueOf(100), all.get(0).getMessageId());
+        Assert.assertEquals(Long.valueOf(300), all.get(1).getMessageId());
+    }
+
+    @Test
+    public void edits_are_announced_and_evicted_rings_reload() {
+        List<Long> announced = new ArrayList<>();
+        sut.addInvalidationListener(announced::add);
+        sut.getLatest(CONVERSATION_ID, 3, this::load);
+        Message edited = message(2);
+        edited.setContent("edited elsewhere");
+        sut.update(edited);
+        Assert.assertEquals(List.of(CONVERSATION_ID), announced);
+
+        // What another instance does on hearing of the edit
+        stored.set(1, edited);
+        sut.evict(CONVERSATION_ID);
+        List<Message> page = sut.getLatest(CONVERSATION_ID, 3, this::load);
+
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals("edited elsewhere", page.get(1).getContent());
+    }
+
+    @Test
+    public void over_budget_evicts_least_recently_read_conversation() {
+        sut = new MessageTailCache(true, 4, 400);
+        sut.getLatest(1L, 3, n -> copyTo(1L));
+        sut.getLatest(2L, 3, n -> copyTo(2L));
+        sut.getLatest(3L, 3, n -> copyTo(3L));
+
+        Assert.assertTrue(sut.getEvictions() > 0);
+        Assert.assertTrue(sut.getBytes() <= 400);
+        Assert.assertNotNull(sut.getAll(3L));
+    }
+
+    private List<Message> load(int limit) {
+        loads.incrementAndGet();
+        return new ArrayList<>(stored.subList(Math.max(0, stored.size() - limit), stored.size()));
+    }
+
+    private List<Message> copyTo(long conversationId) {
+        List<Message> messages = new ArrayList<>();
+        for (Message m : stored) {
+            Message copy = message(m.getSeq());
+            copy.setConversationId(conversationId);
+            messages.add(copy);
+        }
+        return messages;
+    }
+
+    private static Message message(long seq) {
+        Message message = new Message(CONVERSATION_ID, 1L, 2L, "message " + seq, null);
+        message.setMessageId(seq * 100);
+        message.setSeq(seq);
+        message.setSentAt("2020-01-01 00:00:0" + seq + ".123456");
+        return message;
+    }
+}
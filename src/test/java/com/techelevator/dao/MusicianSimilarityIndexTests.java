@@ -0,0 +1,168 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.MusicianProfile;
+import com.techelevator.model.User;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class MusicianSimilarityIndexTests {
+    private static final Logger log = LoggerFactory.getLogger(MusicianSimilarityIndexTests.class);
+
+    private static final int MUSICIANS = 20000;
+    private static final int STYLES = 60;
+    private static final String[] GENRES = {"Rock", "Jazz", "Blues", "Country", "Funk", "Metal", "Folk", "Soul", "Punk",
+            "Reggae", "Hip Hop", "R&B", "Bluegrass", "Gospel", "Indie", "Pop", "Ska", "Grunge", "Emo", "Swing",
+            "Bebop", "Fusion", "Americana", "Disco", "House", "Techno", "Latin", "Salsa", "Cumbia", "Zydeco"};
+    private static final String[] INSTRUMENTS = {"Guitar", "Bass", "Drums", "Keys", "Vocals", "Saxophone", "Trumpet",
+            "Violin", "Cello", "Banjo", "Mandolin", "Harmonica", "Accordion", "Trombone", "Clarinet", "Flute",
+            "Piano", "Organ", "Percussion", "Turntables"};
+
+    private MusicianSimilarityIndex sut;
+    private Random random;
+    private List<List<String>> styleGenres;
+    private List<List<String>> styleInstruments;
+
+    @Before
+    public void setup() {
+        sut = new MusicianSimilarityIndex(20, 3);
+        random = new Random(11);
+        // Musicians cluster around styles, a handful of genres and instruments that tend to go together
+        styleGenres = new ArrayList<>();
+        styleInstruments = new ArrayList<>();
+        for (int style = 0; style < STYLES; style++) {
+            styleGenres.add(pick(GENRES, 4));
+            styleInstruments.add(pick(INSTRUMENTS, 3));
+        }
+        for (long userId = 0; userId < MUSICIANS; userId++) {
+            sut.load(randomMusician(userId));
+        }
+    }
+
+    @Test
+    public void recall_against_exact_scan() {
+        int k = 10;
+        int queries = 300;
+        double recallSum = 0;
+        long candidateSum = 0;
+        long lshNanos = 0;
+        long scanNanos = 0;
+        for (int q = 0; q < queries; q++) {
+            Long userId = (long) random.nextInt(MUSICIANS);
+
+            long start = System.nanoTime();
+            List<MusicianSimilarityIndex.Hit> approximate = sut.similarTo(userId, k);
+            lshNanos += System.nanoTime() - start;
+            candidateSum += sut.candidates(userId).size();
+
+            start = System.nanoTime();
+            List<MusicianSimilarityIndex.Hit> exact = exactScan(userId, k);
+            scanNanos += System.nanoTime() - start;
+
+            // Ties at the k-th similarity make several exact answers equally right, so count any hit at least that close
+            if (exact.isEmpty()) {
+                recallSum += 1;
+                continue;
+            }
+            double kth = exact.get(exact.size() - 1).getSimilarity();
+            long found = approximate.stream().filter(hit -> hit.getSimilarity() >= kth).count();
+            recallSum += Math.min(1.0, (double) found / exact.size());
+        }
+
+        double recall = recallSum / queries;
+        double candidateShare = (double) candidateSum / queries / MUSICIANS;
+        log.info("MinHash/LSH over {} musicians: recall@{} {}, {}% of profiles examined per query, " +
+                        "{} us per query vs {} us for an exact scan",
+                MUSICIANS, k, String.format("%.3f", recall), String.format("%.1f", candidateShare * 100),
+                lshNanos / queries / 1000, scanNanos / queries / 1000);
+        Assert.assertTrue("recall " + recall, recall >= 0.9);
+        Assert.assertTrue("examined " + candidateShare, candidateShare < 0.25);
+    }
+
+    @Test
+    public void results_are_ranked_by_exact_similarity() {
+        List<MusicianSimilarityIndex.Hit> hits = sut.similarTo(0L, 20);
+
+        Assert.assertFalse(hits.isEmpty());
+        for (int i = 0; i < hits.size(); i++) {
+            Assert.assertEquals(sut.similarity(0L, hits.get(i).getUserId()), hits.get(i).getSimilarity(), 1e-12);
+            if (i > 0) {
+                Assert.assertTrue(hits.get(i - 1).getSimilarity() >= hits.get(i).getSimilarity());
+            }
+        }
+    }
+
+    @Test
+    public void edits_and_removals_update_buckets() {
+        MusicianProfile twin = musician(MUSICIANS, "Zydeco, Cumbia", "Accordion");
+        MusicianProfile other = musician(MUSICIANS + 1, "Zydeco, Cumbia", "Washboard");
+        sut.put(twin.getUser().getUserId(), twin);
+        sut.put(other.getUser().getUserId(), other);
+        Assert.assertEquals(0.5, sut.similarity((long) MUSICIANS, MUSICIANS + 1L), 1e-12);
+
+        sut.replaceInstruments(MUSICIANS + 1L, "accordion");
+        Assert.assertEquals(1.0, sut.similarity((long) MUSICIANS, MUSICIANS + 1L), 1e-12);
+        // Identical sets share every bucket, so an exact twin is always found
+        Assert.assertEquals(Long.valueOf(MUSICIANS + 1L), sut.similarTo((long) MUSICIANS, 1).get(0).getUserId());
+
+        sut.remove(MUSICIANS + 1L);
+        Assert.assertFalse(sut.candidates((long) MUSICIANS).contains(MUSICIANS + 1L));
+        Assert.assertNull(sut.similarTo(MUSICIANS + 1L, 5));
+    }
+
+    private List<MusicianSimilarityIndex.Hit> exactScan(Long userId, int k) {
+        List<MusicianSimilarityIndex.Hit> all = new ArrayList<>();
+        for (long otherId = 0; otherId < MUSICIANS; otherId++) {
+            double similarity = sut.similarity(userId, otherId);
+            if (otherId != userId && similarity > 0) {
+                all.add(new MusicianSimilarityIndex.Hit(otherId, similarity));
+            }
+        }
+        all.sort(Comparator.comparingDouble(MusicianSimilarityIndex.Hit::getSimilarity).reversed()
+                .thenComparing(MusicianSimilarityIndex.Hit::getUserId));
+        return all.subList(0, Math.min(k, all.size()));
+    }
+
+    // Two to four of a style's genres and one or two of its instruments, plus the odd genre from outside it
+    private MusicianProfile randomMusician(long userId) {
+        int style = (int) Math.min(STYLES - 1, Math.abs(random.nextGaussian()) * STYLES / 3);
+        Set<String> genres = new LinkedHashSet<>(sample(styleGenres.get(style), 2 + random.nextInt(3)));
+        if (random.nextInt(4) == 0) {
+            genres.add(GENRES[random.nextInt(GENRES.length)]);
+        }
+        List<String> instruments = sample(styleInstruments.get(style), 1 + random.nextInt(2));
+        return musician(userId, String.join(", ", genres), String.join(", ", instruments));
+    }
+
+    private List<String> pick(String[] values, int count) {
+        List<String> all = new ArrayList<>(List.of(values));
+        Collections.shuffle(all, random);
+        return all.subList(0, count);
+    }
+
+    private List<String> sample(List<String> values, int count) {
+        List<String> copy = new ArrayList<>(values);
+        Collections.shuffle(copy, random);
+        return copy.subList(0, Math.min(count, copy.size()));
+    }
+
+    private static MusicianProfile musician(long userId, String genres, String instruments) {
+        User user = new User();
+        user.setUserId(userId);
+        MusicianProfile profile = new MusicianProfile();
+        profile.setUser(user);
+        profile.setGenres(genres);
+        profile.setInstruments(instruments);
+        return profile;
+    }
+}
@@ -0,0 +1,88 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import com.techelevator.model.User;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class ProximityIndexTests {
+    private static final GeoPoint CLEVELAND = new GeoPoint(41.4993, -81.6944);
+
+    private ProximityIndex sut;
+    private List<GeoPoint> points;
+
+    @Before
+    public void setup() {
+        sut = new ProximityIndex(0.25);
+        points = new ArrayList<>();
+        // Profiles scattered over roughly Ohio and its neighbours; even user ids are musicians, odd ones venues
+        Random random = new Random(42);
+        for (long userId = 0; userId < 3000; userId++) {
+            GeoPoint point = new GeoPoint(38 + random.nextDouble() * 6, -86 + random.nextDouble() * 8);
+            points.add(point);
+            sut.put(userId, userId % 2 == 0 ? User.UserType.Musician : User.UserType.VenueOwner, point);
+        }
+    }
+
+    @Test
+    public void withinRadius_matches_brute_force() {
+        List<ProximityIndex.Hit> hits = sut.withinRadius(CLEVELAND, 60, User.UserType.Musician, null, 1000);
+
+        List<Long> expected = bruteForce(User.UserType.Musician).stream()
+                .filter(id -> CLEVELAND.distanceMiles(points.get(id.intValue())) <= 60)
+                .collect(Collectors.toList());
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, ids(hits));
+    }
+
+    @Test
+    public void nearest_matches_brute_force() {
+        List<ProximityIndex.Hit> hits = sut.nearest(CLEVELAND, 25, User.UserType.VenueOwner, null);
+
+        Assert.assertEquals(bruteForce(User.UserType.VenueOwner).subList(0, 25), ids(hits));
+    }
+
+    @Test
+    public void nearest_searches_past_empty_cells() {
+        ProximityIndex sparse = new ProximityIndex(0.25);
+        sparse.put(1L, User.UserType.Musician, new GeoPoint(30.27, -97.74));
+        sparse.put(2L, User.UserType.Musician, new GeoPoint(36.16, -86.78));
+
+        List<ProximityIndex.Hit> hits = sparse.nearest(CLEVELAND, 5, null, null);
+
+        Assert.assertEquals(List.of(2L, 1L), ids(hits));
+    }
+
+    @Test
+    public void moved_and_removed_profiles_are_reindexed() {
+        sut.put(0L, User.UserType.Musician, CLEVELAND);
+        sut.remove(2L);
+
+        List<ProximityIndex.Hit> hits = sut.nearest(CLEVELAND, 1, User.UserType.Musician, null);
+        Assert.assertEquals(Long.valueOf(0), hits.get(0).getUserId());
+        Assert.assertEquals(0, hits.get(0).getDistanceMiles(), 1e-9);
+        Assert.assertNull(sut.locate(2L));
+        Assert.assertEquals(2999, sut.size());
+    }
+
+    private List<Long> bruteForce(User.UserType userType) {
+        List<Long> ids = new ArrayList<>();
+        for (long userId = userType == User.UserType.Musician ? 0 : 1; userId < points.size(); userId += 2) {
+            ids.add(userId);
+        }
+        ids.sort(Comparator.comparingDouble((Long id) -> CLEVELAND.distanceMiles(points.get(id.intValue())))
+                .thenComparing(id -> id));
+        return ids;
+    }
+
+    private static List<Long> ids(List<ProximityIndex.Hit> hits) {
+        return hits.stream().map(ProximityIndex.Hit::getUserId).collect(Collectors.toList());
+    }
+}
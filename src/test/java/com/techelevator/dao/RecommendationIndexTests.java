@@ -0,0 +1,176 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.MusicianProfile;
+import com.techelevator.model.User;
+import com.techelevator.model.VenueProfile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class RecommendationIndexTests {
+    private static final int TOP_K = 10;
+    private static final String[] GENRES = {"Rock", "Jazz", "Blues", "Country", "Funk", "Metal", "Folk", "Soul"};
+    private static final String[] VENUE_TYPES = {"Bar", "Club", "Theater", "Brewery"};
+
+    private RecommendationIndex sut;
+    private Random random;
+    // Current features of every indexed profile, for the brute-force comparison; musicians are 0-599, venues 1000-1199
+    private Map<Long, RecommendationIndex.Features> musicians;
+    private Map<Long, RecommendationIndex.Features> venues;
+
+    @Before
+    public void setup() {
+        sut = new RecommendationIndex(TOP_K, 60, 4);
+        random = new Random(7);
+        musicians = new HashMap<>();
+        venues = new HashMap<>();
+        for (long userId = 0; userId < 600; userId++) {
+            MusicianProfile profile = randomMusician();
+            musicians.put(userId, RecommendationIndex.Features.of(userId, profile));
+            profile.setUser(user(userId));
+            sut.load(profile);
+        }
+        for (long userId = 1000; userId < 1200; userId++) {
+            VenueProfile profile = randomVenue();
+            venues.put(userId, RecommendationIndex.Features.of(userId, profile));
+            profile.setUser(user(userId));
+            sut.load(profile);
+        }
+        sut.rebuild();
+    }
+
+    @Test
+    public void rebuild_matches_brute_force() {
+        assertAllMatchBruteForce();
+    }
+
+    @Test
+    public void incremental_updates_match_brute_force() {
+        for (int i = 0; i < 300; i++) {
+            if (random.nextBoolean()) {
+                long userId = random.nextInt(600);
+                if (random.nextInt(10) == 0) {
+                    sut.remove(userId);
+                    musicians.remove(userId);
+                } else {
+                    MusicianProfile profile = randomMusician();
+                    sut.putMusician(userId, profile);
+                    musicians.put(userId, RecommendationIndex.Features.of(userId, profile));
+                }
+            } else {
+                long userId = 1000 + random.nextInt(200);
+                if (random.nextInt(10) == 0) {
+                    sut.remove(userId);
+                    venues.remove(userId);
+                } else {
+                    VenueProfile profile = randomVenue();
+                    sut.putVenue(userId, profile);
+                    venues.put(userId, RecommendationIndex.Features.of(userId, profile));
+                }
+            }
+        }
+
+        assertAllMatchBruteForce();
+    }
+
+    @Test
+    public void score_weighs_genre_location_and_named_venue_type() {
+        RecommendationIndex index = new RecommendationIndex(TOP_K, 60, 1);
+        MusicianProfile musician = musician("Jazz, Blues", 41.4993, -81.6944, "Plays bars and weddings");
+        VenueProfile venue = venue(List.of("jazz"), 41.4993, -81.6944, "Bar");
+        index.putMusician(1L, musician);
+        index.putVenue(2L, venue);
+
+        List<RecommendationIndex.Match> matches = index.recommendationsFor(1L, 5);
+
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(Long.valueOf(2), matches.get(0).getUserId());
+        Assert.assertEquals(0.6 * 0.5 + 0.3 + 0.1, matches.get(0).getScore(), 1e-9);
+        Assert.assertEquals(matches.get(0).getScore(), index.recommendationsFor(2L, 5).get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    public void unknown_user_has_no_recommendations() {
+        Assert.assertNull(sut.recommendationsFor(5000L, 5));
+    }
+
+    private void assertAllMatchBruteForce() {
+        for (Map.Entry<Long, RecommendationIndex.Features> entry : musicians.entrySet()) {
+            assertMatchesBruteForce(entry.getKey(), entry.getValue(), venues);
+        }
+        for (Map.Entry<Long, RecommendationIndex.Features> entry : venues.entrySet()) {
+            assertMatchesBruteForce(entry.getKey(), entry.getValue(), musicians);
+        }
+    }
+
+    private void assertMatchesBruteForce(Long userId, RecommendationIndex.Features features,
+                                         Map<Long, RecommendationIndex.Features> others) {
+        List<RecommendationIndex.Match> expected = new ArrayList<>();
+        for (Map.Entry<Long, RecommendationIndex.Features> other : others.entrySet()) {
+            double score = sut.score(features, other.getValue());
+            if (score > 0) {
+                expected.add(new RecommendationIndex.Match(other.getKey(), score));
+            }
+        }
+        expected.sort(Comparator.comparingDouble(RecommendationIndex.Match::getScore).reversed()
+                .thenComparing(RecommendationIndex.Match::getUserId));
+        expected = expected.subList(0, Math.min(TOP_K, expected.size()));
+
+        List<RecommendationIndex.Match> actual = sut.recommendationsFor(userId, TOP_K);
+        Assert.assertEquals("user " + userId, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals("user " + userId, expected.get(i).getUserId(), actual.get(i).getUserId());
+            Assert.assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+        }
+    }
+
+    // Scattered over roughly northeast Ohio and western Pennsylvania, with a few unplaced profiles
+    private MusicianProfile randomMusician() {
+        String genres = GENRES[random.nextInt(GENRES.length)] + ", " + GENRES[random.nextInt(GENRES.length)];
+        String bio = random.nextInt(3) == 0 ? "Available for " + VENUE_TYPES[random.nextInt(VENUE_TYPES.length)] + "s" : "";
+        if (random.nextInt(20) == 0) {
+            return musician(genres, null, null, bio);
+        }
+        return musician(genres, 40 + random.nextDouble() * 2, -82 + random.nextDouble() * 3, bio);
+    }
+
+    private VenueProfile randomVenue() {
+        List<String> genres = List.of(GENRES[random.nextInt(GENRES.length)]);
+        String type = VENUE_TYPES[random.nextInt(VENUE_TYPES.length)];
+        if (random.nextInt(20) == 0) {
+            return venue(genres, null, null, type);
+        }
+        return venue(genres, 40 + random.nextDouble() * 2, -82 + random.nextDouble() * 3, type);
+    }
+
+    private static MusicianProfile musician(String genres, Double latitude, Double longitude, String bio) {
+        MusicianProfile profile = new MusicianProfile();
+        profile.setGenres(genres);
+        profile.setLatitude(latitude);
+        profile.setLongitude(longitude);
+        profile.setBio(bio);
+        return profile;
+    }
+
+    private static VenueProfile venue(List<String> genres, Double latitude, Double longitude, String venueType) {
+        VenueProfile profile = new VenueProfile();
+        profile.setGenrePreferences(genres);
+        profile.setLatitude(latitude);
+        profile.setLongitude(longitude);
+        profile.setVenueType(venueType);
+        return profile;
+    }
+
+    private static User user(long userId) {
+        User user = new User();
+        user.setUserId(userId);
+        return user;
+    }
+}
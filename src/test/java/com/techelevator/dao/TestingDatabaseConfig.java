@@ -57,8 +57,9 @@ public class TestingDatabaseConfig {
         dataSource.setUsername(DB_USERNAME);
         dataSource.setPassword(DB_PASSWORD);
         dataSource.setAutoCommit(false); //So we can rollback after each test.
+        dataSource.setSuppressClose(true); // DAOs release the connection after each statement; keep the one we have
 
-        ScriptUtils.executeSqlScript(dataSource.getConnection(), new FileSystemResource("database/schema.sql"));
+        ScriptUtils.executeSqlScript(dataSource.getConnection(), new FileSystemResource("database/schema_1.sql"));
         ScriptUtils.executeSqlScript(dataSource.getConnection(), new ClassPathResource("test-data.sql"));
 
         ds = dataSource;
@@ -0,0 +1,45 @@
+package com.techelevator.dao;
+
+import com.techelevator.model.GeoPoint;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.nio.charset.StandardCharsets;
+
+public class ZipCentroidsTests {
+    private final ZipCentroids sut = new ZipCentroids(null, new ClassPathResource("geo/zip_centroids.csv"));
+
+    @Test
+    public void resolves_zip_codes_including_zip_plus_four() {
+        Assert.assertEquals(new GeoPoint(41.4820, -81.6940), sut.forZip("44113"));
+        Assert.assertEquals(new GeoPoint(41.4820, -81.6940), sut.resolveLocation("Ohio City 44113-1234"));
+        Assert.assertNull(sut.forZip("99999"));
+    }
+
+    @Test
+    public void resolves_city_and_state_to_average_of_city_zips() {
+        GeoPoint akron = sut.resolveLocation("akron,  oh");
+
+        Assert.assertEquals((41.0890 + 41.1030 + 41.0800) / 3, akron.getLatitude(), 1e-9);
+        Assert.assertEquals(akron, sut.resolve(null, "Akron", "OH"));
+        Assert.assertNull(sut.resolve(null, "Akron", "PA"));
+    }
+
+    @Test
+    public void resolves_city_alone_only_when_unambiguous() {
+        Assert.assertNotNull(sut.resolveLocation("Lakewood"));
+    }
+
+    @Test
+    public void reads_census_gazetteer_format() {
+        String gazetteer = "GEOID\tALAND\tAWATER\tALAND_SQMI\tAWATER_SQMI\tINTPTLAT\tINTPTLONG                    \n" +
+                "00601\t166847909\t799292\t64.42\t0.309\t18.180555\t-66.749961\n";
+        ZipCentroids gazetteerCentroids = new ZipCentroids(null,
+                new ByteArrayResource(gazetteer.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertEquals(new GeoPoint(18.180555, -66.749961), gazetteerCentroids.forZip("00601"));
+        Assert.assertEquals(1, gazetteerCentroids.size());
+    }
+}
@@ -1,7 +1,9 @@
 BEGIN TRANSACTION;
 
-INSERT INTO users (username,password_hash,role) VALUES ('user1','user1','ROLE_USER');
-INSERT INTO users (username,password_hash,role) VALUES ('user2','user2','ROLE_USER');
-INSERT INTO users (username,password_hash,role) VALUES ('user3','user3','ROLE_USER');
+INSERT INTO users (username,email,password_hash,user_type,created_at) VALUES ('user1','user1@example.com','passwordHash','Musician','2024-01-01 12:00:00');
+INSERT INTO users (username,email,password_hash,user_type,created_at) VALUES ('user2','user2@example.com','passwordHash','VenueOwner','2024-01-02 12:00:00');
+INSERT INTO users (username,email,password_hash,user_type,created_at) VALUES ('user3','user3@example.com','passwordHash','Musician','2024-01-03 12:00:00');
+
+INSERT INTO user_authorities (user_id,authority_name) SELECT user_id, 'ROLE_USER' FROM users;
 
 COMMIT TRANSACTION;